@@ -0,0 +1,60 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.user.UserAuthenticationValidator;
+
+/**
+ * Reading the token from the authorization header with
+ * {@link TokenService#parseAuthorizationHeader(String)}, compared with how it was read before
+ * (<i>parseAuthorizationHeaderBefore</i>), when the check let any header through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationHeaderBenchmark {
+
+    private TokenService tokenService;
+    private String header;
+
+    @Setup
+    public void setUp() {
+        AuthenticationServiceConfiguration config = new AuthenticationServiceConfiguration();
+        config.setTokenSecret("0123456789abcdef0123456789abcdef0123456789");
+        tokenService = new TokenService(config);
+        header = "Bearer " + tokenService.createAccessToken("benchmark@example.com").getToken();
+    }
+
+    @Benchmark
+    public boolean isBearerHeaderValid() {
+        return UserAuthenticationValidator.isBearerHeaderValid(header);
+    }
+
+    @Benchmark
+    public String parseAuthorizationHeader() {
+        return tokenService.parseAuthorizationHeader(header);
+    }
+
+    @Benchmark
+    public String parseAuthorizationHeaderBefore() {
+        if (!header.startsWith("Bearer ") && header.length() < 7) {
+            throw new IllegalArgumentException("Malformed authorization header");
+        }
+        return header.substring(header.indexOf(" ") + 1);
+    }
+}
@@ -0,0 +1,83 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing and verifying passwords with {@link PasswordService} and the PBKDF2 engines behind
+ * it. Each engine is measured on its own so the one picked by the service can be compared to
+ * the alternative.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordServiceBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({ "sha1", "sha256", "sha512" })
+    private String algorithm;
+
+    @Param({ "64000" })
+    private int iterations;
+
+    private PasswordService passwordService;
+    private String hash;
+    private PasswordHasher jdkHasher;
+    private PasswordHasher fastHasher;
+    private final char[] password = PASSWORD.toCharArray();
+    private final byte[] salt = new byte[PasswordService.SALT_BYTE_SIZE];
+
+    @Setup
+    public void setUp() throws Exception {
+        passwordService = new PasswordService(algorithm, iterations);
+        hash = passwordService.createHash(PASSWORD);
+
+        switch (algorithm) {
+        case "sha256":
+            jdkHasher = Pbkdf2PasswordHasher.SHA256;
+            fastHasher = FastPbkdf2PasswordHasher.SHA256;
+            break;
+        case "sha512":
+            jdkHasher = Pbkdf2PasswordHasher.SHA512;
+            fastHasher = FastPbkdf2PasswordHasher.SHA512;
+            break;
+        default:
+            jdkHasher = Pbkdf2PasswordHasher.SHA1;
+            fastHasher = FastPbkdf2PasswordHasher.SHA1;
+        }
+    }
+
+    @Benchmark
+    public String createHash() throws Exception {
+        return passwordService.createHash(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verifyPassword() throws Exception {
+        return passwordService.verifyPassword(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public byte[] jdkEngine() throws Exception {
+        return jdkHasher.hash(password, salt, iterations, PasswordService.HASH_BYTE_SIZE);
+    }
+
+    @Benchmark
+    public byte[] fastEngine() throws Exception {
+        return fastHasher.hash(password, salt, iterations, PasswordService.HASH_BYTE_SIZE);
+    }
+}
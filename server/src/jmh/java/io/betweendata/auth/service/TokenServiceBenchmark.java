@@ -0,0 +1,111 @@
+package io.betweendata.auth.service;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.token.IssuedToken;
+import io.betweendata.auth.token.Keyring;
+import io.betweendata.auth.token.VerifiedToken;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Creating and verifying token with {@link TokenService} for each signature algorithm. The
+ * <i>jjwt</i> benchmarks do the same work with jjwt alone, which is how the service worked
+ * before it got its own HS256 codec.<br>
+ * Only HS256 keeps accepting token without a key id. With RS256 and ES256
+ * <i>verifyWithoutKeyId</i> measures how fast such a token is rejected.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenServiceBenchmark {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef0123456789";
+    private static final String EMAIL = "benchmark@example.com";
+
+    @Param({ "HS256", "RS256", "ES256" })
+    private String algorithm;
+
+    private TokenService tokenService;
+    private SignatureAlgorithm signatureAlgorithm;
+    private Key signingKey;
+    private Key verificationKey;
+    private String token;
+    /**
+     * Token without a key id. These are verified by jjwt.
+     */
+    private String legacyToken;
+
+    @Setup
+    public void setUp() {
+        signatureAlgorithm = SignatureAlgorithm.forName(algorithm);
+        Keyring keyring;
+        if (signatureAlgorithm.isHmac()) {
+            keyring = Keyring.ofSecret(TokenService.DEFAULT_KID, SECRET.getBytes());
+            signingKey = Keys.hmacShaKeyFor(SECRET.getBytes());
+            verificationKey = signingKey;
+        } else {
+            KeyPair keyPair = Keys.keyPairFor(signatureAlgorithm);
+            keyring = Keyring.ofKeyPair(keyPair.getPrivate(), keyPair.getPublic(),
+                    signatureAlgorithm);
+            signingKey = keyPair.getPrivate();
+            verificationKey = keyPair.getPublic();
+        }
+        tokenService = new TokenService(signatureAlgorithm, keyring, new MetricRegistry());
+
+        token = tokenService.createRefreshToken(EMAIL).getToken();
+        legacyToken = jjwtCreate();
+    }
+
+    @Benchmark
+    public IssuedToken createAccessToken() {
+        return tokenService.createAccessToken(EMAIL);
+    }
+
+    @Benchmark
+    public VerifiedToken verify() {
+        return tokenService.verify(token).get();
+    }
+
+    @Benchmark
+    public VerifiedToken verifyWithoutKeyId() {
+        return tokenService.verify(legacyToken).orElse(null);
+    }
+
+    @Benchmark
+    public String jjwtCreate() {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .signWith(signingKey, signatureAlgorithm)
+                .setSubject(TokenService.SUBJECT_REFRESH_TOKEN)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TokenService.REFRESH_TOKEN_LIFETIME.toMillis()))
+                .claim("email", EMAIL)
+                .compact();
+    }
+
+    @Benchmark
+    public Object jjwtVerify() {
+        return Jwts.parser().setSigningKey(verificationKey).parseClaimsJws(token).getBody();
+    }
+}
@@ -0,0 +1,102 @@
+package io.betweendata.auth.token;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time {@link FileRefreshTokenCache} needs on startup to replay its log, at different numbers
+ * of live sessions. The compacted log holds one record per session. In the uncompacted log
+ * every session has been refreshed once, so it holds three records per session (the first
+ * token, its removal and the second token).<br>
+ * The log is written through the cache on setup, which takes a while for millions of
+ * sessions.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FileRefreshTokenCacheBenchmark {
+    private static final int MAX_SIZE = 10_000_000;
+    private static final Duration TIME_TO_LIVE = Duration.ofDays(5);
+    /**
+     * Threads adding token on setup. The more wait for the log at once, the larger the
+     * batches written with a single fsync.
+     */
+    private static final int WRITERS = 256;
+
+    @Param({ "1000000", "3000000" })
+    private int sessions;
+
+    @Param({ "true", "false" })
+    private boolean compacted;
+
+    private Path directory;
+    private Path logFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("refresh-token-log-benchmark");
+        logFile = directory.resolve("refresh-token.log");
+
+        // Not compacted while it is written
+        FileRefreshTokenCache cache = new FileRefreshTokenCache(logFile, MAX_SIZE, TIME_TO_LIVE,
+                Duration.ofDays(1));
+        cache.start();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        Instant expiresAt = Instant.now().plus(TIME_TO_LIVE);
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int first = writer;
+            executor.execute(() -> {
+                for (int session = first; session < sessions; session += WRITERS) {
+                    TokenId id = new TokenId(session, 0);
+                    cache.add(id, expiresAt);
+                    if (!compacted) {
+                        cache.remove(id);
+                        cache.add(new TokenId(session, 1), expiresAt);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        cache.stop();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int replay() throws Exception {
+        FileRefreshTokenCache cache = new FileRefreshTokenCache(logFile, MAX_SIZE, TIME_TO_LIVE);
+        cache.start();
+        int size = cache.size();
+        cache.stop();
+        if (size != sessions) {
+            throw new IllegalStateException("Replayed " + size + " of " + sessions + " sessions");
+        }
+        return size;
+    }
+}
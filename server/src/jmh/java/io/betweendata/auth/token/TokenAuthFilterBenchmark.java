@@ -0,0 +1,94 @@
+package io.betweendata.auth.token;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.SecurityContext;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.user.User;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+
+/**
+ * Authenticating a request with {@link TokenAuthFilter}: reading the header, verifying the
+ * token and loading the user. The request is a plain Jersey request, no server is started.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenAuthFilterBenchmark {
+    private static final String EMAIL = "benchmark@example.com";
+
+    /**
+     * <i>true</i>: the token is found in the {@link VerifiedTokenCache}<br>
+     * <i>false</i>: the cache is cleared before each request, so the token is verified and the
+     * user is loaded every time
+     */
+    @Param({ "true", "false" })
+    private boolean cached;
+
+    private VerifiedTokenCache verifiedTokenCache;
+    private TokenAuthFilter filter;
+    private ContainerRequest request;
+    private SecurityContext originalSecurityContext;
+
+    @Setup
+    public void setUp() {
+        AuthenticationServiceConfiguration config = new AuthenticationServiceConfiguration();
+        config.setTokenSecret("0123456789abcdef0123456789abcdef0123456789");
+        Environment environment = new Environment("benchmark", Jackson.newObjectMapper(),
+                Validators.newValidator(), new MetricRegistry(), getClass().getClassLoader());
+        ServiceLocator.get().init(config, environment);
+
+        User user = new User();
+        user.setEmail(EMAIL);
+        user.setPasswordHash("unused");
+        ServiceLocator.get().getUserStorage().saveUser(user);
+
+        verifiedTokenCache = new VerifiedTokenCache(environment.metrics(),
+                ServiceLocator.get().getRevocationList());
+        filter = new TokenAuthFilter(
+                new TokenAuthenticator(verifiedTokenCache, environment.metrics()),
+                environment.metrics());
+
+        String token = ServiceLocator.get().getTokenService().createAccessToken(EMAIL).getToken();
+        request = new ContainerRequest(URI.create("http://localhost/"),
+                URI.create("http://localhost/user"), "GET", null, new MapPropertiesDelegate());
+        request.header("Authorization", "Bearer " + token);
+        originalSecurityContext = request.getSecurityContext();
+    }
+
+    @Benchmark
+    public SecurityContext filter() throws IOException {
+        if (!cached) {
+            verifiedTokenCache.invalidateAll();
+        }
+        // The filter wraps the current security context, start from the original one each time
+        request.setSecurityContext(originalSecurityContext);
+        filter.filter(request);
+        return request.getSecurityContext();
+    }
+}
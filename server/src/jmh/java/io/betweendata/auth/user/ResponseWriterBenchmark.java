@@ -0,0 +1,132 @@
+package io.betweendata.auth.user;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.TokenService;
+import io.betweendata.auth.token.IssuedToken;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.jackson.JacksonMessageBodyProvider;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+
+/**
+ * Writing the JSON of the <i>/login</i> response and the <i>/user</i> response with the
+ * Jackson provider of Dropwizard and with {@link UserAuthenticationResponseWriter} and
+ * {@link UserWriter}. Both have to write the same bytes, which is checked on setup.<br>
+ * Run with <i>-PjmhProfiler=gc</i> to see the bytes allocated per response
+ * (<i>gc.alloc.rate.norm</i>).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseWriterBenchmark {
+    private static final String EMAIL = "benchmark@example.com";
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    @Param({ "jackson", "writer" })
+    private String provider;
+
+    private UserAuthenticationResponse response;
+    private User user;
+    private MessageBodyWriter<Object> responseWriter;
+    private MessageBodyWriter<Object> userWriter;
+    private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    @Setup
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void setUp() throws IOException {
+        AuthenticationServiceConfiguration config = new AuthenticationServiceConfiguration();
+        config.setTokenSecret("0123456789abcdef0123456789abcdef0123456789");
+        Environment environment = new Environment("benchmark", Jackson.newObjectMapper(),
+                Validators.newValidator(), new MetricRegistry(), getClass().getClassLoader());
+        ServiceLocator.get().init(config, environment);
+
+        TokenService tokenService = ServiceLocator.get().getTokenService();
+        IssuedToken accessToken = tokenService.createAccessToken(EMAIL);
+        response = new UserAuthenticationResponse(EMAIL, accessToken.getToken(),
+                tokenService.createRefreshToken(EMAIL).getToken(),
+                LocalDateTime.ofInstant(accessToken.getExpiresAt(), ZoneOffset.UTC));
+        user = new User();
+        user.setEmail(EMAIL);
+        user.setRole("USER");
+
+        // Configured like the application does it
+        ObjectMapper mapper = Jackson.newObjectMapper()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        JacksonMessageBodyProvider jackson = new JacksonMessageBodyProvider(mapper);
+        if ("jackson".equals(provider)) {
+            responseWriter = (MessageBodyWriter) jackson;
+            userWriter = (MessageBodyWriter) jackson;
+        } else {
+            responseWriter = (MessageBodyWriter) new UserAuthenticationResponseWriter();
+            userWriter = (MessageBodyWriter) new UserWriter();
+        }
+
+        byte[] expectedResponse = write(jackson, response);
+        byte[] expectedUser = write(jackson, user);
+        writeResponse();
+        byte[] actualResponse = out.toByteArray();
+        writeUser();
+        if (!Arrays.equals(expectedResponse, actualResponse)
+                || !Arrays.equals(expectedUser, out.toByteArray())) {
+            throw new IllegalStateException("The writers don't write the same JSON");
+        }
+    }
+
+    @Benchmark
+    public int writeResponse() throws IOException {
+        out.reset();
+        responseWriter.writeTo(response, UserAuthenticationResponse.class,
+                UserAuthenticationResponse.class, NO_ANNOTATIONS,
+                MediaType.APPLICATION_JSON_TYPE, headers, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeUser() throws IOException {
+        out.reset();
+        userWriter.writeTo(user, User.class, User.class, NO_ANNOTATIONS,
+                MediaType.APPLICATION_JSON_TYPE, headers, out);
+        return out.size();
+    }
+
+    private byte[] write(JacksonMessageBodyProvider jackson, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        jackson.writeTo(value, value.getClass(), value.getClass(), NO_ANNOTATIONS,
+                MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package io.betweendata.auth.user;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validating the email addresses sent on login and registration, compared with the regular
+ * expression that was used before (<i>isEmailValidRegex</i>). Also canonicalizing them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserAuthenticationValidatorBenchmark {
+    private static final String EMAIL_PATTERN =
+            "^([a-zA-Z0-9_\\-\\.]+)@([a-zA-Z0-9_\\-\\.]+)\\.([a-zA-Z]{2,5})$";
+
+    @Param({ "jane.doe@example.com", "Jane.Doe@Example.com", "not-an-email",
+            "a-rather-long.address_123@sub.domain.example.org" })
+    private String email;
+
+    @Benchmark
+    public boolean isEmailValid() {
+        return UserAuthenticationValidator.isEmailValid(email);
+    }
+
+    @Benchmark
+    public boolean isEmailValidRegex() {
+        return email.matches(EMAIL_PATTERN);
+    }
+
+    @Benchmark
+    public String canonicalEmail() {
+        return User.canonicalEmail(email);
+    }
+}
@@ -0,0 +1,109 @@
+package io.betweendata.auth.user;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and saving users with the storage implementations at different numbers of stored
+ * users. Saving replaces existing users, so the number of users stays the same while
+ * measuring.<br>
+ * Each combination of parameters runs in its own JVM, therefore the in-memory storage (a
+ * singleton) only holds the users of the current run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserStorageBenchmark {
+    /**
+     * Hash of the same length as one created by the PasswordService.
+     */
+    private static final String PASSWORD_HASH =
+            "sha1:64000:18:3P5jRpPkQR7i4Ga5D4Ha+yI6CyqOg9t2:3JFyTwHb06ib1c5MDvl4Zlbz";
+
+    @Param({ "MEMORY", "FILE" })
+    private String type;
+
+    @Param({ "10000", "100000", "1000000" })
+    private int users;
+
+    private UserStorage storage;
+    private Path directory;
+    private String[] emails;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("FILE".equals(type)) {
+            directory = Files.createTempDirectory("user-storage-benchmark");
+            FileUserStorage fileStorage = new FileUserStorage(directory, 64 * 1024 * 1024);
+            fileStorage.start();
+            storage = fileStorage;
+        } else {
+            storage = InMemoryUserStorage.getInstance();
+        }
+
+        emails = new String[users];
+        for (int i = 0; i < users; i++) {
+            emails[i] = "user" + i + "@example.com";
+            storage.saveUser(user(emails[i]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (storage instanceof FileUserStorage) {
+            ((FileUserStorage) storage).stop();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        // Left behind in the temp directory
+                    }
+                });
+            }
+        }
+    }
+
+    @Benchmark
+    public User loadUser() {
+        return storage.loadUser(emails[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    @Benchmark
+    public User loadMissingUser() {
+        return storage.loadUser("missing" + ThreadLocalRandom.current().nextInt(users));
+    }
+
+    @Benchmark
+    public void saveUser() {
+        storage.saveUser(user(emails[ThreadLocalRandom.current().nextInt(users)]));
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPasswordHash(PASSWORD_HASH);
+        return user;
+    }
+}
@@ -0,0 +1,27 @@
+package io.betweendata.auth.load;
+
+/**
+ * The endpoints driven by the load test.
+ */
+public enum Endpoint {
+    /**
+     * POST /register with a new user
+     */
+    REGISTER,
+    /**
+     * POST /login with a registered user
+     */
+    LOGIN,
+    /**
+     * POST /refresh with the refresh token of the last login
+     */
+    REFRESH,
+    /**
+     * GET /user with the access token of the last login or refresh
+     */
+    USER,
+    /**
+     * POST /introspect with the access token of several users at once
+     */
+    INTROSPECT
+}
@@ -0,0 +1,84 @@
+package io.betweendata.auth.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency and outcome of the requests to one endpoint. Safe to be recorded to by multiple
+ * threads. The histogram only contains successful requests.
+ */
+public class EndpointStats {
+    /**
+     * Highest latency that can be recorded. Higher values are recorded as this value.
+     */
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param latencyNanos - time from sending the request to receiving the full response
+     */
+    public void recordSuccess(long latencyNanos) {
+        recorder.recordValue(
+                Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+    }
+
+    /**
+     * Records a request rejected because the service is overloaded (503 or 429).
+     */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Records a request that failed for any other reason.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Returns everything recorded since the last call and starts a new interval.
+     *
+     * @return
+     */
+    public Interval nextInterval() {
+        return new Interval(recorder.getIntervalHistogram(), rejected.sumThenReset(),
+                errors.sumThenReset());
+    }
+
+    /**
+     * Outcome of the requests within one interval.
+     */
+    public static class Interval {
+        private final Histogram latencies;
+        private final long rejected;
+        private final long errors;
+
+        private Interval(Histogram latencies, long rejected, long errors) {
+            this.latencies = latencies;
+            this.rejected = rejected;
+            this.errors = errors;
+        }
+
+        /**
+         * @return latencies of the successful requests in microseconds
+         */
+        public Histogram getLatencies() {
+            return latencies;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.betweendata.auth.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the heap and the size of the caches and storages during a soak run. Each sample is
+ * taken after a full GC, so the used heap is (roughly) the live data.<br>
+ * Sizes that grow in every interval are reported as possibly unbounded.
+ */
+public class HeapMonitor {
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Map<String, LongSupplier> sizes = new LinkedHashMap<>();
+    /**
+     * Samples in the order of {@link #columns()}
+     */
+    private final List<long[]> samples = new ArrayList<>();
+
+    /**
+     * Adds a size to track, i.e. the number of entries of a cache.
+     *
+     * @param name
+     * @param size
+     */
+    public void track(String name, LongSupplier size) {
+        sizes.put(name, size);
+    }
+
+    /**
+     * Takes a sample and prints it.
+     *
+     * @param elapsedSeconds - time since the soak run started
+     */
+    public void sample(long elapsedSeconds) {
+        if (samples.isEmpty()) {
+            System.out.println(String.join("\t", columns()));
+        }
+        System.gc();
+
+        long[] sample = new long[sizes.size() + 2];
+        sample[0] = elapsedSeconds;
+        sample[1] = memory.getHeapMemoryUsage().getUsed() / 1024;
+        int i = 2;
+        for (LongSupplier size : sizes.values()) {
+            sample[i++] = size.getAsLong();
+        }
+        samples.add(sample);
+
+        StringBuilder line = new StringBuilder();
+        for (long value : sample) {
+            line.append(line.length() == 0 ? "" : "\t").append(value);
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Prints the growth of the heap and each size from the first to the last sample.
+     */
+    public void printSummary() {
+        if (samples.size() < 2) {
+            return;
+        }
+        long[] first = samples.get(0);
+        long[] last = samples.get(samples.size() - 1);
+        long seconds = last[0] - first[0];
+        double minutes = seconds / 60.0;
+        List<String> columns = columns();
+
+        System.out.println();
+        System.out.println("Growth over " + seconds + " s:");
+        for (int column = 1; column < columns.size(); column++) {
+            System.out.printf("  %-60s %12d -> %12d (%+.1f/min)%s%n", columns.get(column),
+                    first[column], last[column], (last[column] - first[column]) / minutes,
+                    growsSteadily(column) ? "  <- grows in every interval, possibly unbounded"
+                            : "");
+        }
+    }
+
+    private boolean growsSteadily(int column) {
+        for (int i = 1; i < samples.size(); i++) {
+            if (samples.get(i)[column] <= samples.get(i - 1)[column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> columns() {
+        List<String> columns = new ArrayList<>();
+        columns.add("seconds");
+        columns.add("heap-after-gc-kb");
+        columns.addAll(sizes.keySet());
+        return columns;
+    }
+}
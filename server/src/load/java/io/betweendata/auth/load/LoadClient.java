@@ -0,0 +1,230 @@
+package io.betweendata.auth.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * One simulated client. It registers its own users and sends requests according to the
+ * {@link RequestMix} until the deadline passes. A client is run by one thread at a time.
+ */
+public class LoadClient implements Runnable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PASSWORD = "load-test-password";
+    /**
+     * Maximum number of users a client remembers. Older users are replaced at random, the
+     * service keeps them.
+     */
+    private static final int MAX_ACCOUNTS = 1000;
+
+    /**
+     * A registered user and its latest token.
+     */
+    private static class Account {
+        private final String email;
+        private String accessToken;
+        private String refreshToken;
+
+        private Account(String email) {
+            this.email = email;
+        }
+    }
+
+    private final HttpClient http;
+    private final URI baseUri;
+    private final RequestMix mix;
+    private final Map<Endpoint, EndpointStats> stats;
+    /**
+     * Shared by all clients to create unique emails
+     */
+    private final AtomicLong userIds;
+    private final String introspectionSecret;
+    private final int introspectionBatch;
+    private final Random random = new Random();
+    private final List<Account> accounts = new ArrayList<>();
+
+    private volatile long deadlineNanos;
+
+    /**
+     * @param http
+     * @param baseUri
+     * @param mix
+     * @param stats
+     * @param userIds
+     * @param introspectionSecret - client secret sent to /introspect
+     * @param introspectionBatch  - maximum number of token per /introspect request
+     */
+    public LoadClient(HttpClient http, URI baseUri, RequestMix mix,
+            Map<Endpoint, EndpointStats> stats, AtomicLong userIds, String introspectionSecret,
+            int introspectionBatch) {
+        this.http = http;
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.stats = stats;
+        this.userIds = userIds;
+        this.introspectionSecret = introspectionSecret;
+        this.introspectionBatch = introspectionBatch;
+    }
+
+    /**
+     * Sets the point in time (see {@link System#nanoTime()}) {@link #run()} returns at.
+     *
+     * @param deadlineNanos
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadlineNanos) {
+            try {
+                send(mix.next(random));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers a new user that is then used by the following requests.
+     *
+     * @throws InterruptedException
+     */
+    public void register() throws InterruptedException {
+        send(Endpoint.REGISTER);
+    }
+
+    /**
+     * Sends one request to the given endpoint. If the endpoint needs a token or user this client
+     * doesn't have yet, the request needed to get it is sent instead.
+     *
+     * @param endpoint
+     * @throws InterruptedException
+     */
+    private void send(Endpoint endpoint) throws InterruptedException {
+        Account account =
+                accounts.isEmpty() ? null : accounts.get(random.nextInt(accounts.size()));
+        if (account == null) {
+            endpoint = Endpoint.REGISTER;
+        } else if ((endpoint == Endpoint.REFRESH && account.refreshToken == null)
+                || ((endpoint == Endpoint.USER || endpoint == Endpoint.INTROSPECT)
+                        && account.accessToken == null)) {
+            endpoint = Endpoint.LOGIN;
+        }
+
+        switch (endpoint) {
+        case REGISTER:
+            Account newAccount =
+                    new Account("load-" + userIds.incrementAndGet() + "@example.com");
+            if (send(endpoint, post("/register", credentials(newAccount))) != null) {
+                if (accounts.size() < MAX_ACCOUNTS) {
+                    accounts.add(newAccount);
+                } else {
+                    accounts.set(random.nextInt(MAX_ACCOUNTS), newAccount);
+                }
+            }
+            break;
+        case LOGIN:
+            JsonNode login = send(endpoint, post("/login", credentials(account)));
+            if (login != null) {
+                account.accessToken = login.path("accessToken").asText(null);
+                account.refreshToken = login.path("refreshToken").asText(null);
+            }
+            break;
+        case REFRESH:
+            JsonNode refresh = send(endpoint, post("/refresh",
+                    MAPPER.createObjectNode().put("refresh_token", account.refreshToken)));
+            if (refresh != null) {
+                account.accessToken = refresh.path("accessToken").asText(null);
+            } else {
+                account.refreshToken = null;
+            }
+            break;
+        case USER:
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/user"))
+                    .header("Authorization", "Bearer " + account.accessToken).GET().build();
+            if (send(endpoint, request) == null) {
+                // Most likely expired
+                account.accessToken = null;
+            }
+            break;
+        case INTROSPECT:
+            // The token of the chosen account and of the accounts following it
+            ArrayNode tokens = MAPPER.createArrayNode();
+            int first = accounts.indexOf(account);
+            for (int i = 0; i < accounts.size() && tokens.size() < introspectionBatch; i++) {
+                String accessToken = accounts.get((first + i) % accounts.size()).accessToken;
+                if (accessToken != null) {
+                    tokens.add(accessToken);
+                }
+            }
+            JsonNode body = MAPPER.createObjectNode().set("tokens", tokens);
+            send(endpoint, postBuilder("/introspect", body)
+                    .header("Authorization", "Bearer " + introspectionSecret).build());
+            break;
+        }
+    }
+
+    /**
+     * Sends the request and records its outcome.
+     *
+     * @param endpoint
+     * @param request
+     * @return the response or <code>null</code> if the request failed
+     * @throws InterruptedException
+     */
+    private JsonNode send(Endpoint endpoint, HttpRequest request) throws InterruptedException {
+        EndpointStats endpointStats = stats.get(endpoint);
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response =
+                    http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long latency = System.nanoTime() - start;
+            int status = response.statusCode();
+            if (status == 503 || status == 429) {
+                endpointStats.recordRejected();
+                return null;
+            }
+            if (status / 100 != 2) {
+                endpointStats.recordError();
+                return null;
+            }
+            endpointStats.recordSuccess(latency);
+            return MAPPER.readTree(response.body());
+        } catch (IOException e) {
+            endpointStats.recordError();
+            return null;
+        }
+    }
+
+    private JsonNode credentials(Account account) {
+        return MAPPER.createObjectNode().put("email", account.email).put("password", PASSWORD);
+    }
+
+    private HttpRequest post(String path, JsonNode body) {
+        return postBuilder(path, body).build();
+    }
+
+    private HttpRequest.Builder postBuilder(String path, JsonNode body) {
+        try {
+            return HttpRequest.newBuilder(baseUri.resolve(path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package io.betweendata.auth.load;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import com.codahale.metrics.Gauge;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.betweendata.auth.AuthenticationServiceApplication;
+import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.service.ServiceLocator;
+import io.dropwizard.request.logging.LogbackAccessRequestLogFactory;
+import io.dropwizard.server.AbstractServerFactory;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+
+/**
+ * Load test of the whole service. The service is started within this JVM on a free port and
+ * driven by {@link LoadClient}s over HTTP:
+ * <ol>
+ * <li>Warm-up with the maximum number of clients</li>
+ * <li>Sweep: 1, 2, 4, ... up to the maximum number of clients, one step each. The throughput
+ * and the latency percentiles of each endpoint are printed after each step and written to the
+ * results file.</li>
+ * <li>Soak (optional): the maximum number of clients for a long time. The heap and the size of
+ * the caches and storages are sampled regularly to catch unbounded growth.</li>
+ * </ol>
+ * Options are passed as <i>--name=value</i>:
+ * <ul>
+ * <li>config - config of the service (default: config.yml). The ports are replaced by free
+ * ones, requests are not logged and login throttling is disabled, as all clients share one
+ * address. The warm-up of the service is disabled unless <i>dw.warmup.enabled</i> is set, as
+ * the load test has a warm-up of its own. If no <i>dw.tokenSecret</i> system property is set a random secret is used.
+ * The clients introspect token with a random client secret.</li>
+ * <li>threads - maximum number of clients (default: two per processor)</li>
+ * <li>mix - weights of the endpoints (default: register=1,login=2,refresh=4,user=16). Add
+ * e.g. <i>introspect=16</i> to compare <i>/introspect</i> with <i>/user</i>.</li>
+ * <li>introspectBatch - maximum number of token per <i>/introspect</i> request (default:
+ * 10)</li>
+ * <li>warmup - duration of the warm-up (default: 10s)</li>
+ * <li>step - duration of each step of the sweep (default: 30s)</li>
+ * <li>soak - duration of the soak run (default: 0s, no soak run)</li>
+ * <li>sampleInterval - interval of the heap samples during the soak run (default: 30s)</li>
+ * <li>results - JSON file the sweep results are written to (default:
+ * build/reports/load/results.json)</li>
+ * </ul>
+ */
+public class LoadTest {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /**
+     * The service, giving access to its environment once it has been started.
+     */
+    private static class LoadTestApplication extends AuthenticationServiceApplication {
+        private final CompletableFuture<Server> started = new CompletableFuture<>();
+        private Environment environment;
+
+        @Override
+        public void run(AuthenticationServiceConfiguration configuration,
+                Environment environment) throws Exception {
+            // Logging every request would slow down the service and drown the results. The
+            // server is built after this method, so the request log can still be replaced.
+            if (configuration.getServerFactory() instanceof AbstractServerFactory) {
+                LogbackAccessRequestLogFactory requestLog = new LogbackAccessRequestLogFactory();
+                requestLog.setAppenders(ImmutableList.of());
+                ((AbstractServerFactory) configuration.getServerFactory())
+                        .setRequestLogFactory(requestLog);
+            }
+            super.run(configuration, environment);
+            this.environment = environment;
+            environment.lifecycle().addServerLifecycleListener(started::complete);
+        }
+    }
+
+    private final Map<String, String> options;
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+    private final List<LoadClient> clients = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ArrayNode results = mapper.createArrayNode();
+
+    private LoadTestApplication application;
+    private Server server;
+    private String introspectionSecret;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Options have to be passed as --name=value");
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        new LoadTest(options).run();
+        // The services of the application keep non-daemon threads running
+        System.exit(0);
+    }
+
+    public LoadTest(Map<String, String> options) {
+        this.options = options;
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public void run() throws Exception {
+        URI baseUri = start(options.getOrDefault("config", "config.yml"));
+        try {
+            int maxThreads = Integer.parseInt(options.getOrDefault("threads",
+                    String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+            RequestMix mix = new RequestMix(
+                    options.getOrDefault("mix", "register=1,login=2,refresh=4,user=16"));
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .build();
+            int introspectBatch =
+                    Integer.parseInt(options.getOrDefault("introspectBatch", "10"));
+            AtomicLong userIds = new AtomicLong();
+            for (int i = 0; i < maxThreads; i++) {
+                LoadClient client = new LoadClient(http, baseUri, mix, stats, userIds,
+                        introspectionSecret, introspectBatch);
+                client.register();
+                clients.add(client);
+            }
+            System.out.println("Service started at " + baseUri + ", request mix: " + mix);
+
+            runClients(maxThreads, duration("warmup", "10s"));
+            nextInterval();
+
+            // Sweep
+            Duration step = duration("step", "30s");
+            for (int threads = 1; threads <= maxThreads;
+                    threads = nextThreads(threads, maxThreads)) {
+                runClients(threads, step);
+                report(threads, step);
+            }
+            writeResults(new File(
+                    options.getOrDefault("results", "build/reports/load/results.json")));
+
+            Duration soak = duration("soak", "0s");
+            if (soak.toNanoseconds() > 0) {
+                soak(maxThreads, soak, duration("sampleInterval", "30s"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts the service on free ports.
+     *
+     * @param config
+     * @return the URI of the application connector
+     * @throws Exception
+     */
+    private URI start(String config) throws Exception {
+        System.setProperty("dw.server.applicationConnectors[0].port", "0");
+        System.setProperty("dw.server.adminConnectors[0].port", "0");
+        System.setProperty("dw.logging.level", "WARN");
+        System.setProperty("dw.throttling.enabled", "false");
+        if (System.getProperty("dw.warmup.enabled") == null) {
+            System.setProperty("dw.warmup.enabled", "false");
+        }
+        if (System.getProperty("dw.tokenSecret") == null) {
+            byte[] secret = new byte[48];
+            new SecureRandom().nextBytes(secret);
+            System.setProperty("dw.tokenSecret", Base64.getEncoder().encodeToString(secret));
+        }
+        // The clients introspect with a secret of their own
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        introspectionSecret = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+        System.setProperty("dw.introspection.clientSecrets", introspectionSecret);
+
+        application = new LoadTestApplication();
+        application.run("server", config);
+        server = application.started.get(1, TimeUnit.MINUTES);
+        // The application connector is the first one
+        return URI.create(
+                "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+    }
+
+    /**
+     * Runs the given number of clients for the given time.
+     *
+     * @param threads
+     * @param duration
+     * @throws InterruptedException
+     */
+    private void runClients(int threads, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanoseconds();
+        List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            LoadClient client = clients.get(i);
+            client.setDeadline(deadline);
+            Thread thread = new Thread(client, "load-client-" + i);
+            thread.start();
+            running.add(thread);
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+    }
+
+    private static int nextThreads(int threads, int maxThreads) {
+        return threads == maxThreads ? maxThreads + 1 : Math.min(2 * threads, maxThreads);
+    }
+
+    /**
+     * Prints the outcome of the last step and adds it to the results.
+     *
+     * @param threads
+     * @param step
+     */
+    private void report(int threads, Duration step) {
+        double seconds = step.toMilliseconds() / 1000.0;
+        ObjectNode result = results.addObject().put("threads", threads);
+        ObjectNode endpoints = result.putObject("endpoints");
+
+        System.out.printf("%n%d thread(s)%n", threads);
+        System.out.printf("  %-10s %10s %10s %9s %9s %9s %9s %9s %9s %7s%n", "endpoint",
+                "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+                "rejected", "errors");
+        double total = 0;
+        Map<Endpoint, EndpointStats.Interval> intervals = nextInterval();
+        for (Map.Entry<Endpoint, EndpointStats.Interval> entry : intervals.entrySet()) {
+            Histogram latencies = entry.getValue().getLatencies();
+            if (latencies.getTotalCount() == 0 && entry.getValue().getErrors() == 0
+                    && entry.getValue().getRejected() == 0) {
+                continue;
+            }
+            double throughput = latencies.getTotalCount() / seconds;
+            total += throughput;
+
+            ObjectNode endpoint = endpoints.putObject(entry.getKey().name().toLowerCase())
+                    .put("requests", latencies.getTotalCount())
+                    .put("throughput", throughput)
+                    .put("rejected", entry.getValue().getRejected())
+                    .put("errors", entry.getValue().getErrors());
+            StringBuilder percentiles = new StringBuilder();
+            for (double percentile : PERCENTILES) {
+                double millis = latencies.getValueAtPercentile(percentile) / 1000.0;
+                endpoint.put("p" + percentile, millis);
+                percentiles.append(String.format(" %9.2f", millis));
+            }
+            endpoint.put("max", latencies.getMaxValue() / 1000.0);
+
+            System.out.printf("  %-10s %10d %10.1f%s %9.2f %9d %7d%n",
+                    entry.getKey().name().toLowerCase(), latencies.getTotalCount(), throughput,
+                    percentiles, latencies.getMaxValue() / 1000.0,
+                    entry.getValue().getRejected(), entry.getValue().getErrors());
+        }
+        result.put("throughput", total);
+        System.out.printf("  total %.1f req/s%n", total);
+    }
+
+    private Map<Endpoint, EndpointStats.Interval> nextInterval() {
+        Map<Endpoint, EndpointStats.Interval> intervals = new EnumMap<>(Endpoint.class);
+        stats.forEach((endpoint, endpointStats) -> intervals.put(endpoint,
+                endpointStats.nextInterval()));
+        return intervals;
+    }
+
+    private void writeResults(File file) throws Exception {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, results);
+        System.out.println();
+        System.out.println("Results written to " + file);
+    }
+
+    /**
+     * Runs the clients for a long time and samples the heap in between.
+     *
+     * @param threads
+     * @param duration
+     * @param sampleInterval
+     * @throws InterruptedException
+     */
+    private void soak(int threads, Duration duration, Duration sampleInterval)
+            throws InterruptedException {
+        HeapMonitor monitor = createHeapMonitor();
+        System.out.printf("%nSoak run with %d thread(s) for %s%n", threads, duration);
+
+        long start = System.nanoTime();
+        long end = start + duration.toNanoseconds();
+        monitor.sample(0);
+        while (System.nanoTime() < end) {
+            long remaining = end - System.nanoTime();
+            runClients(threads, Duration.nanoseconds(
+                    Math.min(remaining, sampleInterval.toNanoseconds())));
+            monitor.sample(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        }
+        monitor.printSummary();
+        nextInterval();
+    }
+
+    /**
+     * Tracks the size of the storage, the refresh token cache and every metric whose name ends
+     * with <i>size</i>.
+     *
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    private HeapMonitor createHeapMonitor() {
+        HeapMonitor monitor = new HeapMonitor();
+
+        monitor.track("users", ServiceLocator.get().getUserStorage()::size);
+        monitor.track("refresh-token", ServiceLocator.get().getRefreshTokenCache()::size);
+
+        for (Map.Entry<String, Gauge> gauge : application.environment.metrics().getGauges()
+                .entrySet()) {
+            if (gauge.getKey().endsWith("size")) {
+                monitor.track(gauge.getKey(), () -> {
+                    Object value = gauge.getValue().getValue();
+                    return value instanceof Number ? ((Number) value).longValue() : -1;
+                });
+            }
+        }
+        return monitor;
+    }
+
+    private Duration duration(String option, String defaultValue) {
+        return Duration.parse(options.getOrDefault(option, defaultValue));
+    }
+}
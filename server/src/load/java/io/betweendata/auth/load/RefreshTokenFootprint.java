@@ -0,0 +1,112 @@
+package io.betweendata.auth.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.service.TokenService;
+import io.betweendata.auth.token.InMemoryRefreshTokenCache;
+import io.betweendata.auth.token.IssuedToken;
+import io.betweendata.auth.token.TokenId;
+
+/**
+ * Measures the heap taken by the live sessions of the refresh token cache. The given number of
+ * refresh token is created and kept in the structure under test, then the heap used after a
+ * full GC is compared with the heap used before:
+ * <ul>
+ * <li>table - the {@link InMemoryRefreshTokenCache}, which keeps the 128 bit id of each token
+ * and its expiry in primitive arrays</li>
+ * <li>map - a {@link ConcurrentHashMap} from the compact token to its expiry, which is how the
+ * cache kept token before</li>
+ * </ul>
+ * Options are passed as <i>--name=value</i>:
+ * <ul>
+ * <li>sessions - number of refresh token (default: 10000000)</li>
+ * <li>structure - <i>table</i>, <i>map</i> or <i>both</i> (default: both)</li>
+ * </ul>
+ * The map takes about 350 bytes per session, so 10M sessions need a heap of 4 GB.
+ */
+public class RefreshTokenFootprint {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef0123456789";
+    private static final String EMAIL = "footprint@example.com";
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final TokenService tokenService;
+    private final int sessions;
+    private final String structure;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Options have to be passed as --name=value");
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        new RefreshTokenFootprint(options).run();
+    }
+
+    public RefreshTokenFootprint(Map<String, String> options) {
+        sessions = Integer.parseInt(options.getOrDefault("sessions", "10000000"));
+        structure = options.getOrDefault("structure", "both");
+        AuthenticationServiceConfiguration config = new AuthenticationServiceConfiguration();
+        config.setTokenSecret(SECRET);
+        tokenService = new TokenService(config, new MetricRegistry());
+    }
+
+    public void run() {
+        System.out.printf("%-8s %12s %12s %10s%n", "", "sessions", "heap-mb", "bytes/entry");
+        if (!structure.equals("map")) {
+            measureTable();
+        }
+        if (!structure.equals("table")) {
+            measureMap();
+        }
+    }
+
+    private void measureTable() {
+        long before = usedHeapAfterGc();
+        // Segments fill unevenly, the headroom keeps the fullest ones from dropping token
+        InMemoryRefreshTokenCache cache =
+                new InMemoryRefreshTokenCache(sessions + sessions / 10, Duration.ZERO);
+        for (int i = 0; i < sessions; i++) {
+            IssuedToken token = tokenService.createRefreshToken(EMAIL);
+            cache.add(TokenId.of(token), token.getExpiresAt());
+        }
+        long used = usedHeapAfterGc() - before;
+        print("table", cache.size(), used);
+        Reference.reachabilityFence(cache);
+    }
+
+    private void measureMap() {
+        long before = usedHeapAfterGc();
+        Map<String, Long> cache = new ConcurrentHashMap<>();
+        for (int i = 0; i < sessions; i++) {
+            IssuedToken token = tokenService.createRefreshToken(EMAIL);
+            cache.put(token.getToken(), token.getExpiresAt().toEpochMilli());
+        }
+        long used = usedHeapAfterGc() - before;
+        print("map", cache.size(), used);
+        Reference.reachabilityFence(cache);
+    }
+
+    private long usedHeapAfterGc() {
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void print(String structure, int size, long bytes) {
+        System.out.printf("%-8s %12d %12d %10d%n", structure, size, bytes / (1024 * 1024),
+                bytes / Math.max(1, size));
+    }
+}
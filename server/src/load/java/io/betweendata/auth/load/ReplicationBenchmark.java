@@ -0,0 +1,234 @@
+package io.betweendata.auth.load;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+
+import io.betweendata.auth.token.ReplicatedRefreshTokenCache;
+import io.betweendata.auth.token.TokenId;
+
+/**
+ * Benchmark of the {@link ReplicatedRefreshTokenCache}. Several caches are started within this
+ * JVM, replicating to each other over localhost:
+ * <ol>
+ * <li>Lag: token are added at the first node at a fixed rate. The lag percentiles reported by
+ * the other nodes are printed.</li>
+ * <li>Throughput: token are added at the first node as fast as possible. The time until all
+ * nodes know all of them is printed.</li>
+ * <li>Catch-up: the last node is stopped, the first node keeps adding and removing token, and
+ * the last node is started again empty. The time until it has been caught up is printed.</li>
+ * </ol>
+ * Options are passed as <i>--name=value</i>:
+ * <ul>
+ * <li>nodes - number of caches (default: 3)</li>
+ * <li>port - replication port of the first node, the others use the following ports
+ * (default: 7100)</li>
+ * <li>rate - token added per second during the lag run (default: 10000)</li>
+ * <li>duration - duration of the lag run (default: 10s)</li>
+ * <li>changes - token added during the throughput and the catch-up run (default:
+ * 1000000)</li>
+ * </ul>
+ */
+public class ReplicationBenchmark {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final Duration TOKEN_LIFETIME = Duration.ofDays(1);
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int nodeCount;
+    private final int port;
+    private final int rate;
+    private final long durationMillis;
+    private final int changes;
+    private final int maxSize;
+
+    private final ReplicatedRefreshTokenCache[] nodes;
+    private final MetricRegistry[] metrics;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Options have to be passed as --name=value");
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        new ReplicationBenchmark(options).run();
+        System.exit(0);
+    }
+
+    public ReplicationBenchmark(Map<String, String> options) {
+        nodeCount = Integer.parseInt(options.getOrDefault("nodes", "3"));
+        port = Integer.parseInt(options.getOrDefault("port", "7100"));
+        rate = Integer.parseInt(options.getOrDefault("rate", "10000"));
+        durationMillis = io.dropwizard.util.Duration
+                .parse(options.getOrDefault("duration", "10s")).toMilliseconds();
+        changes = Integer.parseInt(options.getOrDefault("changes", "1000000"));
+        if (nodeCount < 2) {
+            throw new IllegalArgumentException("At least two nodes are needed");
+        }
+        // Large enough for every token added, so none are evicted
+        maxSize = (int) Math.min(Integer.MAX_VALUE,
+                2L * changes + 2L * rate * TimeUnit.MILLISECONDS.toSeconds(durationMillis));
+        nodes = new ReplicatedRefreshTokenCache[nodeCount];
+        metrics = new MetricRegistry[nodeCount];
+    }
+
+    public void run() throws Exception {
+        for (int node = 0; node < nodeCount; node++) {
+            startNode(node);
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            awaitConnected(node);
+        }
+
+        measureLag();
+        measureThroughput();
+        measureCatchUp();
+
+        for (ReplicatedRefreshTokenCache node : nodes) {
+            node.stop();
+        }
+    }
+
+    private void measureLag() throws InterruptedException {
+        System.out.printf("Lag at %d token/s for %d s:%n", rate,
+                TimeUnit.MILLISECONDS.toSeconds(durationMillis));
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long next = start;
+        int added = 0;
+        while (next < end) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            nodes[0].add(randomId(), expiresAt());
+            added++;
+            next += intervalNanos;
+        }
+        awaitSize(nodes[0].size());
+
+        for (int node = 1; node < nodeCount; node++) {
+            Snapshot lag = metrics[node]
+                    .timer(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "lag"))
+                    .getSnapshot();
+            StringBuilder line = new StringBuilder("  node " + node + ":");
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(" p%s=%.0f us", format(percentile),
+                        lag.getValue(percentile / 100) / 1000));
+            }
+            line.append(String.format(" max=%d us", lag.getMax() / 1000));
+            System.out.println(line);
+        }
+        System.out.printf("  %d token replicated%n", added);
+    }
+
+    private void measureThroughput() throws InterruptedException {
+        int expected = nodes[0].size() + changes;
+        long start = System.nanoTime();
+        for (int i = 0; i < changes; i++) {
+            nodes[0].add(randomId(), expiresAt());
+        }
+        long addedNanos = System.nanoTime() - start;
+        awaitSize(expected);
+        long replicatedNanos = System.nanoTime() - start;
+        System.out.printf("Throughput: %d token added in %d ms (%.0f token/s),"
+                + " replicated to %d nodes in %d ms (%.0f token/s)%n", changes,
+                TimeUnit.NANOSECONDS.toMillis(addedNanos), changes * 1e9 / addedNanos,
+                nodeCount - 1, TimeUnit.NANOSECONDS.toMillis(replicatedNanos),
+                changes * 1e9 / replicatedNanos);
+    }
+
+    private void measureCatchUp() throws Exception {
+        int last = nodeCount - 1;
+        nodes[last].stop();
+
+        // Changes the stopped node misses: new token and removals of known ones
+        List<TokenId> added = new ArrayList<>();
+        for (int i = 0; i < changes; i++) {
+            TokenId id = randomId();
+            nodes[0].add(id, expiresAt());
+            if (i % 10 == 0) {
+                added.add(id);
+            }
+        }
+        for (TokenId id : added) {
+            nodes[0].remove(id);
+        }
+
+        long start = System.nanoTime();
+        startNode(last);
+        awaitSize(nodes[0].size());
+        long caughtUpNanos = System.nanoTime() - start;
+        for (TokenId id : added) {
+            if (nodes[last].exists(id)) {
+                throw new IllegalStateException("Removed token " + id + " was revived");
+            }
+        }
+        System.out.printf("Catch-up: restarted node caught up with %d token in %d ms%n",
+                nodes[last].size(), TimeUnit.NANOSECONDS.toMillis(caughtUpNanos));
+    }
+
+    private void startNode(int node) throws Exception {
+        List<String> peers = new ArrayList<>();
+        for (int peer = 0; peer < nodeCount; peer++) {
+            if (peer != node) {
+                peers.add("localhost:" + (port + peer));
+            }
+        }
+        metrics[node] = new MetricRegistry();
+        nodes[node] = new ReplicatedRefreshTokenCache(maxSize, maxSize, TOKEN_LIFETIME,
+                "localhost", port + node, peers, metrics[node]);
+        nodes[node].start();
+    }
+
+    private void awaitConnected(int node) throws InterruptedException {
+        await(() -> ((Number) metrics[node].getGauges()
+                .get(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "connected-peers"))
+                .getValue()).intValue() == nodeCount - 1);
+    }
+
+    /**
+     * Waits until every node holds the given number of token.
+     */
+    private void awaitSize(int size) throws InterruptedException {
+        for (ReplicatedRefreshTokenCache node : nodes) {
+            await(() -> node.size() == size);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Nodes did not converge");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static TokenId randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TokenId(random.nextLong(), random.nextLong());
+    }
+
+    private static Instant expiresAt() {
+        return Instant.now().plus(TOKEN_LIFETIME);
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile)
+                : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,68 @@
+package io.betweendata.auth.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted mix of the endpoints to request, i.e.
+ * <code>register=1,login=2,refresh=4,user=16</code>. Endpoints without a weight are not
+ * requested.
+ */
+public class RequestMix {
+    private final Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+    private final Endpoint[] endpoints;
+    /**
+     * Cumulative weights in the order of {@link #endpoints}
+     */
+    private final int[] thresholds;
+
+    /**
+     * @param mix - comma separated list of <i>endpoint=weight</i>
+     * @throws IllegalArgumentException if the mix is malformed
+     */
+    public RequestMix(String mix) {
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed request mix: " + mix);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Endpoint.valueOf(parts[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The request mix contains no endpoint");
+        }
+
+        endpoints = weights.keySet().toArray(new Endpoint[0]);
+        thresholds = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += weights.get(endpoints[i]);
+            thresholds[i] = total;
+        }
+    }
+
+    /**
+     * Picks the next endpoint to request.
+     *
+     * @param random
+     * @return
+     */
+    public Endpoint next(Random random) {
+        int value = random.nextInt(thresholds[thresholds.length - 1]);
+        for (int i = 0; i < thresholds.length; i++) {
+            if (value < thresholds[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+}
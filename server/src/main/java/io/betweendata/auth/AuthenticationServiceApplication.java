@@ -1,10 +1,23 @@
 package io.betweendata.auth;
 
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.betweendata.auth.health.GcPauseHealthCheck;
+import io.betweendata.auth.health.ReadinessHealthCheck;
+import io.betweendata.auth.health.RequestThreadsHealthCheck;
+import io.betweendata.auth.health.SaturationHealthCheck;
+import io.betweendata.auth.service.HashingService;
+import io.betweendata.auth.service.RequestExecutorProvider;
 import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.Warmup;
+import io.betweendata.auth.token.JsonWebKeySetResource;
 import io.betweendata.auth.token.TokenAuthFilter;
-import io.betweendata.auth.user.ExampleHealthCheck;
+import io.betweendata.auth.token.TokenAuthenticator;
+import io.betweendata.auth.token.TokenIntrospectionResource;
+import io.betweendata.auth.token.TokenRevocationResource;
+import io.betweendata.auth.token.VerifiedTokenCache;
 import io.betweendata.auth.user.UserAuthenticationResource;
+import io.betweendata.auth.user.UserAuthenticationResponseWriter;
+import io.betweendata.auth.user.UserWriter;
 import io.dropwizard.Application;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.setup.Environment;
@@ -42,38 +55,100 @@ public class AuthenticationServiceApplication
         // object will be an array instead of a string
         environment.getObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
-        // Register authentication filter
-        environment.jersey().register(new AuthDynamicFeature(new TokenAuthFilter()));
+        // Initialize services
+        ServiceLocator.get().init(configuration, environment);
+
+        // Register authentication filter. Verified token are cached and the cache has to forget
+        // about a user as soon as it changes and about all token as soon as the keys change.
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(environment.metrics(),
+                ServiceLocator.get().getRevocationList());
+        ServiceLocator.get().getUserStorage().addUpdateListener(verifiedTokenCache::invalidate);
+        ServiceLocator.get().getTokenService().addKeyringListener(verifiedTokenCache::invalidateAll);
+        environment.jersey().register(new AuthDynamicFeature(new TokenAuthFilter(
+                new TokenAuthenticator(verifiedTokenCache, environment.metrics()),
+                environment.metrics())));
         // Allow for role based authentication using Annotations
         environment.jersey().register(RolesAllowedDynamicFeature.class);
-
-        registerResources(environment);
-        registerHealthChecks(environment);
-
-        // Initialize services
-        ServiceLocator.get().init(configuration);
+        // Executor of the blocking endpoints (annotated with @ManagedAsync)
+        environment.jersey()
+                .register(new RequestExecutorProvider(configuration.getRequestExecution()));
+        // The JSON of the most frequent responses is written without Jackson
+        environment.jersey().register(new UserAuthenticationResponseWriter());
+        environment.jersey().register(new UserWriter());
+
+        registerResources(configuration, environment);
+
+        // Run the hot paths once before taking traffic. The warm-up runs in the background
+        // while the server starts, the readiness check fails until it has finished.
+        Warmup warmup = new Warmup(configuration.getWarmup(), environment.getObjectMapper());
+        environment.lifecycle().manage(warmup);
+        environment.lifecycle().addServerLifecycleListener(warmup::serverStarted);
+        registerHealthChecks(configuration, environment, warmup);
     }
 
     /**
      * Registers all resources (API endpoint) provided by this app.
      *
+     * @param configuration
      * @param environment
      */
-    protected void registerResources(Environment environment) {
-        UserAuthenticationResource authenticationResource = new UserAuthenticationResource();
+    protected void registerResources(AuthenticationServiceConfiguration configuration,
+            Environment environment) {
+        UserAuthenticationResource authenticationResource =
+                new UserAuthenticationResource(configuration.getHashing().getRetryAfter());
         environment.jersey().register(authenticationResource);
+        environment.jersey()
+                .register(new TokenIntrospectionResource(configuration.getIntrospection()));
+        environment.jersey().register(new TokenRevocationResource());
+        environment.jersey().register(new JsonWebKeySetResource());
 
     }
 
     /**
-     * Register custom health checks.
+     * Register custom health checks. Besides the readiness these report how saturated the
+     * service is, see {@link HealthConfiguration}.
      *
+     * @param configuration
      * @param environment
+     * @param warmup        - the service is not ready before it has finished
      */
-    protected void registerHealthChecks(Environment environment) {
-        ExampleHealthCheck authenticationHealthCheck =
-                new ExampleHealthCheck();
-        environment.healthChecks().register("example", authenticationHealthCheck);
+    protected void registerHealthChecks(AuthenticationServiceConfiguration configuration,
+            Environment environment, Warmup warmup) {
+        HealthConfiguration health = configuration.getHealth();
+        ServiceLocator services = ServiceLocator.get();
+        environment.healthChecks().register("ready", new ReadinessHealthCheck(warmup));
+
+        RequestThreadsHealthCheck requestThreads = new RequestThreadsHealthCheck(
+                health.getRequestThreadsDegraded(), health.getRequestThreadsUnhealthy());
+        environment.lifecycle().addServerLifecycleListener(requestThreads::serverStarted);
+        environment.healthChecks().register("request-threads", requestThreads);
+
+        HashingService hashingService = services.getHashingService();
+        environment.healthChecks().register("hashing-queue",
+                SaturationHealthCheck.of("hashing queue", hashingService::getQueueDepth,
+                        hashingService.getQueueSize(), health.getHashingQueueDegraded(),
+                        health.getHashingQueueUnhealthy()));
+
+        environment.healthChecks().register("gc-pause",
+                new GcPauseHealthCheck(health.getGcPauseWindow(), health.getGcPauseDegraded(),
+                        health.getGcPauseUnhealthy()));
+
+        environment.healthChecks().register("refresh-token-cache",
+                SaturationHealthCheck.of("refresh token cache",
+                        services.getRefreshTokenCache()::size,
+                        configuration.getRefreshTokenCache().getMaxSize(),
+                        health.getCacheDegraded(), SaturationHealthCheck.NEVER_UNHEALTHY));
+        environment.healthChecks().register("revocation-list",
+                SaturationHealthCheck.of("revocation list", services.getRevocationList()::size,
+                        configuration.getRevocation().getMaxSize(), health.getCacheDegraded(),
+                        SaturationHealthCheck.NEVER_UNHEALTHY));
+
+        if (health.getMaxUsers() > 0) {
+            environment.healthChecks().register("users",
+                    SaturationHealthCheck.of("user storage", services.getUserStorage()::size,
+                            health.getMaxUsers(), health.getUsersDegraded(),
+                            health.getUsersUnhealthy()));
+        }
     }
 
 
@@ -1,5 +1,8 @@
 package io.betweendata.auth;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
 import org.hibernate.validator.constraints.NotEmpty;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -15,6 +18,46 @@ public class AuthenticationServiceConfiguration extends Configuration {
     @NotEmpty
     private String tokenSecret;
 
+    @Valid
+    @NotNull
+    private TokenSigningConfiguration tokenSigning = new TokenSigningConfiguration();
+
+    @Valid
+    @NotNull
+    private RefreshTokenCacheConfiguration refreshTokenCache = new RefreshTokenCacheConfiguration();
+
+    @Valid
+    @NotNull
+    private UserStorageConfiguration userStorage = new UserStorageConfiguration();
+
+    @Valid
+    @NotNull
+    private HashingConfiguration hashing = new HashingConfiguration();
+
+    @Valid
+    @NotNull
+    private ThrottlingConfiguration throttling = new ThrottlingConfiguration();
+
+    @Valid
+    @NotNull
+    private RevocationConfiguration revocation = new RevocationConfiguration();
+
+    @Valid
+    @NotNull
+    private IntrospectionConfiguration introspection = new IntrospectionConfiguration();
+
+    @Valid
+    @NotNull
+    private RequestExecutionConfiguration requestExecution = new RequestExecutionConfiguration();
+
+    @Valid
+    @NotNull
+    private WarmupConfiguration warmup = new WarmupConfiguration();
+
+    @Valid
+    @NotNull
+    private HealthConfiguration health = new HealthConfiguration();
+
     @JsonProperty
     public String getTokenSecret() {
 	return tokenSecret;
@@ -25,4 +68,104 @@ public class AuthenticationServiceConfiguration extends Configuration {
 	this.tokenSecret = tokenSecret;
     }
 
+    @JsonProperty
+    public TokenSigningConfiguration getTokenSigning() {
+	return tokenSigning;
+    }
+
+    @JsonProperty
+    public void setTokenSigning(TokenSigningConfiguration tokenSigning) {
+	this.tokenSigning = tokenSigning;
+    }
+
+    @JsonProperty
+    public RefreshTokenCacheConfiguration getRefreshTokenCache() {
+	return refreshTokenCache;
+    }
+
+    @JsonProperty
+    public void setRefreshTokenCache(RefreshTokenCacheConfiguration refreshTokenCache) {
+	this.refreshTokenCache = refreshTokenCache;
+    }
+
+    @JsonProperty
+    public UserStorageConfiguration getUserStorage() {
+	return userStorage;
+    }
+
+    @JsonProperty
+    public void setUserStorage(UserStorageConfiguration userStorage) {
+	this.userStorage = userStorage;
+    }
+
+    @JsonProperty
+    public HashingConfiguration getHashing() {
+	return hashing;
+    }
+
+    @JsonProperty
+    public void setHashing(HashingConfiguration hashing) {
+	this.hashing = hashing;
+    }
+
+    @JsonProperty
+    public ThrottlingConfiguration getThrottling() {
+	return throttling;
+    }
+
+    @JsonProperty
+    public void setThrottling(ThrottlingConfiguration throttling) {
+	this.throttling = throttling;
+    }
+
+    @JsonProperty
+    public RevocationConfiguration getRevocation() {
+	return revocation;
+    }
+
+    @JsonProperty
+    public void setRevocation(RevocationConfiguration revocation) {
+	this.revocation = revocation;
+    }
+
+    @JsonProperty
+    public IntrospectionConfiguration getIntrospection() {
+	return introspection;
+    }
+
+    @JsonProperty
+    public void setIntrospection(IntrospectionConfiguration introspection) {
+	this.introspection = introspection;
+    }
+
+    @JsonProperty
+    public RequestExecutionConfiguration getRequestExecution() {
+	return requestExecution;
+    }
+
+    @JsonProperty
+    public void setRequestExecution(RequestExecutionConfiguration requestExecution) {
+	this.requestExecution = requestExecution;
+    }
+
+    @JsonProperty
+    public WarmupConfiguration getWarmup() {
+	return warmup;
+    }
+
+    @JsonProperty
+    public void setWarmup(WarmupConfiguration warmup) {
+	this.warmup = warmup;
+    }
+
+    @JsonProperty
+    public HealthConfiguration getHealth() {
+	return health;
+    }
+
+    @JsonProperty
+    public void setHealth(HealthConfiguration health) {
+	this.health = health;
+    }
+
 }
@@ -0,0 +1,103 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the password hashing and the executor running it.<br>
+ * This class represents the <i>hashing</i> section of the <i>config.yml</i>.
+ */
+public class HashingConfiguration {
+
+    /**
+     * Algorithm new passwords are hashed with (<i>sha1</i>, <i>sha256</i> or <i>sha512</i>).
+     * Existing hashes are upgraded on the next successful login.
+     */
+    @NotEmpty
+    private String algorithm = "sha1";
+
+    /**
+     * Iteration count new passwords are hashed with. Existing hashes are upgraded on the next
+     * successful login.
+     */
+    @Min(1)
+    private int iterations = 64000;
+
+    /**
+     * Number of threads hashing passwords. <code>0</code> uses one thread per available
+     * processor.
+     */
+    @Min(0)
+    private int threads = 0;
+
+    /**
+     * Number of hash operations waiting for a thread. Requests beyond that are rejected with
+     * <i>503 Service Unavailable</i>.
+     */
+    @Min(1)
+    private int queueSize = 256;
+
+    /**
+     * Sent to rejected clients in the <i>Retry-After</i> header.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration retryAfter = Duration.seconds(1);
+
+    @JsonProperty
+    public String getAlgorithm() {
+	return algorithm;
+    }
+
+    @JsonProperty
+    public void setAlgorithm(String algorithm) {
+	this.algorithm = algorithm;
+    }
+
+    @JsonProperty
+    public int getIterations() {
+	return iterations;
+    }
+
+    @JsonProperty
+    public void setIterations(int iterations) {
+	this.iterations = iterations;
+    }
+
+    @JsonProperty
+    public int getThreads() {
+	return threads;
+    }
+
+    @JsonProperty
+    public void setThreads(int threads) {
+	this.threads = threads;
+    }
+
+    @JsonProperty
+    public int getQueueSize() {
+	return queueSize;
+    }
+
+    @JsonProperty
+    public void setQueueSize(int queueSize) {
+	this.queueSize = queueSize;
+    }
+
+    @JsonProperty
+    public Duration getRetryAfter() {
+	return retryAfter;
+    }
+
+    @JsonProperty
+    public void setRetryAfter(Duration retryAfter) {
+	this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,186 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the health checks reporting how saturated the service is. Every check
+ * reports the service as degraded (still healthy) once the share of a resource in use reaches
+ * its <i>degraded</i> percentage and fails once it reaches its <i>unhealthy</i> percentage, so
+ * a load balancer sheds traffic from the instance before it falls over.<br>
+ * This class represents the <i>health</i> section of the <i>config.yml</i>.
+ */
+public class HealthConfiguration {
+
+    /**
+     * Percentages of the request threads of the server that are busy.
+     */
+    @Min(1)
+    private int requestThreadsDegraded = 75;
+
+    @Min(1)
+    private int requestThreadsUnhealthy = 95;
+
+    /**
+     * Percentages of the queue in front of the password hashing threads in use.
+     */
+    @Min(1)
+    private int hashingQueueDegraded = 50;
+
+    @Min(1)
+    private int hashingQueueUnhealthy = 90;
+
+    /**
+     * Percentages of the time spent in garbage collection pauses within the window.
+     */
+    @Min(1)
+    private int gcPauseDegraded = 5;
+
+    @Min(1)
+    private int gcPauseUnhealthy = 20;
+
+    /**
+     * Minimum time the garbage collection pauses are measured over.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration gcPauseWindow = Duration.seconds(10);
+
+    /**
+     * Percentage of the maximum size of the refresh token cache and the revocation list in
+     * use. Once full the cache drops the token expiring next and the list refuses new
+     * revocations. Neither affects the other requests, so they are only reported as degraded.
+     */
+    @Min(1)
+    private int cacheDegraded = 90;
+
+    /**
+     * Number of users the user storage has been sized for. 0 disables the check.
+     */
+    @Min(0)
+    private int maxUsers = 0;
+
+    /**
+     * Percentages of {@link #maxUsers} stored.
+     */
+    @Min(1)
+    private int usersDegraded = 80;
+
+    @Min(1)
+    private int usersUnhealthy = 100;
+
+    @JsonProperty
+    public int getRequestThreadsDegraded() {
+	return requestThreadsDegraded;
+    }
+
+    @JsonProperty
+    public void setRequestThreadsDegraded(int requestThreadsDegraded) {
+	this.requestThreadsDegraded = requestThreadsDegraded;
+    }
+
+    @JsonProperty
+    public int getRequestThreadsUnhealthy() {
+	return requestThreadsUnhealthy;
+    }
+
+    @JsonProperty
+    public void setRequestThreadsUnhealthy(int requestThreadsUnhealthy) {
+	this.requestThreadsUnhealthy = requestThreadsUnhealthy;
+    }
+
+    @JsonProperty
+    public int getHashingQueueDegraded() {
+	return hashingQueueDegraded;
+    }
+
+    @JsonProperty
+    public void setHashingQueueDegraded(int hashingQueueDegraded) {
+	this.hashingQueueDegraded = hashingQueueDegraded;
+    }
+
+    @JsonProperty
+    public int getHashingQueueUnhealthy() {
+	return hashingQueueUnhealthy;
+    }
+
+    @JsonProperty
+    public void setHashingQueueUnhealthy(int hashingQueueUnhealthy) {
+	this.hashingQueueUnhealthy = hashingQueueUnhealthy;
+    }
+
+    @JsonProperty
+    public int getGcPauseDegraded() {
+	return gcPauseDegraded;
+    }
+
+    @JsonProperty
+    public void setGcPauseDegraded(int gcPauseDegraded) {
+	this.gcPauseDegraded = gcPauseDegraded;
+    }
+
+    @JsonProperty
+    public int getGcPauseUnhealthy() {
+	return gcPauseUnhealthy;
+    }
+
+    @JsonProperty
+    public void setGcPauseUnhealthy(int gcPauseUnhealthy) {
+	this.gcPauseUnhealthy = gcPauseUnhealthy;
+    }
+
+    @JsonProperty
+    public Duration getGcPauseWindow() {
+	return gcPauseWindow;
+    }
+
+    @JsonProperty
+    public void setGcPauseWindow(Duration gcPauseWindow) {
+	this.gcPauseWindow = gcPauseWindow;
+    }
+
+    @JsonProperty
+    public int getCacheDegraded() {
+	return cacheDegraded;
+    }
+
+    @JsonProperty
+    public void setCacheDegraded(int cacheDegraded) {
+	this.cacheDegraded = cacheDegraded;
+    }
+
+    @JsonProperty
+    public int getMaxUsers() {
+	return maxUsers;
+    }
+
+    @JsonProperty
+    public void setMaxUsers(int maxUsers) {
+	this.maxUsers = maxUsers;
+    }
+
+    @JsonProperty
+    public int getUsersDegraded() {
+	return usersDegraded;
+    }
+
+    @JsonProperty
+    public void setUsersDegraded(int usersDegraded) {
+	this.usersDegraded = usersDegraded;
+    }
+
+    @JsonProperty
+    public int getUsersUnhealthy() {
+	return usersUnhealthy;
+    }
+
+    @JsonProperty
+    public void setUsersUnhealthy(int usersUnhealthy) {
+	this.usersUnhealthy = usersUnhealthy;
+    }
+}
@@ -0,0 +1,89 @@
+package io.betweendata.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the token introspection end-point and the executor verifying its batches.
+ * <br>
+ * This class represents the <i>introspection</i> section of the <i>config.yml</i>.
+ */
+public class IntrospectionConfiguration {
+
+    /**
+     * Secrets of the clients (i.e. an API gateway) allowed to introspect token. A client sends
+     * one of them as bearer token in the <i>Authorization</i> header. Without any secret the
+     * end-point rejects all requests.
+     */
+    @NotNull
+    private List<String> clientSecrets = new ArrayList<>();
+
+    /**
+     * Number of threads verifying batches. A batch is split into chunks verified in parallel.
+     * <code>0</code> uses one thread per available processor.
+     */
+    @Min(0)
+    private int threads = 0;
+
+    /**
+     * Number of chunks of batches waiting for a thread. Requests beyond that are rejected with
+     * <i>503 Service Unavailable</i>.
+     */
+    @Min(1)
+    private int queueSize = 64;
+
+    /**
+     * Sent to rejected clients in the <i>Retry-After</i> header.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration retryAfter = Duration.seconds(1);
+
+    @JsonProperty
+    public List<String> getClientSecrets() {
+	return clientSecrets;
+    }
+
+    @JsonProperty
+    public void setClientSecrets(List<String> clientSecrets) {
+	this.clientSecrets = clientSecrets;
+    }
+
+    @JsonProperty
+    public int getThreads() {
+	return threads;
+    }
+
+    @JsonProperty
+    public void setThreads(int threads) {
+	this.threads = threads;
+    }
+
+    @JsonProperty
+    public int getQueueSize() {
+	return queueSize;
+    }
+
+    @JsonProperty
+    public void setQueueSize(int queueSize) {
+	this.queueSize = queueSize;
+    }
+
+    @JsonProperty
+    public Duration getRetryAfter() {
+	return retryAfter;
+    }
+
+    @JsonProperty
+    public void setRetryAfter(Duration retryAfter) {
+	this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,154 @@
+package io.betweendata.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the cache keeping track of the issued refresh token.<br>
+ * This class represents the <i>refreshTokenCache</i> section of the <i>config.yml</i>.
+ */
+public class RefreshTokenCacheConfiguration {
+
+    /**
+     * The available implementations.
+     */
+    public enum Type {
+        /**
+         * Refresh token only live in memory and are lost on restart.
+         */
+        MEMORY,
+        /**
+         * Refresh token are additionally written to a log file and restored on startup.
+         */
+        FILE,
+        /**
+         * Refresh token are kept in memory and replicated to the peers. A node that (re)joins
+         * is caught up by its peers.
+         */
+        REPLICATED
+    }
+
+    @NotNull
+    private Type type = Type.MEMORY;
+
+    /**
+     * Maximum number of refresh token kept. Once reached the token expiring next is dropped
+     * for every new token.
+     */
+    @Min(1)
+    private int maxSize = 1_000_000;
+
+    /**
+     * Maximum number of removed refresh token remembered until they would have expired. Only
+     * used by {@link Type#REPLICATED}. Once reached <i>/logout</i> and <i>/revoke</i> are
+     * rejected with <i>503 Service Unavailable</i> until removed token expire.
+     */
+    @Min(1)
+    private int maxTombstones = 1_000_000;
+
+    /**
+     * Path of the log file. Only used by {@link Type#FILE}.
+     */
+    @NotEmpty
+    private String logFile = "refresh-tokens.log";
+
+    /**
+     * Address of the interface the replication port is bound to. Only used by
+     * {@link Type#REPLICATED}. <i>0.0.0.0</i> binds it to all interfaces.
+     */
+    @NotEmpty
+    private String replicationBindAddress = "0.0.0.0";
+
+    /**
+     * Port the peers connect to. Only used by {@link Type#REPLICATED}. It must not be reachable
+     * by anyone but the peers.
+     */
+    @Min(1)
+    @Max(65535)
+    private int replicationPort = 7100;
+
+    /**
+     * Replication ports of the other nodes as <i>host:port</i>. Only used by
+     * {@link Type#REPLICATED}.
+     */
+    @NotNull
+    private List<String> peers = new ArrayList<>();
+
+    @JsonProperty
+    public Type getType() {
+	return type;
+    }
+
+    @JsonProperty
+    public void setType(Type type) {
+	this.type = type;
+    }
+
+    @JsonProperty
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    @JsonProperty
+    public void setMaxSize(int maxSize) {
+	this.maxSize = maxSize;
+    }
+
+    @JsonProperty
+    public int getMaxTombstones() {
+	return maxTombstones;
+    }
+
+    @JsonProperty
+    public void setMaxTombstones(int maxTombstones) {
+	this.maxTombstones = maxTombstones;
+    }
+
+    @JsonProperty
+    public String getLogFile() {
+	return logFile;
+    }
+
+    @JsonProperty
+    public void setLogFile(String logFile) {
+	this.logFile = logFile;
+    }
+
+    @JsonProperty
+    public String getReplicationBindAddress() {
+	return replicationBindAddress;
+    }
+
+    @JsonProperty
+    public void setReplicationBindAddress(String replicationBindAddress) {
+	this.replicationBindAddress = replicationBindAddress;
+    }
+
+    @JsonProperty
+    public int getReplicationPort() {
+	return replicationPort;
+    }
+
+    @JsonProperty
+    public void setReplicationPort(int replicationPort) {
+	this.replicationPort = replicationPort;
+    }
+
+    @JsonProperty
+    public List<String> getPeers() {
+	return peers;
+    }
+
+    @JsonProperty
+    public void setPeers(List<String> peers) {
+	this.peers = peers;
+    }
+}
@@ -0,0 +1,38 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the threads the blocking endpoints (login, register, logout and revoke) run
+ * on. Password hashing runs on the threads of the <i>hashing</i> section in either mode.<br>
+ * This class represents the <i>requestExecution</i> section of the <i>config.yml</i>.
+ */
+public class RequestExecutionConfiguration {
+
+    public enum Mode {
+        /**
+         * Requests run on the thread pool of the server.
+         */
+        THREAD_POOL,
+        /**
+         * Requests run on a virtual thread of their own, so requests waiting for I/O don't hold
+         * on to a thread of the server. Needs Java 21 or newer.
+         */
+        VIRTUAL_THREADS
+    }
+
+    @NotNull
+    private Mode mode = Mode.THREAD_POOL;
+
+    @JsonProperty
+    public Mode getMode() {
+	return mode;
+    }
+
+    @JsonProperty
+    public void setMode(Mode mode) {
+	this.mode = mode;
+    }
+}
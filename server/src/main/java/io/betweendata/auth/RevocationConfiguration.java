@@ -0,0 +1,70 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the list of revoked access token.<br>
+ * This class represents the <i>revocation</i> section of the <i>config.yml</i>.
+ */
+public class RevocationConfiguration {
+
+    /**
+     * Maximum number of revoked token kept. Revocations are kept until the token expires, so
+     * this has to cover all token revoked within the lifetime of an access token. Once reached
+     * new revocations are refused (<i>503</i> from <i>/logout</i> and <i>/revoke</i>) until
+     * revocations expire. The list is split into segments that fill unevenly, so leave some
+     * headroom.
+     */
+    @Min(1)
+    private int maxSize = 1_000_000;
+
+    /**
+     * Number of revoked token the Bloom filter in front of the list is sized for at least. It
+     * is resized on every rebuild to fit the current number of revocations.
+     */
+    @Min(1)
+    private int expectedSize = 100_000;
+
+    /**
+     * Interval in which expired revocations are removed and the Bloom filter is rebuilt.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration rebuildInterval = Duration.minutes(1);
+
+    @JsonProperty
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    @JsonProperty
+    public void setMaxSize(int maxSize) {
+	this.maxSize = maxSize;
+    }
+
+    @JsonProperty
+    public int getExpectedSize() {
+	return expectedSize;
+    }
+
+    @JsonProperty
+    public void setExpectedSize(int expectedSize) {
+	this.expectedSize = expectedSize;
+    }
+
+    @JsonProperty
+    public Duration getRebuildInterval() {
+	return rebuildInterval;
+    }
+
+    @JsonProperty
+    public void setRebuildInterval(Duration rebuildInterval) {
+	this.rebuildInterval = rebuildInterval;
+    }
+}
@@ -0,0 +1,131 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+
+/**
+ * Configuration of the throttling of login and register requests. Each email and each client
+ * address owns a token bucket: a request takes a token, tokens are refilled at a fixed rate and
+ * requests finding their bucket empty are rejected with <i>429 Too Many Requests</i> before the
+ * password is hashed.<br>
+ * This class represents the <i>throttling</i> section of the <i>config.yml</i>.
+ */
+public class ThrottlingConfiguration {
+
+    private boolean enabled = true;
+
+    /**
+     * Number of attempts a single email may make in a burst.
+     */
+    @Min(1)
+    private int accountCapacity = 10;
+
+    /**
+     * Time it takes to refill one attempt of an email.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration accountRefill = Duration.seconds(6);
+
+    /**
+     * Number of attempts a single client address may make in a burst.
+     */
+    @Min(1)
+    private int addressCapacity = 30;
+
+    /**
+     * Time it takes to refill one attempt of a client address.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration addressRefill = Duration.seconds(1);
+
+    /**
+     * Maximum number of buckets kept per kind of key. Once reached, attempts of new keys are
+     * rejected until a bucket is full again and can be removed.
+     */
+    @Min(1)
+    private int maxKeys = 100000;
+
+    /**
+     * Interval in which buckets that are full again are removed.
+     */
+    @NotNull
+    @MinDuration(1)
+    private Duration sweepInterval = Duration.minutes(1);
+
+    @JsonProperty
+    public boolean isEnabled() {
+	return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+	this.enabled = enabled;
+    }
+
+    @JsonProperty
+    public int getAccountCapacity() {
+	return accountCapacity;
+    }
+
+    @JsonProperty
+    public void setAccountCapacity(int accountCapacity) {
+	this.accountCapacity = accountCapacity;
+    }
+
+    @JsonProperty
+    public Duration getAccountRefill() {
+	return accountRefill;
+    }
+
+    @JsonProperty
+    public void setAccountRefill(Duration accountRefill) {
+	this.accountRefill = accountRefill;
+    }
+
+    @JsonProperty
+    public int getAddressCapacity() {
+	return addressCapacity;
+    }
+
+    @JsonProperty
+    public void setAddressCapacity(int addressCapacity) {
+	this.addressCapacity = addressCapacity;
+    }
+
+    @JsonProperty
+    public Duration getAddressRefill() {
+	return addressRefill;
+    }
+
+    @JsonProperty
+    public void setAddressRefill(Duration addressRefill) {
+	this.addressRefill = addressRefill;
+    }
+
+    @JsonProperty
+    public int getMaxKeys() {
+	return maxKeys;
+    }
+
+    @JsonProperty
+    public void setMaxKeys(int maxKeys) {
+	this.maxKeys = maxKeys;
+    }
+
+    @JsonProperty
+    public Duration getSweepInterval() {
+	return sweepInterval;
+    }
+
+    @JsonProperty
+    public void setSweepInterval(Duration sweepInterval) {
+	this.sweepInterval = sweepInterval;
+    }
+}
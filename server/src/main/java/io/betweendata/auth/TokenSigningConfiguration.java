@@ -0,0 +1,95 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of how token are signed.<br>
+ * This class represents the <i>tokenSigning</i> section of the <i>config.yml</i>.
+ */
+public class TokenSigningConfiguration {
+
+    /**
+     * The supported signature algorithms.
+     */
+    public enum Algorithm {
+        /**
+         * HMAC using SHA-256 and the <i>tokenSecret</i>. Only this service can verify token.
+         */
+        HS256,
+        /**
+         * RSASSA-PKCS1-v1_5 using SHA-256. The public key is published so other services can
+         * verify token.
+         */
+        RS256,
+        /**
+         * ECDSA using P-256 and SHA-256. The public key is published so other services can verify
+         * token.
+         */
+        ES256
+    }
+
+    @NotNull
+    private Algorithm algorithm = Algorithm.HS256;
+
+    /**
+     * PEM file containing the private key (PKCS#8). Only used by {@link Algorithm#RS256} and
+     * {@link Algorithm#ES256}. If no key files are configured a key pair is generated on
+     * startup. Token then become invalid on restart.
+     */
+    private String privateKeyFile;
+
+    /**
+     * PEM file containing the public key (X.509). Only used by {@link Algorithm#RS256} and
+     * {@link Algorithm#ES256}.
+     */
+    private String publicKeyFile;
+
+    /**
+     * File containing the active and retired keys (see
+     * {@link io.betweendata.auth.token.Keyring}). If set, it replaces <i>tokenSecret</i> and the
+     * key files. The file is watched and reloaded when it changes.
+     */
+    private String keyringFile;
+
+    @JsonProperty
+    public Algorithm getAlgorithm() {
+	return algorithm;
+    }
+
+    @JsonProperty
+    public void setAlgorithm(Algorithm algorithm) {
+	this.algorithm = algorithm;
+    }
+
+    @JsonProperty
+    public String getPrivateKeyFile() {
+	return privateKeyFile;
+    }
+
+    @JsonProperty
+    public void setPrivateKeyFile(String privateKeyFile) {
+	this.privateKeyFile = privateKeyFile;
+    }
+
+    @JsonProperty
+    public String getPublicKeyFile() {
+	return publicKeyFile;
+    }
+
+    @JsonProperty
+    public void setPublicKeyFile(String publicKeyFile) {
+	this.publicKeyFile = publicKeyFile;
+    }
+
+    @JsonProperty
+    public String getKeyringFile() {
+	return keyringFile;
+    }
+
+    @JsonProperty
+    public void setKeyringFile(String keyringFile) {
+	this.keyringFile = keyringFile;
+    }
+}
@@ -0,0 +1,81 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Size;
+import io.dropwizard.util.SizeUnit;
+import io.dropwizard.validation.MaxSize;
+import io.dropwizard.validation.MinSize;
+
+/**
+ * Configuration of the storage holding the user data.<br>
+ * This class represents the <i>userStorage</i> section of the <i>config.yml</i>.
+ */
+public class UserStorageConfiguration {
+
+    /**
+     * The available implementations.
+     */
+    public enum Type {
+        /**
+         * Users only live in memory and are lost on restart. Meant for development.
+         */
+        MEMORY,
+        /**
+         * Users are stored in segment files within {@link UserStorageConfiguration#directory}.
+         */
+        FILE
+    }
+
+    @NotNull
+    private Type type = Type.MEMORY;
+
+    /**
+     * Directory holding the segment files. Only used by {@link Type#FILE}. Only a single
+     * instance may use the directory, instances don't see each other's writes.
+     */
+    @NotEmpty
+    private String directory = "users";
+
+    /**
+     * Size of a single segment file. Only used by {@link Type#FILE}.
+     */
+    @NotNull
+    @MinSize(value = 1, unit = SizeUnit.MEGABYTES)
+    @MaxSize(value = 1, unit = SizeUnit.GIGABYTES)
+    private Size segmentSize = Size.megabytes(64);
+
+    @JsonProperty
+    public Type getType() {
+	return type;
+    }
+
+    @JsonProperty
+    public void setType(Type type) {
+	this.type = type;
+    }
+
+    @JsonProperty
+    public String getDirectory() {
+	return directory;
+    }
+
+    @JsonProperty
+    public void setDirectory(String directory) {
+	this.directory = directory;
+    }
+
+    @JsonProperty
+    public Size getSegmentSize() {
+	return segmentSize;
+    }
+
+    @JsonProperty
+    public void setSegmentSize(Size segmentSize) {
+	this.segmentSize = segmentSize;
+    }
+}
@@ -0,0 +1,74 @@
+package io.betweendata.auth;
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Configuration of the warm-up that runs right after startup. Until it has finished the
+ * <i>ready</i> health check fails, so a load balancer keeps traffic away from an instance that
+ * would answer slowly.<br>
+ * This class represents the <i>warmup</i> section of the <i>config.yml</i>.
+ */
+public class WarmupConfiguration {
+
+    private boolean enabled = true;
+
+    /**
+     * Number of times token are created, verified and serialized to JSON.
+     */
+    @Min(0)
+    private int iterations = 20_000;
+
+    /**
+     * Number of passwords hashed and verified.
+     */
+    @Min(0)
+    private int hashes = 10;
+
+    /**
+     * Number of requests sent to the service itself once the server has started.
+     */
+    @Min(0)
+    private int requests = 2000;
+
+    @JsonProperty
+    public boolean isEnabled() {
+	return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+	this.enabled = enabled;
+    }
+
+    @JsonProperty
+    public int getIterations() {
+	return iterations;
+    }
+
+    @JsonProperty
+    public void setIterations(int iterations) {
+	this.iterations = iterations;
+    }
+
+    @JsonProperty
+    public int getHashes() {
+	return hashes;
+    }
+
+    @JsonProperty
+    public void setHashes(int hashes) {
+	this.hashes = hashes;
+    }
+
+    @JsonProperty
+    public int getRequests() {
+	return requests;
+    }
+
+    @JsonProperty
+    public void setRequests(int requests) {
+	this.requests = requests;
+    }
+}
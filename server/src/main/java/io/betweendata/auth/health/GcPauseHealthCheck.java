@@ -0,0 +1,70 @@
+package io.betweendata.auth.health;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Reports the share of time the JVM spent in garbage collection pauses. A heap close to its
+ * limit shows up here long before it runs out of memory.<br>
+ * The share is measured between two checks that are at least the window apart, checks in
+ * between return the last measurement. Collectors running concurrently to the application
+ * (i.e. the cycles of ZGC or the concurrent cycles of G1) don't pause it and are ignored.
+ */
+public class GcPauseHealthCheck extends SaturationHealthCheck {
+
+    private final long windowNanos;
+    private final List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+
+    private long sampledAt;
+    private long pauseMillis;
+    private double utilization = Double.NaN;
+
+    /**
+     * @param window              - minimum time the pauses are measured over
+     * @param degradedPercentage
+     * @param unhealthyPercentage
+     */
+    public GcPauseHealthCheck(Duration window, int degradedPercentage,
+            int unhealthyPercentage) {
+        super("garbage collection", degradedPercentage, unhealthyPercentage);
+        this.windowNanos = window.toNanoseconds();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = collector.getName();
+            if (!name.contains("Concurrent") && !name.contains("Cycles")) {
+                collectors.add(collector);
+            }
+        }
+        sampledAt = System.nanoTime();
+        pauseMillis = pauseMillis();
+    }
+
+    @Override
+    protected synchronized double utilization() {
+        long now = System.nanoTime();
+        if (now - sampledAt >= windowNanos) {
+            long pauses = pauseMillis();
+            utilization = (double) TimeUnit.MILLISECONDS.toNanos(pauses - pauseMillis)
+                    / (now - sampledAt);
+            sampledAt = now;
+            pauseMillis = pauses;
+        }
+        return utilization;
+    }
+
+    /**
+     * @return total time all collectors paused the application for so far
+     */
+    private long pauseMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            // -1 if not supported by the collector
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,27 @@
+package io.betweendata.auth.health;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import io.betweendata.auth.service.Warmup;
+
+/**
+ * Reports whether the service is ready to take traffic. It fails until the {@link Warmup} has
+ * finished, so a load balancer polling the health checks keeps traffic away from a cold
+ * instance.
+ */
+public class ReadinessHealthCheck extends HealthCheck {
+
+    private final Warmup warmup;
+
+    /**
+     * @param warmup
+     */
+    public ReadinessHealthCheck(Warmup warmup) {
+        this.warmup = warmup;
+    }
+
+    @Override
+    protected Result check() {
+        return warmup.isDone() ? Result.healthy() : Result.unhealthy("Warming up");
+    }
+}
@@ -0,0 +1,43 @@
+package io.betweendata.auth.health;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Reports the share of the maximum number of request threads of the server that are busy.
+ * Once all of them are busy new requests queue up in front of the server.
+ */
+public class RequestThreadsHealthCheck extends SaturationHealthCheck {
+
+    private volatile QueuedThreadPool threadPool;
+
+    /**
+     * @param degradedPercentage
+     * @param unhealthyPercentage
+     */
+    public RequestThreadsHealthCheck(int degradedPercentage, int unhealthyPercentage) {
+        super("request threads", degradedPercentage, unhealthyPercentage);
+    }
+
+    /**
+     * Has to be called once the server has started.
+     *
+     * @param server
+     */
+    public void serverStarted(Server server) {
+        ThreadPool pool = server.getThreadPool();
+        if (pool instanceof QueuedThreadPool) {
+            threadPool = (QueuedThreadPool) pool;
+        }
+    }
+
+    @Override
+    protected double utilization() {
+        QueuedThreadPool pool = threadPool;
+        if (pool == null) {
+            return Double.NaN;
+        }
+        return (double) pool.getBusyThreads() / pool.getMaxThreads();
+    }
+}
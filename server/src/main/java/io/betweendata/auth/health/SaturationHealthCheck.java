@@ -0,0 +1,79 @@
+package io.betweendata.auth.health;
+
+import java.util.function.LongSupplier;
+
+import com.codahale.metrics.health.HealthCheck;
+
+/**
+ * Reports how much of a limited resource is in use. Below the degraded percentage the check is
+ * healthy. Above it the check is still healthy but its message reports the service as
+ * degraded. Above the unhealthy percentage it fails, so a load balancer sheds traffic from the
+ * instance before the resource runs out and requests start failing.<br>
+ * The percentage in use is returned as the <i>utilization</i> detail.
+ */
+public abstract class SaturationHealthCheck extends HealthCheck {
+
+    /**
+     * Unhealthy percentage of resources that only degrade the service once used up.
+     */
+    public static final int NEVER_UNHEALTHY = Integer.MAX_VALUE;
+
+    private final String resource;
+    private final int degradedPercentage;
+    private final int unhealthyPercentage;
+
+    /**
+     * @param resource            - name of the resource used in the message
+     * @param degradedPercentage
+     * @param unhealthyPercentage
+     */
+    protected SaturationHealthCheck(String resource, int degradedPercentage,
+            int unhealthyPercentage) {
+        this.resource = resource;
+        this.degradedPercentage = degradedPercentage;
+        this.unhealthyPercentage = unhealthyPercentage;
+    }
+
+    /**
+     * Creates a check of the share of the given budget in use.
+     *
+     * @param resource            - name of the resource used in the message
+     * @param used                - amount of the resource in use
+     * @param budget              - amount of the resource available
+     * @param degradedPercentage
+     * @param unhealthyPercentage
+     * @return
+     */
+    public static SaturationHealthCheck of(String resource, LongSupplier used, long budget,
+            int degradedPercentage, int unhealthyPercentage) {
+        return new SaturationHealthCheck(resource, degradedPercentage, unhealthyPercentage) {
+            @Override
+            protected double utilization() {
+                return (double) used.getAsLong() / budget;
+            }
+        };
+    }
+
+    /**
+     * @return share of the resource in use (1 if all of it is used), <code>NaN</code> if it
+     *         has not been measured yet
+     */
+    protected abstract double utilization();
+
+    @Override
+    protected Result check() {
+        double utilization = utilization();
+        if (Double.isNaN(utilization)) {
+            return Result.healthy("Not measured yet");
+        }
+        double percentage = utilization * 100;
+        ResultBuilder result = percentage >= unhealthyPercentage ? Result.builder().unhealthy()
+                : Result.builder().healthy();
+        if (percentage >= unhealthyPercentage) {
+            result.withMessage("Saturated: %s at %.0f%%", resource, percentage);
+        } else if (percentage >= degradedPercentage) {
+            result.withMessage("Degraded: %s at %.0f%%", resource, percentage);
+        }
+        return result.withDetail("utilization", Math.round(percentage)).build();
+    }
+}
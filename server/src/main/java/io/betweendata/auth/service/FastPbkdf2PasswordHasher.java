@@ -0,0 +1,482 @@
+package io.betweendata.auth.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * PBKDF2 implementation specialized on HMAC with SHA-1, SHA-256 and SHA-512. It creates the same
+ * hashes as the {@link Pbkdf2PasswordHasher} but needs considerably less work per iteration.
+ * <ul>
+ * <li>The state of the hash function after processing the inner and outer padded key
+ * (<i>ipad</i>/<i>opad</i>) is computed once per password. The generic implementation of the
+ * JDK computes it again for each HMAC, that is twice per iteration.</li>
+ * <li>The message of every iteration fits into a single block. An iteration therefore is exactly
+ * two runs of the compression function.</li>
+ * <li>All buffers are kept per thread. Hashing a password only allocates the result.</li>
+ * </ul>
+ */
+public abstract class FastPbkdf2PasswordHasher implements PasswordHasher {
+
+    public static final FastPbkdf2PasswordHasher SHA1 = new Sha1();
+    public static final FastPbkdf2PasswordHasher SHA256 = new Sha256();
+    public static final FastPbkdf2PasswordHasher SHA512 = new Sha512();
+
+    private static final VarHandle INT_BIG_ENDIAN =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_BIG_ENDIAN =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Buffers used while hashing a password. Each thread has its own.
+     */
+    private static final class Workspace {
+        private final long[] innerState;
+        private final long[] outerState;
+        private final long[] state;
+        private final byte[] block;
+        /**
+         * Result of the previous iteration
+         */
+        private final byte[] u;
+        /**
+         * Result of the inner hash of the HMAC
+         */
+        private final byte[] inner;
+        /**
+         * XOR of the results of all iterations
+         */
+        private final byte[] accumulator;
+        private final int[] schedule32 = new int[80];
+        private final long[] schedule64 = new long[80];
+
+        private Workspace(int stateSize, int blockSize, int digestSize) {
+            innerState = new long[stateSize];
+            outerState = new long[stateSize];
+            state = new long[stateSize];
+            block = new byte[blockSize];
+            u = new byte[digestSize];
+            inner = new byte[digestSize];
+            accumulator = new byte[digestSize];
+        }
+    }
+
+    private final String algorithm;
+    private final int blockSize;
+    private final int digestSize;
+    /**
+     * Number of bytes at the end of the last block holding the message length
+     */
+    private final int lengthSize;
+    private final long[] initialState;
+    private final ThreadLocal<Workspace> workspaces;
+
+    private FastPbkdf2PasswordHasher(String algorithm, int blockSize, int digestSize,
+            int lengthSize, long[] initialState) {
+        this.algorithm = algorithm;
+        this.blockSize = blockSize;
+        this.digestSize = digestSize;
+        this.lengthSize = lengthSize;
+        this.initialState = initialState;
+        workspaces = ThreadLocal
+                .withInitial(() -> new Workspace(initialState.length, blockSize, digestSize));
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public byte[] hash(char[] password, byte[] salt, int iterations, int bytes) {
+        Workspace workspace = workspaces.get();
+        initHmac(passwordBytes(password), workspace);
+
+        byte[] result = new byte[bytes];
+        byte[] message = Arrays.copyOf(salt, salt.length + 4);
+        int blocks = (bytes + digestSize - 1) / digestSize;
+        for (int block = 1; block <= blocks; block++) {
+            message[salt.length] = (byte) (block >>> 24);
+            message[salt.length + 1] = (byte) (block >>> 16);
+            message[salt.length + 2] = (byte) (block >>> 8);
+            message[salt.length + 3] = (byte) block;
+
+            byte[] u = workspace.u;
+            byte[] accumulator = workspace.accumulator;
+            hmac(message, message.length, u, workspace);
+            System.arraycopy(u, 0, accumulator, 0, digestSize);
+            for (int i = 1; i < iterations; i++) {
+                hmac(u, digestSize, u, workspace);
+                for (int j = 0; j < digestSize; j++) {
+                    accumulator[j] ^= u[j];
+                }
+            }
+
+            int offset = (block - 1) * digestSize;
+            System.arraycopy(accumulator, 0, result, offset, Math.min(digestSize, bytes - offset));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the states after processing the inner and outer padded key.
+     *
+     * @param key       - is overwritten
+     * @param workspace
+     */
+    private void initHmac(byte[] key, Workspace workspace) {
+        if (key.length > blockSize) {
+            byte[] hashedKey = new byte[digestSize];
+            digest(initialState, 0, key, key.length, hashedKey, workspace);
+            Arrays.fill(key, (byte) 0);
+            key = hashedKey;
+        }
+
+        byte[] block = workspace.block;
+        for (int i = 0; i < blockSize; i++) {
+            block[i] = (byte) ((i < key.length ? key[i] : 0) ^ 0x36);
+        }
+        System.arraycopy(initialState, 0, workspace.innerState, 0, initialState.length);
+        compress(workspace.innerState, block, 0, workspace);
+
+        for (int i = 0; i < blockSize; i++) {
+            block[i] = (byte) ((i < key.length ? key[i] : 0) ^ 0x5c);
+        }
+        System.arraycopy(initialState, 0, workspace.outerState, 0, initialState.length);
+        compress(workspace.outerState, block, 0, workspace);
+
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /**
+     * HMAC of the given message using the states computed by
+     * {@link #initHmac(byte[], Workspace)}. <code>message</code> and <code>out</code> may be the
+     * same array.
+     */
+    private void hmac(byte[] message, int length, byte[] out, Workspace workspace) {
+        digest(workspace.innerState, blockSize, message, length, workspace.inner, workspace);
+        digest(workspace.outerState, blockSize, workspace.inner, digestSize, out, workspace);
+    }
+
+    /**
+     * Hashes the given message starting from the given state.
+     *
+     * @param startState    - state after processing <code>prefixLength</code> bytes
+     * @param prefixLength  - number of bytes already processed
+     * @param message
+     * @param length        - length of the message
+     * @param out           - receives the digest
+     * @param workspace
+     */
+    private void digest(long[] startState, int prefixLength, byte[] message, int length, byte[] out,
+            Workspace workspace) {
+        long[] state = workspace.state;
+        byte[] block = workspace.block;
+        System.arraycopy(startState, 0, state, 0, state.length);
+
+        int offset = 0;
+        for (; length - offset >= blockSize; offset += blockSize) {
+            compress(state, message, offset, workspace);
+        }
+
+        // Padding: 0x80, zeros and the length of the message in bits
+        int position = length - offset;
+        System.arraycopy(message, offset, block, 0, position);
+        block[position++] = (byte) 0x80;
+        if (position > blockSize - lengthSize) {
+            Arrays.fill(block, position, blockSize, (byte) 0);
+            compress(state, block, 0, workspace);
+            position = 0;
+        }
+        Arrays.fill(block, position, blockSize - 8, (byte) 0);
+        putLong(block, blockSize - 8, ((long) prefixLength + length) * 8);
+        compress(state, block, 0, workspace);
+
+        output(state, out);
+    }
+
+    /**
+     * Processes one block.
+     */
+    abstract void compress(long[] state, byte[] block, int offset, Workspace workspace);
+
+    /**
+     * Writes the digest represented by the given state.
+     */
+    abstract void output(long[] state, byte[] out);
+
+    /**
+     * Encodes the password the same way the JDK does for PBKDF2.
+     */
+    private static byte[] passwordBytes(char[] password) {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        if (encoded.hasArray()) {
+            Arrays.fill(encoded.array(), (byte) 0);
+        }
+        return bytes;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (int) INT_BIG_ENDIAN.get(bytes, offset);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        INT_BIG_ENDIAN.set(bytes, offset, value);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (long) LONG_BIG_ENDIAN.get(bytes, offset);
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        LONG_BIG_ENDIAN.set(bytes, offset, value);
+    }
+
+    private static final class Sha1 extends FastPbkdf2PasswordHasher {
+
+        private Sha1() {
+            super("sha1", 64, 20, 8, new long[] { 0x67452301, 0xEFCDAB89, 0x98BADCFE, 0x10325476,
+                    0xC3D2E1F0 });
+        }
+
+        @Override
+        void compress(long[] state, byte[] block, int offset, Workspace workspace) {
+            int[] w = workspace.schedule32;
+            for (int t = 0; t < 16; t++) {
+                w[t] = getInt(block, offset + 4 * t);
+            }
+            for (int t = 16; t < 80; t++) {
+                w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+            }
+
+            int a = (int) state[0];
+            int b = (int) state[1];
+            int c = (int) state[2];
+            int d = (int) state[3];
+            int e = (int) state[4];
+            for (int t = 0; t < 20; t++) {
+                int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5A827999 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 20; t < 40; t++) {
+                int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ED9EBA1 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 40; t < 60; t++) {
+                int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8F1BBCDC
+                        + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 60; t < 80; t++) {
+                int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xCA62C1D6 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            state[0] = (int) state[0] + a;
+            state[1] = (int) state[1] + b;
+            state[2] = (int) state[2] + c;
+            state[3] = (int) state[3] + d;
+            state[4] = (int) state[4] + e;
+        }
+
+        @Override
+        void output(long[] state, byte[] out) {
+            for (int i = 0; i < 5; i++) {
+                putInt(out, 4 * i, (int) state[i]);
+            }
+        }
+    }
+
+    private static final class Sha256 extends FastPbkdf2PasswordHasher {
+
+        private static final int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+                0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5, 0xd807aa98, 0x12835b01,
+                0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+                0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa,
+                0x5cb0a9dc, 0x76f988da, 0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+                0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967, 0x27b70a85, 0x2e1b2138,
+                0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+                0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624,
+                0xf40e3585, 0x106aa070, 0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+                0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f,
+                0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2 };
+
+        private Sha256() {
+            super("sha256", 64, 32, 8, new long[] { 0x6a09e667, 0xbb67ae85, 0x3c6ef372,
+                    0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19 });
+        }
+
+        @Override
+        void compress(long[] state, byte[] block, int offset, Workspace workspace) {
+            int[] w = workspace.schedule32;
+            for (int t = 0; t < 16; t++) {
+                w[t] = getInt(block, offset + 4 * t);
+            }
+            for (int t = 16; t < 64; t++) {
+                int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18)
+                        ^ (w[t - 15] >>> 3);
+                int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19)
+                        ^ (w[t - 2] >>> 10);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            int a = (int) state[0];
+            int b = (int) state[1];
+            int c = (int) state[2];
+            int d = (int) state[3];
+            int e = (int) state[4];
+            int f = (int) state[5];
+            int g = (int) state[6];
+            int h = (int) state[7];
+            for (int t = 0; t < 64; t++) {
+                int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11)
+                        ^ Integer.rotateRight(e, 25);
+                int ch = (e & f) ^ (~e & g);
+                int temp1 = h + s1 + ch + K[t] + w[t];
+                int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13)
+                        ^ Integer.rotateRight(a, 22);
+                int maj = (a & b) ^ (a & c) ^ (b & c);
+                int temp2 = s0 + maj;
+                h = g;
+                g = f;
+                f = e;
+                e = d + temp1;
+                d = c;
+                c = b;
+                b = a;
+                a = temp1 + temp2;
+            }
+            state[0] = (int) state[0] + a;
+            state[1] = (int) state[1] + b;
+            state[2] = (int) state[2] + c;
+            state[3] = (int) state[3] + d;
+            state[4] = (int) state[4] + e;
+            state[5] = (int) state[5] + f;
+            state[6] = (int) state[6] + g;
+            state[7] = (int) state[7] + h;
+        }
+
+        @Override
+        void output(long[] state, byte[] out) {
+            for (int i = 0; i < 8; i++) {
+                putInt(out, 4 * i, (int) state[i]);
+            }
+        }
+    }
+
+    private static final class Sha512 extends FastPbkdf2PasswordHasher {
+
+        private static final long[] K = { 0x428a2f98d728ae22L, 0x7137449123ef65cdL,
+                0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL, 0x3956c25bf348b538L,
+                0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+                0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL,
+                0x550c7dc3d5ffb4e2L, 0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L,
+                0x9bdc06a725c71235L, 0xc19bf174cf692694L, 0xe49b69c19ef14ad2L,
+                0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+                0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L,
+                0x76f988da831153b5L, 0x983e5152ee66dfabL, 0xa831c66d2db43210L,
+                0xb00327c898fb213fL, 0xbf597fc7beef0ee4L, 0xc6e00bf33da88fc2L,
+                0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+                0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL,
+                0x53380d139d95b3dfL, 0x650a73548baf63deL, 0x766a0abb3c77b2a8L,
+                0x81c2c92e47edaee6L, 0x92722c851482353bL, 0xa2bfe8a14cf10364L,
+                0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+                0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL,
+                0x106aa07032bbd1b8L, 0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L,
+                0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L, 0x391c0cb3c5c95a63L,
+                0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+                0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L,
+                0x8cc702081a6439ecL, 0x90befffa23631e28L, 0xa4506cebde82bde9L,
+                0xbef9a3f7b2c67915L, 0xc67178f2e372532bL, 0xca273eceea26619cL,
+                0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+                0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL,
+                0x1b710b35131c471bL, 0x28db77f523047d84L, 0x32caab7b40c72493L,
+                0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL, 0x4cc5d4becb3e42b6L,
+                0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L };
+
+        private Sha512() {
+            super("sha512", 128, 64, 16, new long[] { 0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL,
+                    0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L, 0x510e527fade682d1L,
+                    0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L });
+        }
+
+        @Override
+        void compress(long[] state, byte[] block, int offset, Workspace workspace) {
+            long[] w = workspace.schedule64;
+            for (int t = 0; t < 16; t++) {
+                w[t] = getLong(block, offset + 8 * t);
+            }
+            for (int t = 16; t < 80; t++) {
+                long s0 = Long.rotateRight(w[t - 15], 1) ^ Long.rotateRight(w[t - 15], 8)
+                        ^ (w[t - 15] >>> 7);
+                long s1 = Long.rotateRight(w[t - 2], 19) ^ Long.rotateRight(w[t - 2], 61)
+                        ^ (w[t - 2] >>> 6);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            long a = state[0];
+            long b = state[1];
+            long c = state[2];
+            long d = state[3];
+            long e = state[4];
+            long f = state[5];
+            long g = state[6];
+            long h = state[7];
+            for (int t = 0; t < 80; t++) {
+                long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18)
+                        ^ Long.rotateRight(e, 41);
+                long ch = (e & f) ^ (~e & g);
+                long temp1 = h + s1 + ch + K[t] + w[t];
+                long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34)
+                        ^ Long.rotateRight(a, 39);
+                long maj = (a & b) ^ (a & c) ^ (b & c);
+                long temp2 = s0 + maj;
+                h = g;
+                g = f;
+                f = e;
+                e = d + temp1;
+                d = c;
+                c = b;
+                b = a;
+                a = temp1 + temp2;
+            }
+            state[0] += a;
+            state[1] += b;
+            state[2] += c;
+            state[3] += d;
+            state[4] += e;
+            state[5] += f;
+            state[6] += g;
+            state[7] += h;
+        }
+
+        @Override
+        void output(long[] state, byte[] out) {
+            for (int i = 0; i < 8; i++) {
+                putLong(out, 8 * i, state[i]);
+            }
+        }
+    }
+}
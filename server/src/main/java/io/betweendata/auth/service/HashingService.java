@@ -0,0 +1,121 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Runs the expensive password hashing on a bounded pool of threads instead of the request
+ * threads. This way a burst of logins can't block the cheap requests.<br>
+ * Once the queue in front of the pool is full new tasks are rejected right away.<br>
+ * The following metrics are exported:
+ * <ul>
+ * <li><i>queue-depth</i>: tasks waiting for a thread</li>
+ * <li><i>wait</i>: time tasks spend in the queue</li>
+ * <li><i>hash</i>: time tasks take to run</li>
+ * <li><i>rejected</i>: tasks rejected because the queue was full</li>
+ * </ul>
+ */
+public class HashingService implements Service, Managed {
+
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer waitTimer;
+    private final Timer hashTimer;
+    private final Meter rejected;
+
+    /**
+     * @param threads   - number of threads hashing passwords
+     * @param queueSize - number of tasks that may wait for a thread
+     * @param metrics
+     */
+    public HashingService(int threads, int queueSize, MetricRegistry metrics) {
+        queue = new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.prestartAllCoreThreads();
+
+        metrics.register(MetricRegistry.name(HashingService.class, "queue-depth"),
+                (Gauge<Integer>) queue::size);
+        waitTimer = metrics.timer(MetricRegistry.name(HashingService.class, "wait"));
+        hashTimer = metrics.timer(MetricRegistry.name(HashingService.class, "hash"));
+        rejected = metrics.meter(MetricRegistry.name(HashingService.class, "rejected"));
+    }
+
+    /**
+     * Queues the given task.
+     *
+     * @param task
+     * @return completes with the result of the task or the exception or error it has thrown
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                waitTimer.update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                Timer.Context context = hashTimer.time();
+                try {
+                    result.complete(task.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } catch (Error e) {
+                    // Otherwise the response waiting for the result hangs until the client
+                    // gives up. The error still ends the thread, the pool replaces it.
+                    result.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    context.stop();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.mark();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of tasks that may wait for a thread
+     */
+    public int getQueueSize() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,102 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Verifies the batches of the introspection end-point on a bounded pool of threads of its
+ * own. A batch holds many token, so it is split into chunks verified in parallel. The pool
+ * bounds the processors introspection can take from the other requests.<br>
+ * Once the queue in front of the pool is full new chunks are rejected right away.<br>
+ * The following metrics are exported:
+ * <ul>
+ * <li><i>queue-depth</i>: chunks waiting for a thread</li>
+ * <li><i>rejected</i>: chunks rejected because the queue was full</li>
+ * </ul>
+ */
+public class IntrospectionService implements Service, Managed {
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final Meter rejected;
+
+    /**
+     * @param threads   - number of threads verifying chunks
+     * @param queueSize - number of chunks that may wait for a thread
+     * @param metrics
+     */
+    public IntrospectionService(int threads, int queueSize, MetricRegistry metrics) {
+        this.threads = threads;
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "token-introspection-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        metrics.register(MetricRegistry.name(IntrospectionService.class, "queue-depth"),
+                (Gauge<Integer>) queue::size);
+        rejected = metrics.meter(MetricRegistry.name(IntrospectionService.class, "rejected"));
+    }
+
+    /**
+     * @return number of threads verifying chunks
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Queues the given chunk.
+     *
+     * @param batch
+     * @return completes with the result of the batch or the exception or error it has thrown
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> batch) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(batch.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } catch (Error e) {
+                    // Otherwise the response waiting for the result hangs until the client
+                    // gives up. The error still ends the thread, the pool replaces it.
+                    result.completeExceptionally(e);
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.mark();
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
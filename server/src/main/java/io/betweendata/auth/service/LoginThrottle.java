@@ -0,0 +1,135 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.ThrottlingConfiguration;
+import io.betweendata.auth.token.CoarseClock;
+import io.betweendata.auth.user.User;
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Limits the rate of login and register attempts per email and per client address. Every
+ * attempt costs a password hash, so this has to be checked before the request is handed to
+ * the {@link HashingService}. The limits are kept in {@link TokenBuckets}, idle buckets are
+ * swept in the background.<br>
+ * The following metrics are exported:
+ * <ul>
+ * <li><i>account.rejected</i>, <i>address.rejected</i>: attempts rejected because the bucket
+ * of the email or client address was empty</li>
+ * <li><i>account.buckets</i>, <i>address.buckets</i>: number of buckets</li>
+ * <li><i>account.overflow</i>, <i>address.overflow</i>: attempts of new emails or client
+ * addresses rejected because the maximum number of buckets was reached (these count as
+ * rejected, too)</li>
+ * </ul>
+ */
+public class LoginThrottle implements Service, Managed {
+
+    private final boolean enabled;
+    private final long sweepMillis;
+
+    private final TokenBuckets accounts;
+    private final TokenBuckets addresses;
+
+    private final Meter accountsRejected;
+    private final Meter addressesRejected;
+
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * @param config
+     * @param metrics
+     */
+    public LoginThrottle(ThrottlingConfiguration config, MetricRegistry metrics) {
+        enabled = config.isEnabled();
+        sweepMillis = config.getSweepInterval().toMilliseconds();
+        accounts = new TokenBuckets(config.getAccountCapacity(),
+                config.getAccountRefill().toMilliseconds(), config.getMaxKeys());
+        addresses = new TokenBuckets(config.getAddressCapacity(),
+                config.getAddressRefill().toMilliseconds(), config.getMaxKeys());
+
+        accountsRejected = metrics
+                .meter(MetricRegistry.name(LoginThrottle.class, "account", "rejected"));
+        addressesRejected = metrics
+                .meter(MetricRegistry.name(LoginThrottle.class, "address", "rejected"));
+        metrics.register(MetricRegistry.name(LoginThrottle.class, "account", "buckets"),
+                (Gauge<Integer>) accounts::size);
+        metrics.register(MetricRegistry.name(LoginThrottle.class, "address", "buckets"),
+                (Gauge<Integer>) addresses::size);
+        metrics.register(MetricRegistry.name(LoginThrottle.class, "account", "overflow"),
+                (Gauge<Long>) accounts::getOverflows);
+        metrics.register(MetricRegistry.name(LoginThrottle.class, "address", "overflow"),
+                (Gauge<Long>) addresses::getOverflows);
+    }
+
+    /**
+     * Takes an attempt of the given email. Emails are compared by their canonical form (see
+     * {@link User#canonicalEmail(String)}).
+     *
+     * @param email
+     * @return <code>0</code> if the attempt may proceed, otherwise the milliseconds until the
+     *         next attempt is allowed
+     */
+    public long acquireAccount(String email) {
+        if (!enabled || email == null) {
+            return 0;
+        }
+        return acquire(accounts, User.canonicalEmail(email), accountsRejected);
+    }
+
+    /**
+     * Takes an attempt of the given client address.
+     *
+     * @param address
+     * @return <code>0</code> if the attempt may proceed, otherwise the milliseconds until the
+     *         next attempt is allowed
+     */
+    public long acquireAddress(String address) {
+        if (!enabled || address == null) {
+            return 0;
+        }
+        return acquire(addresses, address, addressesRejected);
+    }
+
+    private long acquire(TokenBuckets buckets, String key, Meter rejected) {
+        long wait = buckets.tryAcquire(key, CoarseClock.currentTimeMillis());
+        if (wait > 0) {
+            rejected.mark();
+        }
+        return wait;
+    }
+
+    /**
+     * Drops all buckets that are full again.
+     */
+    public void sweep() {
+        long now = CoarseClock.currentTimeMillis();
+        accounts.sweep(now);
+        addresses.sweep(now);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "login-throttle-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.betweendata.auth.service;
+
+import io.betweendata.auth.service.PasswordService.CannotPerformOperationException;
+
+/**
+ * An algorithm deriving a hash from a password. Hashers are registered with the
+ * {@link PasswordService} under the name stored in the algorithm field of the hash.
+ */
+public interface PasswordHasher {
+
+    /**
+     * @return name of the algorithm as stored in the hash (i.e. <i>sha256</i>)
+     */
+    String getAlgorithm();
+
+    /**
+     * Derives the hash of the given password.
+     *
+     * @param password
+     * @param salt
+     * @param iterations - cost parameter of the algorithm
+     * @param bytes      - length of the hash
+     * @return
+     * @throws CannotPerformOperationException
+     */
+    byte[] hash(char[] password, byte[] salt, int iterations, int bytes)
+            throws CannotPerformOperationException;
+}
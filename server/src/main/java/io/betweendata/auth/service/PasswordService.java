@@ -1,17 +1,29 @@
 package io.betweendata.auth.service;
 
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 /**
  * Implementation to deal with the secure storage of passwords.<br>
  * <p>
  * Taken from https://github.com/defuse/password-hashing
+ * <p>
+ * The algorithm used to create a hash is stored in the hash. Each algorithm is implemented by a
+ * {@link PasswordHasher}, so hashes created with any registered algorithm can be verified.
+ * New hashes are always created with the configured algorithm and iteration count. Use
+ * {@link #needsRehash(String)} to find hashes created with outdated parameters.<br>
+ * Each algorithm is computed by one of two engines creating the same hashes: the
+ * {@link FastPbkdf2PasswordHasher} or the JDK's PBKDF2 ({@link Pbkdf2PasswordHasher}). Which one
+ * is faster depends on the CPU and the JVM, so the fast engine is used until
+ * {@link #selectFastestHashers()} has timed both.
  *
  * @author christian
  */
@@ -39,12 +51,11 @@ public class PasswordService implements Service {
         }
     }
 
-    public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
-
     // These constants may be changed without breaking existing hashes.
     public static final int SALT_BYTE_SIZE = 24;
     public static final int HASH_BYTE_SIZE = 18;
     public static final int PBKDF2_ITERATIONS = 64000;
+    public static final String DEFAULT_ALGORITHM = "sha1";
 
     // These constants define the encoding and may not be changed.
     public static final int HASH_SECTIONS = 5;
@@ -54,6 +65,129 @@ public class PasswordService implements Service {
     public static final int SALT_INDEX = 3;
     public static final int PBKDF2_INDEX = 4;
 
+    private static final Logger LOG = Logger.getLogger(PasswordService.class.getName());
+
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * Engines timed against each other by {@link #selectFastestHashers()}, the fast engine
+     * first.
+     */
+    private static final PasswordHasher[][] ENGINES = {
+            { FastPbkdf2PasswordHasher.SHA1, Pbkdf2PasswordHasher.SHA1 },
+            { FastPbkdf2PasswordHasher.SHA256, Pbkdf2PasswordHasher.SHA256 },
+            { FastPbkdf2PasswordHasher.SHA512, Pbkdf2PasswordHasher.SHA512 } };
+    /**
+     * Hashes per engine when timing them. The first ones are not counted, they run before the
+     * engine has been compiled. Of the others the fastest counts, the JIT compiler and the GC
+     * slow down single hashes.
+     */
+    private static final int SELECTION_ROUNDS = 10;
+    private static final int SELECTION_WARMUP_ROUNDS = 4;
+    private static final int SELECTION_ITERATIONS = 8000;
+
+    /**
+     * Registered hashers.<br>
+     * <b>Key:</b> name of the algorithm<br>
+     * <b>Value:</b> the hasher
+     */
+    private final Map<String, PasswordHasher> hashers = new ConcurrentHashMap<>();
+
+    private final String algorithm;
+    private final int iterations;
+
+    private final MetricRegistry metrics;
+
+    /**
+     * Creates the service hashing new passwords with {@link #DEFAULT_ALGORITHM} and
+     * {@link #PBKDF2_ITERATIONS}.
+     */
+    public PasswordService() {
+        this(DEFAULT_ALGORITHM, PBKDF2_ITERATIONS);
+    }
+
+    /**
+     * @param algorithm  - name of the algorithm new passwords are hashed with
+     * @param iterations - iteration count new passwords are hashed with
+     */
+    public PasswordService(String algorithm, int iterations) {
+        this(algorithm, iterations, new MetricRegistry());
+    }
+
+    /**
+     * The time each hash takes is exported as the timer <i>pbkdf2.&lt;algorithm&gt;</i>.
+     *
+     * @param algorithm  - name of the algorithm new passwords are hashed with
+     * @param iterations - iteration count new passwords are hashed with
+     * @param metrics
+     */
+    public PasswordService(String algorithm, int iterations, MetricRegistry metrics) {
+        this.metrics = metrics;
+        for (PasswordHasher[] engines : ENGINES) {
+            registerHasher(engines[0]);
+        }
+
+        if (!hashers.containsKey(algorithm)) {
+            throw new IllegalArgumentException("Unknown hash algorithm: " + algorithm);
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Invalid number of iterations. Must be >= 1.");
+        }
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Times both engines of each algorithm and registers the faster one. Whether the JDK
+     * computes SHA with dedicated CPU instructions can't be told from the JVM options (i.e.
+     * <i>UseSHA</i> is set on CPUs lacking the SHA-1 instructions), so the engines are timed
+     * instead. This takes a few hundred milliseconds and is meant to be run once during the
+     * warm-up. Both engines create the same hashes, so switching does not affect existing
+     * ones.
+     *
+     * @throws CannotPerformOperationException
+     */
+    public void selectFastestHashers() throws CannotPerformOperationException {
+        char[] password = "Engine selection".toCharArray();
+        byte[] salt = new byte[SALT_BYTE_SIZE];
+        random.nextBytes(salt);
+        for (PasswordHasher[] engines : ENGINES) {
+            long[] fastest = { Long.MAX_VALUE, Long.MAX_VALUE };
+            byte[][] hashes = new byte[engines.length][];
+            for (int round = 0; round < SELECTION_ROUNDS; round++) {
+                for (int engine = 0; engine < engines.length; engine++) {
+                    long start = System.nanoTime();
+                    hashes[engine] = engines[engine].hash(password, salt, SELECTION_ITERATIONS,
+                            HASH_BYTE_SIZE);
+                    if (round >= SELECTION_WARMUP_ROUNDS) {
+                        fastest[engine] = Math.min(fastest[engine], System.nanoTime() - start);
+                    }
+                }
+            }
+            if (!Arrays.equals(hashes[0], hashes[1])) {
+                LOG.warning("The PBKDF2 engines disagree on " + engines[0].getAlgorithm()
+                        + ", keeping the fast engine");
+                continue;
+            }
+            boolean jdk = fastest[1] < fastest[0];
+            registerHasher(jdk ? engines[1] : engines[0]);
+            LOG.info("Hashing " + engines[0].getAlgorithm() + " with the "
+                    + (jdk ? "JDK" : "fast") + " engine (fast: "
+                    + TimeUnit.NANOSECONDS.toMillis(fastest[0]) + " ms, JDK: "
+                    + TimeUnit.NANOSECONDS.toMillis(fastest[1]) + " ms for "
+                    + SELECTION_ITERATIONS + " iterations)");
+        }
+    }
+
+    /**
+     * Makes the given algorithm available. Hashes created with it can be verified from now on.
+     *
+     * @param hasher
+     */
+    public void registerHasher(PasswordHasher hasher) {
+        hashers.put(hasher.getAlgorithm(), hasher);
+    }
+
     /**
      * Create the hash representation for the given password.
      *
@@ -67,16 +201,16 @@ public class PasswordService implements Service {
 
     protected String createHash(char[] password) throws CannotPerformOperationException {
         // Generate a random salt
-        SecureRandom random = new SecureRandom();
         byte[] salt = new byte[SALT_BYTE_SIZE];
         random.nextBytes(salt);
 
         // Hash the password
-        byte[] hash = pbkdf2(password, salt, PBKDF2_ITERATIONS, HASH_BYTE_SIZE);
+        PasswordHasher hasher = hashers.get(algorithm);
+        byte[] hash = hash(hasher, password, salt, iterations, HASH_BYTE_SIZE);
         int hashSize = hash.length;
 
         // format: algorithm:iterations:hashSize:salt:hash
-        String parts = "sha1:" + PBKDF2_ITERATIONS + ":" + hashSize + ":" + toBase64(salt) + ":" +
+        String parts = hasher.getAlgorithm() + ":" + iterations + ":" + hashSize + ":" + toBase64(salt) + ":" +
                 toBase64(hash);
         return parts;
     }
@@ -103,8 +237,8 @@ public class PasswordService implements Service {
             throw new InvalidHashException("Fields are missing from the password hash.");
         }
 
-        // Currently, Java only supports SHA1.
-        if (!params[HASH_ALGORITHM_INDEX].equals("sha1")) {
+        PasswordHasher hashHasher = hashers.get(params[HASH_ALGORITHM_INDEX]);
+        if (hashHasher == null) {
             throw new CannotPerformOperationException("Unsupported hash type.");
         }
 
@@ -147,12 +281,45 @@ public class PasswordService implements Service {
 
         // Compute the hash of the provided password, using the same salt,
         // iteration count, and hash length
-        byte[] testHash = pbkdf2(password, salt, iterations, hash.length);
+        byte[] testHash = hash(hashHasher, password, salt, iterations, hash.length);
         // Compare the hashes in constant time. The password is correct if
         // both hashes match.
         return slowEquals(hash, testHash);
     }
 
+    /**
+     * Runs the given hasher and records the time it took.
+     */
+    private byte[] hash(PasswordHasher hasher, char[] password, byte[] salt, int iterations,
+            int bytes) throws CannotPerformOperationException {
+        Timer.Context context = Timers.timer(metrics,
+                MetricRegistry.name(PasswordService.class, "pbkdf2", hasher.getAlgorithm()))
+                .time();
+        try {
+            return hasher.hash(password, salt, iterations, bytes);
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Checks whether the given hash has been created with other parameters than new hashes are
+     * created with. Such a hash should be replaced the next time the password is known, i.e.
+     * after a successful login.
+     *
+     * @param correctHash - a hash that has been verified before
+     * @return
+     */
+    public boolean needsRehash(String correctHash) {
+        String[] params = correctHash.split(":");
+        if (params.length != HASH_SECTIONS) {
+            return true;
+        }
+        return !params[HASH_ALGORITHM_INDEX].equals(algorithm)
+                || !params[ITERATION_INDEX].equals(Integer.toString(iterations))
+                || !params[HASH_SIZE_INDEX].equals(Integer.toString(HASH_BYTE_SIZE));
+    }
+
     private boolean slowEquals(byte[] a, byte[] b) {
         int diff = a.length ^ b.length;
         for (int i = 0; i < a.length && i < b.length; i++) {
@@ -161,19 +328,6 @@ public class PasswordService implements Service {
         return diff == 0;
     }
 
-    private byte[] pbkdf2(char[] password, byte[] salt, int iterations, int bytes)
-            throws CannotPerformOperationException {
-        try {
-            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, bytes * 8);
-            SecretKeyFactory skf = SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-            return skf.generateSecret(spec).getEncoded();
-        } catch (NoSuchAlgorithmException ex) {
-            throw new CannotPerformOperationException("Hash algorithm not supported.", ex);
-        } catch (InvalidKeySpecException ex) {
-            throw new CannotPerformOperationException("Invalid key spec.", ex);
-        }
-    }
-
     private byte[] fromBase64(String hex) throws IllegalArgumentException {
         return Base64.getDecoder().decode(hex);
     }
@@ -0,0 +1,53 @@
+package io.betweendata.auth.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import io.betweendata.auth.service.PasswordService.CannotPerformOperationException;
+
+/**
+ * PBKDF2 using one of the HMAC variants provided by the JDK.
+ */
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+
+    public static final Pbkdf2PasswordHasher SHA1 =
+            new Pbkdf2PasswordHasher("sha1", "PBKDF2WithHmacSHA1");
+    public static final Pbkdf2PasswordHasher SHA256 =
+            new Pbkdf2PasswordHasher("sha256", "PBKDF2WithHmacSHA256");
+    public static final Pbkdf2PasswordHasher SHA512 =
+            new Pbkdf2PasswordHasher("sha512", "PBKDF2WithHmacSHA512");
+
+    private final String algorithm;
+    private final String keyFactoryAlgorithm;
+
+    /**
+     * @param algorithm           - name stored in the hash
+     * @param keyFactoryAlgorithm - name of the {@link SecretKeyFactory} algorithm
+     */
+    public Pbkdf2PasswordHasher(String algorithm, String keyFactoryAlgorithm) {
+        this.algorithm = algorithm;
+        this.keyFactoryAlgorithm = keyFactoryAlgorithm;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public byte[] hash(char[] password, byte[] salt, int iterations, int bytes)
+            throws CannotPerformOperationException {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, bytes * 8);
+            SecretKeyFactory skf = SecretKeyFactory.getInstance(keyFactoryAlgorithm);
+            return skf.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new CannotPerformOperationException("Hash algorithm not supported.", ex);
+        } catch (InvalidKeySpecException ex) {
+            throw new CannotPerformOperationException("Invalid key spec.", ex);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.betweendata.auth.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+/**
+ * Reservoir keeping the most recent values in a ring buffer. Unlike the reservoirs of the
+ * metrics library it neither locks nor allocates when a value is recorded, which makes it cheap
+ * enough to time stages that take less than a microsecond on every request.
+ */
+public class RecentValuesReservoir implements Reservoir {
+    private final AtomicLongArray values;
+    private final int mask;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * @param size - number of values kept. Rounded up to a power of two.
+     */
+    public RecentValuesReservoir(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        values = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count.get(), values.length());
+    }
+
+    @Override
+    public void update(long value) {
+        values.lazySet((int) (count.getAndIncrement() & mask), value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        long[] copy = new long[size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = values.get(i);
+        }
+        return new UniformSnapshot(copy);
+    }
+}
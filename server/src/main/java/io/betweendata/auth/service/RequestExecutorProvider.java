@@ -0,0 +1,71 @@
+package io.betweendata.auth.service;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.glassfish.jersey.server.ManagedAsync;
+import org.glassfish.jersey.server.ManagedAsyncExecutor;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.betweendata.auth.RequestExecutionConfiguration;
+
+/**
+ * Provides the executor Jersey runs resource methods annotated with {@link ManagedAsync} on.
+ * <br>
+ * In {@link RequestExecutionConfiguration.Mode#THREAD_POOL} mode they run right away on the
+ * server thread that received the request. In
+ * {@link RequestExecutionConfiguration.Mode#VIRTUAL_THREADS} mode every request gets a virtual
+ * thread of its own and the server thread is released. The number of virtual threads is not
+ * limited, so anything CPU bound has to be limited elsewhere (i.e. by the
+ * {@link HashingService}).
+ */
+@ManagedAsyncExecutor
+public class RequestExecutorProvider implements ExecutorServiceProvider {
+
+    private final RequestExecutionConfiguration.Mode mode;
+    private final ExecutorService executor;
+
+    /**
+     * @param config
+     * @throws IllegalStateException if virtual threads are configured but not supported by the
+     *                               runtime
+     */
+    public RequestExecutorProvider(RequestExecutionConfiguration config) {
+        this.mode = config.getMode();
+        this.executor = mode == RequestExecutionConfiguration.Mode.VIRTUAL_THREADS
+                ? newVirtualThreadPerTaskExecutor()
+                : MoreExecutors.newDirectExecutorService();
+    }
+
+    /**
+     * Looked up at runtime, so the service still builds and runs with thread pools on Java 11.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, running on "
+                    + Runtime.version());
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    public RequestExecutionConfiguration.Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    @Override
+    public void dispose(ExecutorService executorService) {
+        executorService.shutdown();
+    }
+}
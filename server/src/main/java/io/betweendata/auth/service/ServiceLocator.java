@@ -1,13 +1,30 @@
 package io.betweendata.auth.service;
 
+import java.nio.file.Paths;
 import java.security.InvalidParameterException;
 
 import io.betweendata.auth.AuthenticationServiceConfiguration;
+import io.betweendata.auth.HashingConfiguration;
+import io.betweendata.auth.IntrospectionConfiguration;
+import io.betweendata.auth.RefreshTokenCacheConfiguration;
+import io.betweendata.auth.RequestExecutionConfiguration;
+import io.betweendata.auth.UserStorageConfiguration;
+import io.betweendata.auth.token.FileRefreshTokenCache;
+import io.betweendata.auth.token.InMemoryRefreshTokenCache;
+import io.betweendata.auth.token.KeyringWatcher;
+import io.betweendata.auth.token.ReplicatedRefreshTokenCache;
+import io.betweendata.auth.token.RevocationList;
+import io.betweendata.auth.token.TokenCache;
+import io.betweendata.auth.user.FileUserStorage;
+import io.betweendata.auth.user.InMemoryUserStorage;
+import io.betweendata.auth.user.TimedUserStorage;
+import io.betweendata.auth.user.UserStorage;
+import io.dropwizard.setup.Environment;
 
 /**
  * Singleton implementation managing all services.<br>
  * Upon starting the application the
- * {@link ServiceLocator#init(AuthenticationServiceConfiguration)} method has to
+ * {@link ServiceLocator#init(AuthenticationServiceConfiguration, Environment)} method has to
  * be called before the first access to one of the service.
  */
 public class ServiceLocator implements Services {
@@ -17,7 +34,13 @@ public class ServiceLocator implements Services {
     private AuthenticationServiceConfiguration config;
 
     private PasswordService passwordService;
+    private HashingService hashingService;
+    private IntrospectionService introspectionService;
+    private LoginThrottle loginThrottle;
     private TokenService tokenService;
+    private TokenCache refreshTokenCache;
+    private RevocationList revocationList;
+    private UserStorage userStorage;
 
 
     private ServiceLocator() {
@@ -27,14 +50,124 @@ public class ServiceLocator implements Services {
      * Initializes this service locator.
      *
      * @param config
+     * @param environment - used to manage the lifecycle of the services
      */
-    public void init(AuthenticationServiceConfiguration config) {
+    public void init(AuthenticationServiceConfiguration config, Environment environment) {
         if (config == null) {
             throw new InvalidParameterException("Config can't be null");
         }
         this.config = config;
-        passwordService = new PasswordService();
-        tokenService = new TokenService(config);
+        passwordService = new PasswordService(config.getHashing().getAlgorithm(),
+                config.getHashing().getIterations(), environment.metrics());
+        hashingService = createHashingService(config.getHashing(),
+                config.getRequestExecution().getMode(), environment);
+        introspectionService = createIntrospectionService(config.getIntrospection(), environment);
+        loginThrottle = new LoginThrottle(config.getThrottling(), environment.metrics());
+        environment.lifecycle().manage(loginThrottle);
+        tokenService = new TokenService(config, environment.metrics());
+        if (tokenService.getKeyringFile() != null) {
+            environment.lifecycle()
+                    .manage(new KeyringWatcher(tokenService, tokenService.getKeyringFile()));
+        }
+
+        refreshTokenCache = createRefreshTokenCache(config.getRefreshTokenCache(), environment);
+        revocationList = new RevocationList(config.getRevocation(), environment.metrics());
+        environment.lifecycle().manage(revocationList);
+        userStorage = new TimedUserStorage(createUserStorage(config.getUserStorage(), environment),
+                environment.metrics());
+    }
+
+    /**
+     * Creates the service hashing passwords in the background. With virtual threads nothing
+     * else limits the number of concurrent logins, so the threads are capped at the number of
+     * processors.
+     *
+     * @param config
+     * @param mode        - how requests are executed
+     * @param environment
+     * @return
+     */
+    private HashingService createHashingService(HashingConfiguration config,
+            RequestExecutionConfiguration.Mode mode, Environment environment) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = config.getThreads() > 0 ? config.getThreads() : processors;
+        if (mode == RequestExecutionConfiguration.Mode.VIRTUAL_THREADS) {
+            threads = Math.min(threads, processors);
+        }
+        HashingService service = new HashingService(threads, config.getQueueSize(),
+                environment.metrics());
+        environment.lifecycle().manage(service);
+        return service;
+    }
+
+    /**
+     * Creates the service verifying the batches of the introspection end-point.
+     *
+     * @param config
+     * @param environment
+     * @return
+     */
+    private IntrospectionService createIntrospectionService(IntrospectionConfiguration config,
+            Environment environment) {
+        int threads = config.getThreads() > 0 ? config.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        IntrospectionService service = new IntrospectionService(threads, config.getQueueSize(),
+                environment.metrics());
+        environment.lifecycle().manage(service);
+        return service;
+    }
+
+    /**
+     * Creates the refresh token cache of the configured type.
+     *
+     * @param config
+     * @param environment
+     * @return
+     */
+    private TokenCache createRefreshTokenCache(RefreshTokenCacheConfiguration config,
+            Environment environment) {
+        switch (config.getType()) {
+        case FILE:
+            FileRefreshTokenCache fileCache = new FileRefreshTokenCache(
+                    Paths.get(config.getLogFile()), config.getMaxSize(),
+                    TokenService.REFRESH_TOKEN_LIFETIME);
+            environment.lifecycle().manage(fileCache);
+            return fileCache;
+        case REPLICATED:
+            ReplicatedRefreshTokenCache replicatedCache = new ReplicatedRefreshTokenCache(
+                    config.getMaxSize(), config.getMaxTombstones(),
+                    TokenService.REFRESH_TOKEN_LIFETIME, config.getReplicationBindAddress(),
+                    config.getReplicationPort(), config.getPeers(), environment.metrics());
+            environment.lifecycle().manage(replicatedCache);
+            return replicatedCache;
+        case MEMORY:
+        default:
+            InMemoryRefreshTokenCache inMemoryCache = new InMemoryRefreshTokenCache(
+                    config.getMaxSize(), TokenService.REFRESH_TOKEN_LIFETIME);
+            environment.lifecycle().manage(inMemoryCache);
+            return inMemoryCache;
+        }
+    }
+
+    /**
+     * Creates the user storage of the configured type.
+     *
+     * @param config
+     * @param environment
+     * @return
+     */
+    private UserStorage createUserStorage(UserStorageConfiguration config,
+            Environment environment) {
+        switch (config.getType()) {
+        case FILE:
+            FileUserStorage fileStorage = new FileUserStorage(Paths.get(config.getDirectory()),
+                    (int) config.getSegmentSize().toBytes());
+            environment.lifecycle().manage(fileStorage);
+            return fileStorage;
+        case MEMORY:
+        default:
+            return InMemoryUserStorage.getInstance();
+        }
     }
 
     public static ServiceLocator get() {
@@ -46,9 +179,39 @@ public class ServiceLocator implements Services {
         return passwordService;
     }
 
+    @Override
+    public HashingService getHashingService() {
+        return hashingService;
+    }
+
+    @Override
+    public IntrospectionService getIntrospectionService() {
+        return introspectionService;
+    }
+
+    @Override
+    public LoginThrottle getLoginThrottle() {
+        return loginThrottle;
+    }
+
     @Override
     public TokenService getTokenService() {
         return tokenService;
     }
 
+    @Override
+    public TokenCache getRefreshTokenCache() {
+        return refreshTokenCache;
+    }
+
+    @Override
+    public RevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    @Override
+    public UserStorage getUserStorage() {
+        return userStorage;
+    }
+
 }
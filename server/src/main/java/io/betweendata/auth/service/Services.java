@@ -1,5 +1,9 @@
 package io.betweendata.auth.service;
 
+import io.betweendata.auth.token.RevocationList;
+import io.betweendata.auth.token.TokenCache;
+import io.betweendata.auth.user.UserStorage;
+
 /**
  * Services is an gives an overview of all available {@link Service}s. Each service needs to
  * implement a get method here so {@link ServiceLocator} is aware of which services are available.
@@ -8,6 +12,18 @@ public interface Services {
 
     PasswordService getPasswordService();
 
+    HashingService getHashingService();
+
+    IntrospectionService getIntrospectionService();
+
+    LoginThrottle getLoginThrottle();
+
     TokenService getTokenService();
 
+    TokenCache getRefreshTokenCache();
+
+    RevocationList getRevocationList();
+
+    UserStorage getUserStorage();
+
 }
@@ -0,0 +1,29 @@
+package io.betweendata.auth.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Creates the timers measuring the stages of a request. They are backed by a
+ * {@link RecentValuesReservoir}, so they can stay enabled in production.
+ */
+public final class Timers {
+    /**
+     * Number of recent measurements the percentiles of a timer are computed from
+     */
+    public static final int RECENT_VALUES = 1024;
+
+    private Timers() {
+    }
+
+    /**
+     * Returns the timer with the given name, creating it if it does not exist.
+     *
+     * @param metrics
+     * @param name
+     * @return
+     */
+    public static Timer timer(MetricRegistry metrics, String name) {
+        return metrics.timer(name, () -> new Timer(new RecentValuesReservoir(RECENT_VALUES)));
+    }
+}
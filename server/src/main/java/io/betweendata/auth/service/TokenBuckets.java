@@ -0,0 +1,132 @@
+package io.betweendata.auth.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets keyed by strings. A bucket holds up to <i>capacity</i> tokens and regains one
+ * token per <i>refill</i> interval.<br>
+ * A bucket does not store its tokens but the point in time at which it is full again (the
+ * generic cell rate algorithm). Taking a token moves that point one refill interval into the
+ * future, which is a single compare-and-set on an {@link AtomicLong}. So taking tokens never
+ * blocks, even for the same key.<br>
+ * A bucket that is full again behaves like a missing one. {@link #sweep(long)} drops those,
+ * which together with the maximum number of keys bounds the memory used. Once the maximum is
+ * reached a new key sweeps right away. If no bucket is full again the key is rejected like an
+ * empty bucket, so touching many keys does not turn throttling off for the others.
+ */
+public class TokenBuckets {
+
+    /**
+     * <b>Key:</b> the throttled key<br>
+     * <b>Value:</b> the point in time (milliseconds since the epoch) the bucket is full again
+     */
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final long refillMillis;
+    private final long capacityMillis;
+    private final int maxKeys;
+
+    /**
+     * No bucket is full again before this point in time (milliseconds since the epoch), so
+     * sweeping earlier would not make room for new keys.
+     */
+    private volatile long nextSweepAt;
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param capacity     - number of tokens a full bucket holds
+     * @param refillMillis - milliseconds it takes to regain one token
+     * @param maxKeys      - maximum number of buckets
+     */
+    public TokenBuckets(int capacity, long refillMillis, int maxKeys) {
+        this.refillMillis = refillMillis;
+        this.capacityMillis = capacity * refillMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Takes a token from the bucket of the given key.
+     *
+     * @param key
+     * @param now - the current time in milliseconds since the epoch
+     * @return <code>0</code> if a token was taken, otherwise the milliseconds until the next
+     *         token is available or, if the maximum number of buckets is reached, until a
+     *         bucket may be full again
+     */
+    public long tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                long wait = makeRoom(now);
+                if (wait > 0) {
+                    overflows.increment();
+                    return wait;
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + refillMillis;
+            long wait = next - now - capacityMillis;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Sweeps if a bucket may be full again by now.
+     *
+     * @return <code>0</code> if there is room for another bucket, otherwise the milliseconds
+     *         until a bucket may be full again
+     */
+    private synchronized long makeRoom(long now) {
+        if (buckets.size() >= maxKeys && now >= nextSweepAt) {
+            sweep(now);
+        }
+        return buckets.size() < maxKeys ? 0 : Math.max(1, nextSweepAt - now);
+    }
+
+    /**
+     * Drops all buckets that are full at the given time. A token taken concurrently from a
+     * dropped bucket is lost, which only grants that key one more attempt.
+     *
+     * @param now - the current time in milliseconds since the epoch
+     */
+    public synchronized void sweep(long now) {
+        // Buckets created from now on are full one refill interval after their first token
+        long earliest = now + refillMillis;
+        for (Iterator<AtomicLong> iterator = buckets.values().iterator(); iterator.hasNext();) {
+            long fullAt = iterator.next().get();
+            if (fullAt <= now) {
+                iterator.remove();
+            } else {
+                earliest = Math.min(earliest, fullAt);
+            }
+        }
+        nextSweepAt = earliest;
+    }
+
+    /**
+     * @return number of buckets (including full buckets that have not been swept yet)
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return number of new keys rejected because the maximum number of buckets was reached
+     */
+    public long getOverflows() {
+        return overflows.sum();
+    }
+}
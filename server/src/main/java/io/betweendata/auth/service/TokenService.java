@@ -1,16 +1,48 @@
 package io.betweendata.auth.service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.crypto.SecretKey;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.betweendata.auth.AuthenticationServiceConfiguration;
-import io.jsonwebtoken.JwtBuilder;
+import io.betweendata.auth.TokenSigningConfiguration;
+import io.betweendata.auth.token.CoarseClock;
+import io.betweendata.auth.token.Hs256TokenCodec;
+import io.betweendata.auth.token.IssuedToken;
+import io.betweendata.auth.token.JsonWebKeySet;
+import io.betweendata.auth.token.Keyring;
+import io.betweendata.auth.token.TokenId;
+import io.betweendata.auth.token.VerifiedToken;
+import io.betweendata.auth.user.UserAuthenticationValidator;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
 
 /**
@@ -26,130 +58,359 @@ public class TokenService implements Service {
      * Amount of days an refresh token expires in.
      */
     private final static int EXPIRES_AT_REFRESH_TOKEN_DAYS = 5;
+    /**
+     * Lifetime of a refresh token.
+     */
+    public final static Duration REFRESH_TOKEN_LIFETIME =
+            Duration.ofDays(EXPIRES_AT_REFRESH_TOKEN_DAYS);
+
+    public final static String SUBJECT_ACCESS_TOKEN = "AccessToken";
+    public final static String SUBJECT_REFRESH_TOKEN = "RefreshToken";
+
+    /**
+     * Used to peek into the (not yet verified) payload of a token to read its expiry.
+     */
+    private static final ObjectMapper PAYLOAD_READER = new ObjectMapper();
 
+    private static final Logger LOG = Logger.getLogger(TokenService.class.getName());
+
+    /**
+     * Id of the key derived from the <i>tokenSecret</i>. Token without a key id are verified with
+     * the key of this id.
+     */
+    public final static String DEFAULT_KID = "default";
+
+    private final SignatureAlgorithm algorithm;
+    /**
+     * File the keys are read from or <code>null</code> if a single key is configured.
+     */
+    private final Path keyringFile;
+    /**
+     * Keys used to sign and verify tokens. Replaced as a whole when the keyring file changes.
+     */
+    private volatile Keyring keyring;
+    private final List<Runnable> keyringListeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Key is used to sign all tokens.
+     * Picks the key to verify a token with by the id in its header.
      */
-    private SecretKey key;
+    private final SigningKeyResolver keyResolver = new SigningKeyResolverAdapter() {
+	@Override
+	@SuppressWarnings("rawtypes") // jjwt declares the header raw
+	public Key resolveSigningKey(JwsHeader header, Claims claims) {
+	    Keyring currentKeyring = keyring;
+	    // Token issued before key ids were introduced have been signed with the tokenSecret
+	    String kid = header.getKeyId() == null ? DEFAULT_KID : header.getKeyId();
+	    Key key = currentKeyring.getVerificationKey(kid);
+	    if (key == null) {
+		throw new JwtException("Unknown key " + kid);
+	    }
+	    return key;
+	}
+    };
+
+    private final Timer createTimer;
+    private final Timer verifyTimer;
+    private final Meter rejected;
+    private final Counter verifiedByJjwt;
 
     public TokenService(AuthenticationServiceConfiguration config) {
-	key = Keys.hmacShaKeyFor(config.getTokenSecret().getBytes());
+	this(config, new MetricRegistry());
     }
 
     /**
-     * Create a short lived access token.
-     * @param email
-     * @return
+     * The following metrics are exported:
+     * <ul>
+     * <li><i>create</i>: time it takes to create and sign a token</li>
+     * <li><i>verify</i>: time it takes to verify a token</li>
+     * <li><i>rejected</i>: token that failed the verification</li>
+     * <li><i>verified-by-jjwt</i>: token not supported by the {@link Hs256TokenCodec}</li>
+     * </ul>
+     *
+     * @param config
+     * @param metrics
      */
-    public String createAccessToken(String email) {
-        return createBaseTokenBuilder(email)
-                .setSubject("AccessToken")
-                .setExpiration(getDefaultExpiresAtAccessToken())
-                .compact();
+    public TokenService(AuthenticationServiceConfiguration config, MetricRegistry metrics) {
+	this(SignatureAlgorithm.forName(config.getTokenSigning().getAlgorithm().name()),
+		config.getTokenSigning().getKeyringFile() == null ? null
+			: Paths.get(config.getTokenSigning().getKeyringFile()),
+		metrics);
+	keyring = createKeyring(config);
     }
 
     /**
-     * Create a long lived refresh token.
-     * @param email
-     * @return
+     * Signs and verifies token with the given keys instead of the configured ones.
+     *
+     * @param algorithm - algorithm the keys are used with
+     * @param keyring
+     * @param metrics
      */
-    public String createRefreshToken(String email) {
-        return createBaseTokenBuilder(email)
-                .setSubject("RefreshToken")
-                .setExpiration(getDefaultExpiresAtRefreshToken())
-                .compact();
+    TokenService(SignatureAlgorithm algorithm, Keyring keyring, MetricRegistry metrics) {
+	this(algorithm, (Path) null, metrics);
+	this.keyring = keyring;
+    }
+
+    private TokenService(SignatureAlgorithm algorithm, Path keyringFile, MetricRegistry metrics) {
+	createTimer = Timers.timer(metrics, MetricRegistry.name(TokenService.class, "create"));
+	verifyTimer = Timers.timer(metrics, MetricRegistry.name(TokenService.class, "verify"));
+	rejected = metrics.meter(MetricRegistry.name(TokenService.class, "rejected"));
+	verifiedByJjwt =
+		metrics.counter(MetricRegistry.name(TokenService.class, "verified-by-jjwt"));
+	this.algorithm = algorithm;
+	this.keyringFile = keyringFile;
     }
 
     /**
-     * Creates a base token with all information that is shared between all tokens. Methods
-     * calling this method only have to make their individual adjustments (i.e. adding the
-     * expiration date / subject).
+     * Creates the keyring holding the configured keys.
      *
-     * @param email
+     * @param config
      * @return
      */
-    protected JwtBuilder createBaseTokenBuilder(String email) {
-        return Jwts.builder()
-                .signWith(key)
-                .setExpiration(getDefaultExpiresAtRefreshToken())
-                .claim("email", email);
+    private Keyring createKeyring(AuthenticationServiceConfiguration config) {
+	TokenSigningConfiguration signing = config.getTokenSigning();
+	if (keyringFile != null) {
+	    try {
+		return Keyring.load(keyringFile, algorithm);
+	    } catch (IOException ex) {
+		throw new IllegalStateException("Could not read the keyring", ex);
+	    }
+	} else if (algorithm.isHmac()) {
+	    return Keyring.ofSecret(DEFAULT_KID, config.getTokenSecret().getBytes());
+	} else if (signing.getPrivateKeyFile() == null) {
+	    LOG.warning("No key files configured, generating a " + algorithm.getValue()
+		    + " key pair. Token will become invalid on restart.");
+	    KeyPair keyPair = Keys.keyPairFor(algorithm);
+	    return Keyring.ofKeyPair(keyPair.getPrivate(), keyPair.getPublic(), algorithm);
+	} else {
+	    return loadKeyPair(signing.getPrivateKeyFile(), signing.getPublicKeyFile());
+	}
     }
 
     /**
-     * Checks whether or not the given token was signed with our key and therefore
-     * can be trusted.
-     * 
-     * @param token
+     * Reads the key pair from the given PEM files.
+     *
+     * @param privateKeyFile - PKCS#8
+     * @param publicKeyFile  - X.509
      * @return
      */
-    public boolean isValid(String token) {
+    private Keyring loadKeyPair(String privateKeyFile, String publicKeyFile) {
+	if (publicKeyFile == null) {
+	    throw new IllegalStateException(
+		    "The public key file has to be configured together with the private key file");
+	}
 	try {
-	    Jwts.parser().setSigningKey(key).parseClaimsJws(token);
-	} catch (JwtException ex) {
-	    return false;
+	    KeyFactory keyFactory = KeyFactory.getInstance(algorithm.isRsa() ? "RSA" : "EC");
+	    return Keyring.ofKeyPair(Keyring.readPrivateKey(keyFactory, Paths.get(privateKeyFile)),
+		    Keyring.readPublicKey(keyFactory, Paths.get(publicKeyFile)), algorithm);
+	} catch (IOException | GeneralSecurityException | IllegalArgumentException ex) {
+	    throw new IllegalStateException(
+		    "Could not read the " + algorithm.getValue() + " key pair", ex);
 	}
-	return true;
     }
 
     /**
-     * Returns the expires at date of the given token.
+     * Registers a listener that is notified after the keyring has been reloaded.
      *
-     * @param token
+     * @param listener
+     */
+    public void addKeyringListener(Runnable listener) {
+	keyringListeners.add(listener);
+    }
+
+    /**
+     * Reads the keyring file again. If the file is invalid the current keys are kept.
+     *
+     * @return <code>true</code> if the keys have been replaced
+     */
+    public boolean reloadKeyring() {
+	if (keyringFile == null) {
+	    return false;
+	}
+	try {
+	    keyring = Keyring.load(keyringFile, algorithm);
+	    LOG.info("Reloaded keyring " + keyringFile + ", active key: " + keyring.getActiveKid());
+	    keyringListeners.forEach(Runnable::run);
+	    return true;
+	} catch (IOException ex) {
+	    LOG.log(Level.SEVERE,
+		    "Could not reload keyring " + keyringFile + ", keeping the current keys", ex);
+	    return false;
+	}
+    }
+
+    /**
+     * @return the file the keys are read from or <code>null</code> if a single key is
+     *         configured
+     */
+    public Path getKeyringFile() {
+	return keyringFile;
+    }
+
+    /**
+     * @return the keys other services can use to verify token. Empty if token are signed with a
+     *         secret.
+     */
+    public JsonWebKeySet getPublicKeys() {
+	return keyring.getPublicKeys();
+    }
+
+    /**
+     * Create a short lived access token.
+     * @param email
      * @return
      */
-    public LocalDateTime getClaimExpiresAt(String token) {
-        Instant expiresAt = Jwts.parser()
-                .setSigningKey(key)
-                .parseClaimsJws(token)
-                .getBody()
-                .getExpiration()
-                .toInstant();
-        return LocalDateTime.ofInstant(expiresAt, ZoneOffset.UTC);
+    public IssuedToken createAccessToken(String email) {
+        Instant expiresAt = now().plus(EXPIRES_AT_ACCESS_TOKEN_MINUTES, ChronoUnit.MINUTES);
+        return createToken(email, SUBJECT_ACCESS_TOKEN, expiresAt, null);
     }
 
     /**
-     * Return the email from the claims of the given token.
-     * @param token
+     * Create a long lived refresh token. It carries a random id (<i>jti</i>) that is all the
+     * refresh token cache has to keep of it.
+     * @param email
      * @return
      */
-    public String extractClaimEmail(String token) {
-        return Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody()
-                .get("email", String.class);
+    public IssuedToken createRefreshToken(String email) {
+        Instant expiresAt = now().plus(REFRESH_TOKEN_LIFETIME);
+        return createToken(email, SUBJECT_REFRESH_TOKEN, expiresAt, TokenId.generate());
     }
 
     /**
-     * Returns the default date when an access token expires at from the moment the method has
-     * been called.
+     * Creates a signed token containing all information that is shared between all tokens.
      *
-     * @return
+     * @param email
+     * @param subject
+     * @param expiresAt
+     * @param id        - the <i>jti</i> claim or <code>null</code> for none
+     * @return the token together with the expiry that has been set in its claims
      */
-    public Date getDefaultExpiresAtAccessToken() {
-        LocalDateTime now = LocalDateTime.now((ZoneOffset.UTC));
+    protected IssuedToken createToken(String email, String subject, Instant expiresAt,
+            String id) {
+        Timer.Context context = createTimer.time();
+        try {
+            return sign(email, subject, expiresAt, id);
+        } finally {
+            context.stop();
+        }
+    }
 
-        LocalDateTime expiresAt = now.plusMinutes(EXPIRES_AT_ACCESS_TOKEN_MINUTES);
+    private IssuedToken sign(String email, String subject, Instant expiresAt, String id) {
+        Keyring currentKeyring = keyring;
+        Hs256TokenCodec codec = currentKeyring.getActiveCodec();
+        if (codec != null) {
+            return new IssuedToken(codec.encode(subject, now().getEpochSecond(),
+                    expiresAt.getEpochSecond(), email, id), expiresAt, id);
+        }
 
-        return Date.from(expiresAt.toInstant(ZoneOffset.UTC));
+        String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, currentKeyring.getActiveKid())
+                .signWith(currentKeyring.getSigningKey(), algorithm)
+                .setSubject(subject)
+                .setIssuedAt(Date.from(now()))
+                .setExpiration(Date.from(expiresAt))
+                .claim("email", email)
+                .setId(id)
+                .compact();
+        return new IssuedToken(token, expiresAt, id);
     }
 
     /**
-     * Returns the default date when an refresh token expires at from the moment the method has
-     * been called.
+     * Verifies the given token and returns its claims.<br>
+     * The expiry of the token is checked before its signature. This way expired token are
+     * rejected without the cost of verifying the signature.<br>
+     * HS256 token issued by this service are verified by a {@link Hs256TokenCodec}. All other
+     * token are verified by jjwt.
      *
-     * @return
+     * @param token
+     * @return the verified claims or an empty Optional if the token was not signed with our key,
+     *         is malformed or has expired
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        long start = System.nanoTime();
+        Optional<VerifiedToken> verified = verifyToken(token);
+        verifyTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (verified.isEmpty()) {
+            rejected.mark();
+        }
+        return verified;
+    }
+
+    private Optional<VerifiedToken> verifyToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Hs256TokenCodec codec = keyring.getCodec(token);
+        if (codec != null) {
+            Optional<VerifiedToken> verified = codec.decode(token);
+            if (verified != null) {
+                return verified;
+            }
+        }
+
+        verifiedByJjwt.inc();
+
+        // Cheap check first: read the expiry from the unverified payload
+        long expiresAt = peekExpiration(token);
+        if (expiresAt <= CoarseClock.currentTimeSeconds()) {
+            return Optional.empty();
+        }
+
+        Claims claims;
+        try {
+            claims = Jwts.parser().setSigningKeyResolver(keyResolver).parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+
+        Date issuedAt = claims.getIssuedAt();
+        return Optional.of(new VerifiedToken(token,
+                claims.get("email", String.class),
+                claims.getSubject(),
+                claims.getExpiration().toInstant(),
+                issuedAt == null ? null : issuedAt.toInstant(),
+                claims.getId()));
+    }
+
+    /**
+     * Reads the expiry (in seconds since the epoch) from the payload of the given token
+     * <b>without</b> verifying its signature.
+     *
+     * @param token
+     * @return the expiry or <code>0</code> if it could not be read
      */
-    public Date getDefaultExpiresAtRefreshToken() {
-        LocalDateTime now = LocalDateTime.now((ZoneOffset.UTC));
+    private long peekExpiration(String token) {
+        int payloadStart = token.indexOf('.') + 1;
+        int payloadEnd = token.indexOf('.', payloadStart);
+        if (payloadStart == 0 || payloadEnd < 0) {
+            return 0;
+        }
 
-        LocalDateTime expiresAt = now.plusDays(EXPIRES_AT_REFRESH_TOKEN_DAYS);
+        try {
+            byte[] payload = Base64.getUrlDecoder()
+                    .decode(token.substring(payloadStart, payloadEnd));
+            JsonNode expiration = PAYLOAD_READER.readTree(payload).get(Claims.EXPIRATION);
+            return expiration != null && expiration.canConvertToLong() ? expiration.asLong() : 0;
+        } catch (IOException | IllegalArgumentException ex) {
+            return 0;
+        }
+    }
 
-        return Date.from(expiresAt.toInstant(ZoneOffset.UTC));
+    /**
+     * The current time truncated to seconds since this is the precision of the time based
+     * claims of a token. Read from the {@link CoarseClock}.
+     *
+     * @return
+     */
+    private Instant now() {
+        return Instant.ofEpochSecond(CoarseClock.currentTimeSeconds());
     }
 
     /**
      * Takes an authorization header an returns the token part of it. <br>
      * The header is expected to be in the following format: "Bearer [TOKEN]". What this methods
-     * basically does is remove the "Bearer " part.
+     * basically does is remove the "Bearer " part. The header is validated by
+     * {@link UserAuthenticationValidator#isBearerHeaderValid(String)}.
      *
      * @param authHeader
      * @return the token part of the header
@@ -157,10 +418,10 @@ public class TokenService implements Service {
      */
     public String parseAuthorizationHeader(String authHeader) throws IllegalArgumentException {
         // Check that the headers format is valid
-        if (!authHeader.startsWith("Bearer ") && authHeader.length() < 7) {
+        if (!UserAuthenticationValidator.isBearerHeaderValid(authHeader)) {
             throw new IllegalArgumentException("Malformed authorization header");
         }
         // Extract the token part
-        return authHeader.substring(authHeader.indexOf(" ") + 1);
+        return authHeader.substring(UserAuthenticationValidator.BEARER_PREFIX.length());
     }
 }
@@ -0,0 +1,205 @@
+package io.betweendata.auth.service;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.betweendata.auth.WarmupConfiguration;
+import io.betweendata.auth.token.IssuedToken;
+import io.betweendata.auth.token.RefreshTokenRequestData;
+import io.betweendata.auth.token.TokenId;
+import io.betweendata.auth.user.User;
+import io.betweendata.auth.user.UserAuthenticationRequestData;
+import io.betweendata.auth.user.UserAuthenticationResponse;
+import io.betweendata.auth.user.UserAuthenticationResponseWriter;
+import io.betweendata.auth.user.UserAuthenticationValidator;
+import io.betweendata.auth.user.UserWriter;
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Runs the hot paths of the service with synthetic data right after startup: creating and
+ * verifying token, hashing and verifying passwords and reading and writing the JSON of the
+ * end-points. Until then these paths run interpreted and the first use of each of them loads
+ * classes, looks up security providers and creates serializers, which shows up as slow
+ * requests for minutes after a deploy. Before hashing passwords the faster of the PBKDF2
+ * engines is picked (see {@link PasswordService#selectFastestHashers()}).<br>
+ * Once the server has started, requests with synthetic token are sent to <i>/user</i> and
+ * <i>/refresh</i> to warm up the server and Jersey as well. They are rejected, as neither the
+ * user nor the refresh token are known.<br>
+ * The warm-up runs in the background while the server starts. Nothing is stored: no refresh
+ * token are cached and no users are saved. The token and request metrics include the warm-up
+ * though.
+ */
+public class Warmup implements Managed {
+    private static final Logger LOG = Logger.getLogger(Warmup.class.getName());
+
+    private static final String PASSWORD = "Warm-up password 1";
+    private static final long SERVER_START_TIMEOUT_SECONDS = 60;
+
+    private final WarmupConfiguration config;
+    private final ObjectMapper mapper;
+    private final CompletableFuture<Integer> port = new CompletableFuture<>();
+
+    private volatile boolean done;
+    private Thread thread;
+
+    /**
+     * @param config
+     * @param mapper - the object mapper the end-points use
+     */
+    public Warmup(WarmupConfiguration config, ObjectMapper mapper) {
+        this.config = config;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Has to be called once the server has started.
+     *
+     * @param server
+     */
+    public void serverStarted(Server server) {
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof ServerConnector) {
+                // The application connectors come first
+                port.complete(((ServerConnector) connector).getLocalPort());
+                return;
+            }
+        }
+        port.complete(-1);
+    }
+
+    /**
+     * @return <code>true</code> once the warm-up has finished (or failed)
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public void start() {
+        if (!config.isEnabled()) {
+            done = true;
+            return;
+        }
+        thread = new Thread(this::run, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        try {
+            warmUpTokens();
+            warmUpHashing();
+            warmUpRequests();
+            LOG.info("Warm-up finished in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (InterruptedException e) {
+            LOG.info("Warm-up interrupted");
+        } catch (Exception e) {
+            // A failed warm-up only costs speed, the service still works
+            LOG.log(Level.WARNING, "Warm-up failed", e);
+        } finally {
+            done = true;
+        }
+    }
+
+    private void warmUpTokens() throws Exception {
+        TokenService tokenService = ServiceLocator.get().getTokenService();
+        UserAuthenticationResponseWriter responseWriter = new UserAuthenticationResponseWriter();
+        UserWriter userWriter = new UserWriter();
+        OutputStream out = OutputStream.nullOutputStream();
+        for (int i = 0; i < config.getIterations(); i++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            String email = "warm-up-" + i + "@example.com";
+            UserAuthenticationValidator.isEmailValid(email);
+            UserAuthenticationValidator.isPasswordValid(PASSWORD);
+
+            IssuedToken accessToken = tokenService.createAccessToken(email);
+            IssuedToken refreshToken = tokenService.createRefreshToken(email);
+            tokenService.verify(accessToken.getToken());
+            tokenService.verify(refreshToken.getToken());
+            TokenId.of(refreshToken);
+            tokenService.parseAuthorizationHeader("Bearer " + accessToken.getToken());
+
+            UserAuthenticationRequestData request = new UserAuthenticationRequestData();
+            request.setEmail(email);
+            request.setPassword(PASSWORD);
+            mapper.readValue(mapper.writeValueAsBytes(request),
+                    UserAuthenticationRequestData.class);
+            RefreshTokenRequestData refreshRequest = new RefreshTokenRequestData();
+            refreshRequest.setRefreshToken(refreshToken.getToken());
+            mapper.readValue(mapper.writeValueAsBytes(refreshRequest),
+                    RefreshTokenRequestData.class);
+
+            responseWriter.write(new UserAuthenticationResponse(email, accessToken.getToken(),
+                    refreshToken.getToken(),
+                    LocalDateTime.ofInstant(accessToken.getExpiresAt(), ZoneOffset.UTC)), out);
+            User user = new User();
+            user.setEmail(email);
+            userWriter.write(user, out);
+        }
+    }
+
+    private void warmUpHashing() throws Exception {
+        PasswordService passwordService = ServiceLocator.get().getPasswordService();
+        passwordService.selectFastestHashers();
+        for (int i = 0; i < config.getHashes(); i++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            String hash = passwordService.createHash(PASSWORD);
+            passwordService.verifyPassword(PASSWORD, hash);
+        }
+    }
+
+    private void warmUpRequests() throws Exception {
+        int localPort = port.get(SERVER_START_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (localPort < 0) {
+            return;
+        }
+        TokenService tokenService = ServiceLocator.get().getTokenService();
+        HttpClient client = HttpClient.newHttpClient();
+        URI user = URI.create("http://localhost:" + localPort + "/user");
+        URI refresh = URI.create("http://localhost:" + localPort + "/refresh");
+        for (int i = 0; i < config.getRequests(); i++) {
+            String email = "warm-up-" + i + "@example.com";
+            HttpRequest request = i % 2 == 0
+                    ? HttpRequest.newBuilder(user).header(HttpHeaders.AUTHORIZATION,
+                            "Bearer " + tokenService.createAccessToken(email).getToken()).build()
+                    : HttpRequest.newBuilder(refresh)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"refreshToken\":\""
+                                    + tokenService.createRefreshToken(email).getToken() + "\"}"))
+                            .build();
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.betweendata.auth.token;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of {@link TokenId}s that is safe to be used by multiple threads. Adding sets
+ * bits with atomic updates, testing only reads, so neither ever blocks.<br>
+ * The filter is sized for about 1% false positives at the expected number of ids. Ids are random
+ * or hashes already, so the bit positions are derived from their two halves directly (double
+ * hashing).
+ */
+public class BloomFilter {
+
+    private static final int BITS_PER_ID = 10;
+    private static final int HASHES = 7;
+    private static final long MAX_BITS = 1L << 32;
+
+    private final AtomicLongArray words;
+    private final long mask;
+
+    /**
+     * @param expectedSize - number of ids the filter is sized for
+     */
+    public BloomFilter(int expectedSize) {
+        long bits = Math.min(MAX_BITS,
+                Math.max(Long.SIZE, Long.highestOneBit(expectedSize * (long) BITS_PER_ID) << 1));
+        words = new AtomicLongArray((int) (bits / Long.SIZE));
+        mask = bits - 1;
+    }
+
+    /**
+     * @param high
+     * @param low
+     */
+    public void add(long high, long low) {
+        long step = low | 1;
+        long hash = high;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & mask;
+            int index = (int) (bit >>> 6);
+            long word = 1L << bit;
+            if ((words.get(index) & word) == 0) {
+                words.accumulateAndGet(index, word, (current, set) -> current | set);
+            }
+            hash += step;
+        }
+    }
+
+    /**
+     * @param high
+     * @param low
+     * @return <code>false</code> if the id has definitely not been added
+     */
+    public boolean mightContain(long high, long low) {
+        long step = low | 1;
+        long hash = high;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & mask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+}
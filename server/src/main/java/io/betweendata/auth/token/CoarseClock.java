@@ -0,0 +1,45 @@
+package io.betweendata.auth.token;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that is updated in the background every {@link #RESOLUTION_MILLIS} milliseconds.
+ * Reading it is a single volatile read. Token claims have a precision of seconds, so checking
+ * expiry against this clock is precise enough.
+ */
+public final class CoarseClock {
+
+    public static final long RESOLUTION_MILLIS = 10;
+
+    private static volatile long currentTimeMillis = System.currentTimeMillis();
+
+    static {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coarse-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> currentTimeMillis = System.currentTimeMillis(),
+                RESOLUTION_MILLIS, RESOLUTION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private CoarseClock() {
+    }
+
+    /**
+     * @return the current time in milliseconds since the epoch. Lags behind by at most
+     *         {@link #RESOLUTION_MILLIS}.
+     */
+    public static long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * @return the current time in seconds since the epoch
+     */
+    public static long currentTimeSeconds() {
+        return currentTimeMillis / 1000;
+    }
+}
@@ -0,0 +1,615 @@
+package io.betweendata.auth.token;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Refresh token cache that survives restarts.<br>
+ * Every change is appended to a log file before it becomes visible in memory. On startup the
+ * log is replayed to restore all refresh token that have not expired yet. Lookups are answered
+ * by an {@link InMemoryRefreshTokenCache}.
+ * <ul>
+ * <li><b>Group commit:</b> a single writer thread takes all changes that queued up while the
+ * previous batch was written, writes them with one write and forces them to disk with one
+ * fsync. Callers block until their change is durable.</li>
+ * <li><b>Compaction:</b> the log grows with every change. Once it holds considerably more records
+ * than there are live token it is rewritten in the background to only contain the live token.
+ * Expired and removed token are dropped this way.</li>
+ * </ul>
+ * Each record has the following format:
+ *
+ * <pre>
+ * crc32 (int) | operation (byte) | expires at in ms (long) | token id (2 longs)
+ * </pre>
+ *
+ * Logs written before token were identified by their {@link TokenId} contain records holding
+ * the whole token instead:
+ *
+ * <pre>
+ * crc32 (int) | operation (byte) | expires at in ms (long) | token length (short) | token
+ * </pre>
+ *
+ * These are replayed using the hash of the token as its id and are dropped by the next
+ * compaction.<br>
+ * The checksum covers everything after it. Replay stops at the first incomplete or corrupt
+ * record (i.e. a write interrupted by a crash) and the log is truncated there.
+ */
+public class FileRefreshTokenCache implements TokenCache, Managed {
+    private static final Logger LOG = Logger.getLogger(FileRefreshTokenCache.class.getName());
+
+    private static final byte OPERATION_ADD_TOKEN = 1;
+    private static final byte OPERATION_REMOVE_TOKEN = 2;
+    private static final byte OPERATION_ADD = 3;
+    private static final byte OPERATION_REMOVE = 4;
+
+    private static final int RECORD_SIZE = 4 + 1 + 8 + 16;
+    /**
+     * Size of a record holding a token without the token.
+     */
+    private static final int TOKEN_RECORD_HEADER_SIZE = 4 + 1 + 8 + 2;
+    private static final int MAX_TOKEN_LENGTH = Short.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The log is compacted once it contains this many records more than twice the number of
+     * live token.
+     */
+    private static final long COMPACTION_THRESHOLD = 100_000;
+    private static final Duration COMPACTION_CHECK_INTERVAL = Duration.ofSeconds(60);
+
+    /**
+     * A change waiting to be written.
+     */
+    private static final class PendingChange {
+        private final byte operation;
+        private final TokenId id;
+        private final long expiresAtMillis;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingChange(byte operation, TokenId id, long expiresAtMillis) {
+            this.operation = operation;
+            this.id = id;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * Queued by {@link #stop()} to end the writer once it wrote all changes queued before.
+     */
+    private static final PendingChange STOP = new PendingChange((byte) 0, null, 0);
+
+    private final Path logFile;
+    private final InMemoryRefreshTokenCache cache;
+    private final Duration defaultTimeToLive;
+    private final Duration compactionCheckInterval;
+
+    private final BlockingQueue<PendingChange> pendingChanges = new LinkedBlockingQueue<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Guards {@link #channel} and {@link #recordCount}. Held by the writer while writing a batch
+     * and by the compaction while switching to the compacted log. A lock rather than a monitor,
+     * as it is held during the fsync and virtual threads blocked on a monitor pin their carrier.
+     */
+    private final ReentrantLock logLock = new ReentrantLock();
+    private FileChannel channel;
+    private long recordCount;
+
+    /**
+     * Guards {@link #running}: changes are only queued while the log is open.
+     */
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private Thread writer;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * @param logFile           - path of the log file. It is created if it does not exist.
+     * @param maxSize           - maximum number of token kept
+     * @param defaultTimeToLive - how long token added without an expiry are kept
+     */
+    public FileRefreshTokenCache(Path logFile, int maxSize, Duration defaultTimeToLive) {
+        this(logFile, maxSize, defaultTimeToLive, COMPACTION_CHECK_INTERVAL);
+    }
+
+    /**
+     * @param logFile                 - path of the log file. It is created if it does not
+     *                                exist.
+     * @param maxSize                 - maximum number of token kept
+     * @param defaultTimeToLive       - how long token added without an expiry are kept
+     * @param compactionCheckInterval - how often to check whether the log needs to be
+     *                                compacted
+     */
+    FileRefreshTokenCache(Path logFile, int maxSize, Duration defaultTimeToLive,
+            Duration compactionCheckInterval) {
+        this.logFile = logFile;
+        this.cache = new InMemoryRefreshTokenCache(maxSize, defaultTimeToLive);
+        this.defaultTimeToLive = defaultTimeToLive;
+        this.compactionCheckInterval = compactionCheckInterval;
+    }
+
+    @Override
+    public void add(TokenId id) {
+        add(id, Instant.now().plus(defaultTimeToLive));
+    }
+
+    @Override
+    public void add(TokenId id, Instant expiresAt) {
+        commit(new PendingChange(OPERATION_ADD, id, expiresAt.toEpochMilli()));
+    }
+
+    @Override
+    public boolean remove(TokenId id) {
+        commit(new PendingChange(OPERATION_REMOVE, id, 0));
+        return true;
+    }
+
+    @Override
+    public boolean exists(TokenId id) {
+        return cache.exists(id);
+    }
+
+    /**
+     * @return number of token in the cache
+     */
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Queues the given change for the writer and waits until it is durable.
+     *
+     * @param change
+     */
+    private void commit(PendingChange change) {
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Refresh token log is not open");
+            }
+            pendingChanges.add(change);
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        try {
+            change.durable.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        Files.createDirectories(logFile.toAbsolutePath().getParent());
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        replay();
+        cache.start();
+
+        running = true;
+        writer = new Thread(this::writeChanges, "refresh-token-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                compactionCheckInterval.toMillis(), compactionCheckInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        // No change is queued after STOP, so the writer writes all of them before it ends
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+            if (writer != null) {
+                pendingChanges.add(STOP);
+            }
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        // Neither thread is interrupted, an interrupt would close the channel it is writing to
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (writer != null) {
+            writer.join();
+        }
+        cache.stop();
+        logLock.lock();
+        try {
+            channel.close();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Restores the cache from the log and truncates the log after the last intact record.
+     *
+     * @throws IOException
+     */
+    private void replay() throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long validPosition = 0;
+        long records = 0;
+        channel.position(0);
+
+        boolean corrupt = false;
+        while (!corrupt && channel.read(buffer) > 0) {
+            buffer.flip();
+            while (true) {
+                int recordStart = buffer.position();
+                int size = recordSize(buffer, recordStart);
+                if (size < 0) {
+                    corrupt = true;
+                    break;
+                }
+                if (size == 0 || buffer.remaining() < size) {
+                    break;
+                }
+
+                int checksum = buffer.getInt();
+                crc.reset();
+                ByteBuffer content = buffer.slice();
+                content.limit(size - 4);
+                crc.update(content);
+                if ((int) crc.getValue() != checksum) {
+                    corrupt = true;
+                    break;
+                }
+
+                byte operation = buffer.get();
+                long expiresAtMillis = buffer.getLong();
+                long high;
+                long low;
+                if (operation == OPERATION_ADD || operation == OPERATION_REMOVE) {
+                    high = buffer.getLong();
+                    low = buffer.getLong();
+                } else {
+                    int length = buffer.getShort() & 0xFFFF;
+                    TokenId id = TokenId.ofToken(new String(buffer.array(),
+                            buffer.arrayOffset() + buffer.position(), length,
+                            StandardCharsets.UTF_8));
+                    buffer.position(buffer.position() + length);
+                    high = id.getHigh();
+                    low = id.getLow();
+                }
+
+                if (operation == OPERATION_ADD || operation == OPERATION_ADD_TOKEN) {
+                    if (expiresAtMillis > now) {
+                        cache.add(high, low, expiresAtMillis);
+                    }
+                } else {
+                    cache.remove(high, low);
+                }
+
+                validPosition += size;
+                records++;
+            }
+            buffer.compact();
+        }
+
+        if (validPosition < channel.size()) {
+            LOG.warning("Refresh token log " + logFile + " is damaged after " + validPosition
+                    + " bytes. Truncating it.");
+            channel.truncate(validPosition);
+        }
+        channel.position(validPosition);
+        recordCount = records;
+
+        LOG.info("Replayed " + records + " records (" + cache.size()
+                + " refresh token) from " + logFile + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Reads the size of the record starting at the given position.
+     *
+     * @param buffer
+     * @param position
+     * @return the size of the record, <code>0</code> if the buffer does not contain enough of
+     *         the record to tell or <code>-1</code> if the record is corrupt
+     */
+    private static int recordSize(ByteBuffer buffer, int position) {
+        int available = buffer.limit() - position;
+        if (available < 5) {
+            return 0;
+        }
+        byte operation = buffer.get(position + 4);
+        if (operation == OPERATION_ADD || operation == OPERATION_REMOVE) {
+            return RECORD_SIZE;
+        }
+        if (operation != OPERATION_ADD_TOKEN && operation != OPERATION_REMOVE_TOKEN) {
+            return -1;
+        }
+        if (available < TOKEN_RECORD_HEADER_SIZE) {
+            return 0;
+        }
+        int length = buffer.getShort(position + TOKEN_RECORD_HEADER_SIZE - 2) & 0xFFFF;
+        return length > MAX_TOKEN_LENGTH ? -1 : TOKEN_RECORD_HEADER_SIZE + length;
+    }
+
+    /**
+     * Loop of the writer thread.
+     */
+    private void writeChanges() {
+        List<PendingChange> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(pendingChanges.take());
+            } catch (InterruptedException e) {
+                // Only stop() ends the writer, after the changes queued before it are written
+                continue;
+            }
+            pendingChanges.drainTo(batch);
+            stopping = batch.remove(STOP);
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            try {
+                logLock.lock();
+                try {
+                    write(batch);
+                    channel.force(false);
+                    // Only durable changes become visible. This happens while holding the lock
+                    // so a compaction never sees a log position whose changes are not applied.
+                    batch.forEach(this::apply);
+                } finally {
+                    logLock.unlock();
+                }
+                batch.forEach(change -> change.durable.complete(null));
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Failed to write to refresh token log " + logFile, e);
+                batch.forEach(change -> change.durable.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private void apply(PendingChange change) {
+        if (change.operation == OPERATION_ADD) {
+            cache.add(change.id, Instant.ofEpochMilli(change.expiresAtMillis));
+        } else {
+            cache.remove(change.id);
+        }
+    }
+
+    /**
+     * Writes the given changes to the current log. Has to be called holding {@link #logLock}.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    private void write(List<PendingChange> batch) throws IOException {
+        writeBuffer.clear();
+        for (PendingChange change : batch) {
+            if (writeBuffer.remaining() < RECORD_SIZE) {
+                flush(channel);
+            }
+            encode(writeBuffer, crc, change.operation, change.expiresAtMillis,
+                    change.id.getHigh(), change.id.getLow());
+            recordCount++;
+        }
+        flush(channel);
+    }
+
+    /**
+     * Appends a record to the given buffer.
+     *
+     * @param buffer
+     * @param checksum        - used to calculate the checksum of the record
+     * @param operation
+     * @param expiresAtMillis
+     * @param high            - first half of the token id
+     * @param low             - second half of the token id
+     */
+    private void encode(ByteBuffer buffer, CRC32 checksum, byte operation, long expiresAtMillis,
+            long high, long low) {
+        int recordStart = buffer.position();
+        buffer.putInt(0);
+        buffer.put(operation);
+        buffer.putLong(expiresAtMillis);
+        buffer.putLong(high);
+        buffer.putLong(low);
+
+        ByteBuffer content = buffer.duplicate();
+        content.position(recordStart + 4);
+        content.limit(buffer.position());
+        checksum.reset();
+        checksum.update(content);
+        buffer.putInt(recordStart, (int) checksum.getValue());
+    }
+
+    private void flush(FileChannel target) throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            target.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Rewrites the log to only contain the live token if it has grown too large.
+     */
+    private void compactIfNeeded() {
+        long liveToken = cache.size();
+        long records;
+        logLock.lock();
+        try {
+            records = recordCount;
+        } finally {
+            logLock.unlock();
+        }
+        if (records - 2 * liveToken < COMPACTION_THRESHOLD) {
+            return;
+        }
+
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "Failed to compact refresh token log " + logFile, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the live token to a new file while the writer keeps appending to the
+     * current log. Afterwards all records appended since the snapshot started are copied over and
+     * the new file replaces the log. Replaying these records on top of the snapshot is safe since
+     * they are newer than (or equal to) the state the snapshot captured.
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        Path compactedFile = logFile.resolveSibling(logFile.getFileName() + ".compact");
+
+        long snapshotPosition;
+        logLock.lock();
+        try {
+            snapshotPosition = channel.position();
+        } finally {
+            logLock.unlock();
+        }
+
+        try (FileChannel compacted = FileChannel.open(compactedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            CRC32 snapshotCrc = new CRC32();
+            long[] snapshotRecords = { 0 };
+            try {
+                cache.forEach((high, low, expiresAtMillis) -> {
+                    try {
+                        if (buffer.remaining() < RECORD_SIZE) {
+                            buffer.flip();
+                            while (buffer.hasRemaining()) {
+                                compacted.write(buffer);
+                            }
+                            buffer.clear();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    encode(buffer, snapshotCrc, OPERATION_ADD, expiresAtMillis, high, low);
+                    snapshotRecords[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                compacted.write(buffer);
+            }
+
+            logLock.lock();
+            try {
+                // Copy everything the writer appended while the snapshot was taken
+                long tailRecords = countRecords(snapshotPosition, channel.position());
+                long position = snapshotPosition;
+                long end = channel.position();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, compacted);
+                }
+                compacted.force(false);
+
+                Files.move(compactedFile, logFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                // Until the rename is durable a crash brings back the old log, which lacks the
+                // changes forced to the new one from now on
+                forceDirectory(logFile.toAbsolutePath().getParent());
+                channel.close();
+                channel = FileChannel.open(logFile, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                recordCount = snapshotRecords[0] + tailRecords;
+            } finally {
+                logLock.unlock();
+            }
+
+            LOG.info("Compacted refresh token log " + logFile + " to " + snapshotRecords[0]
+                    + " records in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    + " ms");
+        } finally {
+            Files.deleteIfExists(compactedFile);
+        }
+    }
+
+    /**
+     * Forces the entries of the given directory to disk. Not every platform can open a
+     * directory (i.e. Windows), there the rename is as durable as the file system makes it.
+     *
+     * @param directory
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Failed to force directory " + directory, e);
+        }
+    }
+
+    /**
+     * Counts the records of the current log between the given positions.
+     *
+     * @param from
+     * @param to
+     * @return
+     * @throws IOException
+     */
+    private long countRecords(long from, long to) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TOKEN_RECORD_HEADER_SIZE);
+        long records = 0;
+        long position = from;
+        while (position < to) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            position += recordSize(header, 0);
+            records++;
+        }
+        return records;
+    }
+}
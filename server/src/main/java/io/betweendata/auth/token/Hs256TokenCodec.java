@@ -0,0 +1,530 @@
+package io.betweendata.auth.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Encoder and decoder for HS256 signed token with the claims issued by this service
+ * (<i>sub</i>, <i>iat</i>, <i>exp</i>, <i>email</i> and <i>jti</i>). It creates exactly the same token as
+ * jjwt but avoids its generic machinery:
+ * <ul>
+ * <li>The encoded header is computed once per key.</li>
+ * <li>Each thread keeps its own initialized {@link Mac} and buffers.</li>
+ * <li>The payload is written and read without a generic JSON mapper.</li>
+ * <li>Expiry is checked against the {@link CoarseClock}.</li>
+ * </ul>
+ * Token this codec does not understand (i.e. other header fields, nested claims or escaped
+ * strings) are not rejected but reported as unsupported, so they can be handed to jjwt.
+ */
+public final class Hs256TokenCodec {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+    /**
+     * Length of the base64url encoded signature (without padding).
+     */
+    private static final int ENCODED_SIGNATURE_LENGTH = 43;
+
+    private static final ObjectMapper HEADER_WRITER = new ObjectMapper();
+    private static final byte[] BASE64URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+                    .getBytes(StandardCharsets.US_ASCII);
+    private static final int[] BASE64URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64URL_VALUES, -1);
+        for (int i = 0; i < BASE64URL.length; i++) {
+            BASE64URL_VALUES[BASE64URL[i]] = i;
+        }
+    }
+
+    private static final byte[] SUB = bytes("sub");
+    private static final byte[] IAT = bytes("iat");
+    private static final byte[] EXP = bytes("exp");
+    private static final byte[] EMAIL = bytes("email");
+    private static final byte[] JTI = bytes("jti");
+    private static final byte[] NBF = bytes("nbf");
+
+    /**
+     * Buffers and parser state. Each thread has its own.
+     */
+    private static final class Workspace {
+        /**
+         * The token in ASCII
+         */
+        private byte[] token = new byte[512];
+        /**
+         * The payload in JSON
+         */
+        private byte[] payload = new byte[384];
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private final byte[] expectedSignature = new byte[SIGNATURE_LENGTH];
+
+        private int position;
+        private String subject;
+        private String email;
+        private String id;
+        private long expiresAt;
+        private long issuedAt;
+        private boolean hasIssuedAt;
+
+        private void ensureCapacity(int tokenLength) {
+            if (token.length < tokenLength) {
+                token = new byte[tokenLength];
+                payload = new byte[tokenLength];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+    private final Key key;
+    /**
+     * Encoded header followed by the separating '.'
+     */
+    private final String header;
+    private final byte[] headerBytes;
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param kid - id of the key stamped into the header or <code>null</code> for none
+     * @param key - HMAC-SHA256 key
+     */
+    public Hs256TokenCodec(String kid, Key key) {
+        this.key = key;
+        // Same field order as jjwt uses
+        Map<String, String> headerFields = new LinkedHashMap<>();
+        if (kid != null) {
+            headerFields.put("kid", kid);
+        }
+        headerFields.put("alg", "HS256");
+        try {
+            header = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(HEADER_WRITER.writeValueAsBytes(headerFields)) + ".";
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+        macs = ThreadLocal.withInitial(this::createMac);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the encoded header including the '.' separating it from the payload
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Checks whether the given token starts with the header of this codec.
+     *
+     * @param token
+     * @return
+     */
+    public boolean matchesHeader(String token) {
+        return token.startsWith(header);
+    }
+
+    /**
+     * Creates a signed token.
+     *
+     * @param subject
+     * @param issuedAt  - seconds since the epoch
+     * @param expiresAt - seconds since the epoch
+     * @param email
+     * @param id        - the <i>jti</i> claim or <code>null</code> for none
+     * @return
+     */
+    public String encode(String subject, long issuedAt, long expiresAt, String email,
+            String id) {
+        Workspace workspace = WORKSPACES.get();
+        int idLength = id == null ? 0 : id.length() + 8;
+        workspace.ensureCapacity(headerBytes.length
+                + 4 * (64 + 6 * (subject.length() + email.length() + idLength)) / 3 + 64);
+
+        // Payload
+        byte[] payload = workspace.payload;
+        int length = 0;
+        length = put(payload, length, "{\"sub\":");
+        length = putString(payload, length, subject);
+        length = put(payload, length, ",\"iat\":");
+        length = putLong(payload, length, issuedAt);
+        length = put(payload, length, ",\"exp\":");
+        length = putLong(payload, length, expiresAt);
+        length = put(payload, length, ",\"email\":");
+        length = putString(payload, length, email);
+        if (id != null) {
+            length = put(payload, length, ",\"jti\":");
+            length = putString(payload, length, id);
+        }
+        payload[length++] = '}';
+
+        // header.payload
+        byte[] token = workspace.token;
+        System.arraycopy(headerBytes, 0, token, 0, headerBytes.length);
+        int tokenLength = encodeBase64(payload, length, token, headerBytes.length);
+
+        // Signature
+        Mac mac = macs.get();
+        mac.update(token, 0, tokenLength);
+        try {
+            mac.doFinal(workspace.signature, 0);
+        } catch (ShortBufferException ex) {
+            throw new IllegalStateException(ex);
+        }
+        token[tokenLength++] = '.';
+        tokenLength = encodeBase64(workspace.signature, SIGNATURE_LENGTH, token, tokenLength);
+
+        return new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Verifies a token starting with the header of this codec (see
+     * {@link #matchesHeader(String)}).
+     *
+     * @param token
+     * @return the claims of the token, an empty Optional if the token is invalid or expired or
+     *         <code>null</code> if the token is not supported by this codec
+     */
+    public Optional<VerifiedToken> decode(String token) {
+        int length = token.length();
+        Workspace workspace = WORKSPACES.get();
+        workspace.ensureCapacity(length);
+
+        // Copy the token to the buffer and find the separator between payload and signature
+        byte[] bytes = workspace.token;
+        int signatureStart = -1;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c >= 128) {
+                return null;
+            }
+            if (c == '.' && i >= headerBytes.length) {
+                if (signatureStart >= 0) {
+                    return null;
+                }
+                signatureStart = i + 1;
+            }
+            bytes[i] = (byte) c;
+        }
+        if (signatureStart < 0) {
+            return null;
+        }
+
+        // Claims. The expiry is checked first, it is cheaper than the signature.
+        int payloadLength = decodeBase64(bytes, headerBytes.length, signatureStart - 1,
+                workspace.payload, 0);
+        if (payloadLength < 0 || !parsePayload(workspace, payloadLength)) {
+            return null;
+        }
+        if (workspace.expiresAt <= CoarseClock.currentTimeSeconds()) {
+            return Optional.empty();
+        }
+
+        // Signature
+        if (length - signatureStart != ENCODED_SIGNATURE_LENGTH || decodeBase64(bytes,
+                signatureStart, length, workspace.signature, 0) != SIGNATURE_LENGTH) {
+            return Optional.empty();
+        }
+        Mac mac = macs.get();
+        mac.update(bytes, 0, signatureStart - 1);
+        try {
+            mac.doFinal(workspace.expectedSignature, 0);
+        } catch (ShortBufferException ex) {
+            throw new IllegalStateException(ex);
+        }
+        if (!MessageDigest.isEqual(workspace.expectedSignature, workspace.signature)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new VerifiedToken(token, workspace.email, workspace.subject,
+                Instant.ofEpochSecond(workspace.expiresAt),
+                workspace.hasIssuedAt ? Instant.ofEpochSecond(workspace.issuedAt) : null,
+                workspace.id));
+    }
+
+    /**
+     * Reads the claims from the payload. Only flat objects without escaped strings are
+     * supported.
+     *
+     * @param workspace
+     * @param length
+     * @return <code>false</code> if the payload is not supported
+     */
+    private static boolean parsePayload(Workspace workspace, int length) {
+        byte[] json = workspace.payload;
+        workspace.subject = null;
+        workspace.email = null;
+        workspace.id = null;
+        workspace.expiresAt = 0;
+        workspace.hasIssuedAt = false;
+        boolean hasExpiresAt = false;
+
+        workspace.position = 0;
+        if (next(workspace, json, length) != '{') {
+            return false;
+        }
+        int c = next(workspace, json, length);
+        while (c == '"') {
+            int nameStart = workspace.position;
+            int nameEnd = skipString(workspace, json, length);
+            if (nameEnd < 0 || next(workspace, json, length) != ':') {
+                return false;
+            }
+
+            int valueStart = workspace.position;
+            c = next(workspace, json, length);
+            if (c == '"') {
+                int valueEnd = skipString(workspace, json, length);
+                if (valueEnd < 0) {
+                    return false;
+                }
+                String value = new String(json, valueStart + 1, valueEnd - valueStart - 1,
+                        StandardCharsets.UTF_8);
+                if (equals(json, nameStart, nameEnd, SUB)) {
+                    workspace.subject = value;
+                } else if (equals(json, nameStart, nameEnd, EMAIL)) {
+                    workspace.email = value;
+                } else if (equals(json, nameStart, nameEnd, JTI)) {
+                    workspace.id = value;
+                }
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                // Integers only, everything else is left to the generic parser
+                workspace.position--;
+                long value = 0;
+                boolean negative = c == '-';
+                if (negative) {
+                    workspace.position++;
+                }
+                int digits = 0;
+                while (workspace.position < length && json[workspace.position] >= '0'
+                        && json[workspace.position] <= '9' && digits < 18) {
+                    value = value * 10 + (json[workspace.position++] - '0');
+                    digits++;
+                }
+                if (digits == 0 || (workspace.position < length
+                        && (json[workspace.position] == '.' || json[workspace.position] == 'e'
+                                || json[workspace.position] == 'E'
+                                || (json[workspace.position] >= '0'
+                                        && json[workspace.position] <= '9')))) {
+                    return false;
+                }
+                value = negative ? -value : value;
+                if (equals(json, nameStart, nameEnd, EXP)) {
+                    workspace.expiresAt = value;
+                    hasExpiresAt = true;
+                } else if (equals(json, nameStart, nameEnd, IAT)) {
+                    workspace.issuedAt = value;
+                    workspace.hasIssuedAt = true;
+                }
+            } else {
+                // Objects, arrays, booleans and null
+                return false;
+            }
+            if (equals(json, nameStart, nameEnd, NBF)) {
+                return false;
+            }
+
+            c = next(workspace, json, length);
+            if (c == ',') {
+                c = next(workspace, json, length);
+            } else if (c != '}') {
+                return false;
+            }
+        }
+        return c == '}' && next(workspace, json, length) == -1 && hasExpiresAt;
+    }
+
+    /**
+     * @return the next character that is not whitespace or <code>-1</code> at the end
+     */
+    private static int next(Workspace workspace, byte[] json, int length) {
+        while (workspace.position < length) {
+            byte c = json[workspace.position++];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips a string after its opening quote.
+     *
+     * @return the position of the closing quote or <code>-1</code> if the string contains
+     *         escapes or is not terminated
+     */
+    private static int skipString(Workspace workspace, byte[] json, int length) {
+        while (workspace.position < length) {
+            byte c = json[workspace.position++];
+            if (c == '"') {
+                return workspace.position - 1;
+            }
+            if (c == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] json, int start, int end, byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (json[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int put(byte[] buffer, int position, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[position++] = (byte) ascii.charAt(i);
+        }
+        return position;
+    }
+
+    private static int putLong(byte[] buffer, int position, long value) {
+        return put(buffer, position, Long.toString(value));
+    }
+
+    /**
+     * Writes a JSON string in UTF-8, escaping the same characters as jjwt does: quotes,
+     * backslashes, control characters and surrogates (i.e. characters outside of the BMP).
+     */
+    private static int putString(byte[] buffer, int position, String value) {
+        buffer[position++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                switch (c) {
+                case '\b':
+                    buffer[position++] = 'b';
+                    break;
+                case '\f':
+                    buffer[position++] = 'f';
+                    break;
+                case '\n':
+                    buffer[position++] = 'n';
+                    break;
+                case '\r':
+                    buffer[position++] = 'r';
+                    break;
+                case '\t':
+                    buffer[position++] = 't';
+                    break;
+                default:
+                    position = put(buffer, position, String.format("u%04X", (int) c));
+                }
+            } else if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                position = put(buffer, position, String.format("\\u%04X", (int) c));
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[position++] = '"';
+        return position;
+    }
+
+    /**
+     * Encodes base64url without padding.
+     *
+     * @return the position after the encoded data
+     */
+    private static int encodeBase64(byte[] source, int length, byte[] target, int position) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8
+                    | (source[i + 2] & 0xFF);
+            target[position++] = BASE64URL[bits >>> 18];
+            target[position++] = BASE64URL[(bits >>> 12) & 0x3F];
+            target[position++] = BASE64URL[(bits >>> 6) & 0x3F];
+            target[position++] = BASE64URL[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (source[i] & 0xFF) << 16;
+            target[position++] = BASE64URL[bits >>> 18];
+            target[position++] = BASE64URL[(bits >>> 12) & 0x3F];
+        } else if (remaining == 2) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8;
+            target[position++] = BASE64URL[bits >>> 18];
+            target[position++] = BASE64URL[(bits >>> 12) & 0x3F];
+            target[position++] = BASE64URL[(bits >>> 6) & 0x3F];
+        }
+        return position;
+    }
+
+    /**
+     * Decodes base64url without padding.
+     *
+     * @return the number of decoded bytes or <code>-1</code> if the input is invalid
+     */
+    private static int decodeBase64(byte[] source, int start, int end, byte[] target,
+            int position) {
+        int initialPosition = position;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < end; i++) {
+            int value = BASE64URL_VALUES[source[i]];
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                if (position == target.length) {
+                    return -1;
+                }
+                target[position++] = (byte) (bits >>> bitCount);
+            }
+        }
+        // A single remaining character can't be valid
+        if ((end - start) % 4 == 1) {
+            return -1;
+        }
+        return position - initialPosition;
+    }
+
+    private static byte[] bytes(String ascii) {
+        return ascii.getBytes(StandardCharsets.US_ASCII);
+    }
+}
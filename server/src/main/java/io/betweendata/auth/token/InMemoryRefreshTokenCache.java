@@ -1,42 +1,154 @@
 package io.betweendata.auth.token;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.dropwizard.lifecycle.Managed;
 
 /**
  * Cache to keep track of valid refresh token. These token can be used to obtain a new access
- * token. Requests with unknown refresh token will be rejected.
+ * token. Requests with unknown refresh token will be rejected.<br>
+ * Only the 128 bit {@link TokenId} of each token and its expiry are kept, in a
+ * {@link TokenIdTable} of primitive arrays. The cache is safe to be used by multiple threads.
+ * Expired token are dropped in the background, a slice of the table every second, so that
+ * each tick does a bounded amount of work and the whole table is swept once per sweep
+ * interval. Once the maximum size is reached one of the token expiring next is dropped for
+ * every new token.
  */
-public class InMemoryRefreshTokenCache implements TokenCache {
-    private static final InMemoryRefreshTokenCache instance = new InMemoryRefreshTokenCache();
+public class InMemoryRefreshTokenCache implements TokenCache, Managed {
 
     /**
-     * Cache for token.<br>
-     * <b>Key:</b> the cached token<br>
-     * <b>Value:</b> empty string
+     * Interval in which all expired token are removed.
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Interval in which a slice of the table is swept.
      */
-    private Map<String, String> cache = new HashMap<>();
+    private static final long SWEEP_TICK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MIN_SLOTS_PER_TICK = 1024;
+
+    private final TokenIdTable table;
+
+    private final Duration defaultTimeToLive;
+
+    private ScheduledExecutorService sweeper;
 
+    /**
+     * @param maxSize           - maximum number of token kept in the cache
+     * @param defaultTimeToLive - how long token added without an expiry are kept
+     */
+    public InMemoryRefreshTokenCache(int maxSize, Duration defaultTimeToLive) {
+        this.table = new TokenIdTable(maxSize);
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    @Override
+    public void add(TokenId id) {
+        add(id, Instant.now().plus(defaultTimeToLive));
+    }
 
-    private InMemoryRefreshTokenCache() {
+    @Override
+    public void add(TokenId id, Instant expiresAt) {
+        add(id.getHigh(), id.getLow(), expiresAt.toEpochMilli());
     }
 
-    public static InMemoryRefreshTokenCache getInstance() {
-        return instance;
+    /**
+     * @param high
+     * @param low
+     * @param expiresAtMillis
+     * @see #add(TokenId, Instant)
+     */
+    void add(long high, long low, long expiresAtMillis) {
+        table.put(high, low, expiresAtMillis);
     }
 
     @Override
-    public void add(String token) {
-        cache.put(token, "");
+    public boolean remove(TokenId id) {
+        remove(id.getHigh(), id.getLow());
+        return true;
+    }
+
+    /**
+     * @param high
+     * @param low
+     * @see #remove(TokenId)
+     */
+    void remove(long high, long low) {
+        table.remove(high, low, 0);
+    }
+
+    /**
+     * @param high
+     * @param low
+     * @return the expiry of the given token in ms or <code>0</code> if it is unknown
+     */
+    long expiresAt(long high, long low) {
+        return table.get(high, low);
+    }
+
+    @Override
+    public boolean exists(TokenId id) {
+        return table.get(id.getHigh(), id.getLow()) > System.currentTimeMillis();
+    }
+
+    /**
+     * @return number of token in the cache (including expired token that have not been removed
+     *         yet)
+     */
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Hands every token that has not expired yet together with its expiry to the given
+     * consumer. Token added or removed while iterating may or may not be seen.
+     *
+     * @param consumer
+     */
+    public void forEach(TokenIdTable.EntryConsumer consumer) {
+        long now = System.currentTimeMillis();
+        table.forEach((high, low, expiresAtMillis) -> {
+            if (expiresAtMillis > now) {
+                consumer.accept(high, low, expiresAtMillis);
+            }
+        });
+    }
+
+    /**
+     * Removes all token that expired until now.
+     */
+    public void removeExpired() {
+        table.removeExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes the token that expired until now from the next slice of the table. The slice is
+     * sized so that the whole table is swept once per sweep interval.
+     */
+    void sweepTick() {
+        int slots = (int) (table.capacity() * SWEEP_TICK_MILLIS / SWEEP_INTERVAL_MILLIS);
+        table.removeExpired(System.currentTimeMillis(), Math.max(MIN_SLOTS_PER_TICK, slots));
     }
 
     @Override
-    public void remove(String token) {
-        cache.remove(token);
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(this::sweepTick, SWEEP_TICK_MILLIS, SWEEP_TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public boolean exists(String token) {
-        return cache.containsKey(token);
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
     }
 }
@@ -0,0 +1,37 @@
+package io.betweendata.auth.token;
+
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Representation of the data that needs to be provided in the request to
+ * introspect token.
+ */
+public class IntrospectionRequestData {
+
+    /**
+     * Maximum number of token per request.
+     */
+    public static final int MAX_TOKENS = 100;
+
+    @NotNull
+    @Size(max = MAX_TOKENS)
+    @JsonProperty("tokens")
+    private List<String> tokens;
+
+    public IntrospectionRequestData() {
+	// Jackson constructor
+    }
+
+    public List<String> getTokens() {
+	return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+	this.tokens = tokens;
+    }
+}
@@ -0,0 +1,26 @@
+package io.betweendata.auth.token;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response to an introspection request. Contains the state of each token in the order of the
+ * request.
+ */
+public class IntrospectionResponse {
+    private List<TokenIntrospection> tokens;
+
+    public IntrospectionResponse() {
+	// Empty constructor for Jackson
+    }
+
+    public IntrospectionResponse(List<TokenIntrospection> tokens) {
+	this.tokens = tokens;
+    }
+
+    @JsonProperty
+    public List<TokenIntrospection> getTokens() {
+	return tokens;
+    }
+}
@@ -0,0 +1,41 @@
+package io.betweendata.auth.token;
+
+import java.time.Instant;
+
+/**
+ * A freshly issued token together with the expiry that was written into its claims. This allows
+ * callers to work with the expiry without parsing the token they just created.
+ */
+public final class IssuedToken {
+    private final String token;
+    private final Instant expiresAt;
+    private final String id;
+
+    public IssuedToken(String token, Instant expiresAt) {
+        this(token, expiresAt, null);
+    }
+
+    public IssuedToken(String token, Instant expiresAt, String id) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+        this.id = id;
+    }
+
+    /**
+     * @return the compact (signed) token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return the <i>jti</i> claim or <code>null</code> if the token was issued without it
+     */
+    public String getId() {
+        return id;
+    }
+}
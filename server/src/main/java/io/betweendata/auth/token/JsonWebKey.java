@@ -0,0 +1,159 @@
+package io.betweendata.auth.token;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Public key in the JSON Web Key format (RFC 7517). Only RSA keys and EC keys on P-256 are
+ * supported.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JsonWebKey {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private String kty;
+    private String use = "sig";
+    private String alg;
+    private String kid;
+    // RSA
+    private String n;
+    private String e;
+    // EC
+    private String crv;
+    private String x;
+    private String y;
+
+    public JsonWebKey() {
+	// Empty constructor for Jackson
+    }
+
+    /**
+     * @param key       - RSA or EC (P-256) public key
+     * @param algorithm - the JWS algorithm the key is used with
+     * @return
+     */
+    public static JsonWebKey of(PublicKey key, String algorithm) {
+	return of(key, algorithm, null);
+    }
+
+    /**
+     * @param key       - RSA or EC (P-256) public key
+     * @param algorithm - the JWS algorithm the key is used with
+     * @param kid       - id of the key or <code>null</code> to use its thumbprint
+     * @return
+     */
+    public static JsonWebKey of(PublicKey key, String algorithm, String kid) {
+	JsonWebKey jwk = new JsonWebKey();
+	jwk.alg = algorithm;
+	if (key instanceof RSAPublicKey) {
+	    RSAPublicKey rsaKey = (RSAPublicKey) key;
+	    jwk.kty = "RSA";
+	    jwk.n = encode(rsaKey.getModulus(), 0);
+	    jwk.e = encode(rsaKey.getPublicExponent(), 0);
+	} else if (key instanceof ECPublicKey) {
+	    ECPublicKey ecKey = (ECPublicKey) key;
+	    jwk.kty = "EC";
+	    jwk.crv = "P-256";
+	    jwk.x = encode(ecKey.getW().getAffineX(), 32);
+	    jwk.y = encode(ecKey.getW().getAffineY(), 32);
+	} else {
+	    throw new IllegalArgumentException("Unsupported key type: " + key.getAlgorithm());
+	}
+	jwk.kid = kid == null ? jwk.thumbprint() : kid;
+	return jwk;
+    }
+
+    /**
+     * Thumbprint of this key (RFC 7638). It identifies the key and is used as its id.
+     *
+     * @return
+     */
+    public String thumbprint() {
+	// The required members in lexicographic order without whitespace
+	String json = "RSA".equals(kty)
+		? "{\"e\":\"" + e + "\",\"kty\":\"RSA\",\"n\":\"" + n + "\"}"
+		: "{\"crv\":\"" + crv + "\",\"kty\":\"EC\",\"x\":\"" + x + "\",\"y\":\"" + y + "\"}";
+	try {
+	    return ENCODER.encodeToString(MessageDigest.getInstance("SHA-256")
+		    .digest(json.getBytes(StandardCharsets.UTF_8)));
+	} catch (NoSuchAlgorithmException ex) {
+	    throw new IllegalStateException(ex);
+	}
+    }
+
+    /**
+     * Encodes the given number as unsigned big-endian bytes.
+     *
+     * @param value
+     * @param length - the fixed length of the encoding or <code>0</code> for the minimal length
+     * @return
+     */
+    private static String encode(BigInteger value, int length) {
+	byte[] bytes = value.toByteArray();
+	// Strip the sign byte
+	if (bytes.length > 1 && bytes[0] == 0) {
+	    bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+	}
+	if (length > bytes.length) {
+	    byte[] padded = new byte[length];
+	    System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+	    bytes = padded;
+	}
+	return ENCODER.encodeToString(bytes);
+    }
+
+    @JsonProperty
+    public String getKty() {
+	return kty;
+    }
+
+    @JsonProperty
+    public String getUse() {
+	return use;
+    }
+
+    @JsonProperty
+    public String getAlg() {
+	return alg;
+    }
+
+    @JsonProperty
+    public String getKid() {
+	return kid;
+    }
+
+    @JsonProperty
+    public String getN() {
+	return n;
+    }
+
+    @JsonProperty
+    public String getE() {
+	return e;
+    }
+
+    @JsonProperty
+    public String getCrv() {
+	return crv;
+    }
+
+    @JsonProperty
+    public String getX() {
+	return x;
+    }
+
+    @JsonProperty
+    public String getY() {
+	return y;
+    }
+}
@@ -0,0 +1,25 @@
+package io.betweendata.auth.token;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Set of public keys in the JSON Web Key Set format (RFC 7517).
+ */
+public class JsonWebKeySet {
+    private List<JsonWebKey> keys;
+
+    public JsonWebKeySet() {
+	// Empty constructor for Jackson
+    }
+
+    public JsonWebKeySet(List<JsonWebKey> keys) {
+	this.keys = keys;
+    }
+
+    @JsonProperty
+    public List<JsonWebKey> getKeys() {
+	return keys;
+    }
+}
@@ -0,0 +1,38 @@
+package io.betweendata.auth.token;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.codahale.metrics.annotation.Timed;
+
+import io.betweendata.auth.service.ServiceLocator;
+
+/**
+ * End-point publishing the public keys token are signed with. Other services use them to verify
+ * token without calling this service. If token are signed with a secret (HS256) the set is
+ * empty.
+ */
+@Path("/.well-known/jwks.json")
+public class JsonWebKeySetResource {
+
+    /**
+     * How long clients may cache the keys.
+     */
+    private static final int MAX_AGE_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Timed
+    public Response keys() {
+	CacheControl cacheControl = new CacheControl();
+	cacheControl.setMaxAge(MAX_AGE_SECONDS);
+	return Response.ok(ServiceLocator.get().getTokenService().getPublicKeys())
+		.cacheControl(cacheControl).build();
+    }
+}
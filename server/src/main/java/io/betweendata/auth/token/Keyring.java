@@ -0,0 +1,321 @@
+package io.betweendata.auth.token;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Immutable set of keys token are signed and verified with.<br>
+ * The active key signs new token. Retired keys are only used to verify token that have been
+ * signed with them before. Each key has an id (<i>kid</i>) that is stamped into the header of
+ * the token it signs, so the key to verify a token with is found with a single lookup.<br>
+ * A keyring file has the following format:
+ *
+ * <pre>
+ * active: 2019-06
+ * keys:
+ *   # HS256
+ *   - kid: 2019-06
+ *     secret: ...
+ *   # RS256/ES256 (retired keys only need the public key)
+ *   - kid: 2019-01
+ *     privateKeyFile: 2019-01.key
+ *     publicKeyFile: 2019-01.pub
+ * </pre>
+ *
+ * Relative key file paths are resolved against the directory of the keyring file. EC keys
+ * have to be on the curve P-256, the only one ES256 and {@link JsonWebKey} support.
+ */
+public final class Keyring {
+    private static final ObjectMapper YAML_READER = new ObjectMapper(new YAMLFactory());
+    private static final ECParameterSpec P256 = p256();
+
+    private final String activeKid;
+    private final Key signingKey;
+    /**
+     * <b>Key:</b> kid<br>
+     * <b>Value:</b> key to verify token with
+     */
+    private final Map<String, Key> verificationKeys;
+    private final JsonWebKeySet publicKeys;
+    /**
+     * <b>Key:</b> encoded header (see {@link Hs256TokenCodec#getHeader()})<br>
+     * <b>Value:</b> codec of the key. Empty unless the keys are used with HS256.
+     */
+    private final Map<String, Hs256TokenCodec> codecs;
+    private final Hs256TokenCodec activeCodec;
+
+    private Keyring(String activeKid, Key signingKey, Map<String, Key> verificationKeys,
+            List<JsonWebKey> publicKeys, boolean hs256) {
+        this.activeKid = activeKid;
+        this.signingKey = signingKey;
+        this.verificationKeys = verificationKeys;
+        this.publicKeys = new JsonWebKeySet(Collections.unmodifiableList(publicKeys));
+
+        codecs = new HashMap<>();
+        Hs256TokenCodec active = null;
+        if (hs256) {
+            for (Map.Entry<String, Key> entry : verificationKeys.entrySet()) {
+                Hs256TokenCodec codec = new Hs256TokenCodec(entry.getKey(), entry.getValue());
+                codecs.put(codec.getHeader(), codec);
+                if (entry.getKey().equals(activeKid)) {
+                    active = codec;
+                }
+            }
+        }
+        activeCodec = active;
+    }
+
+    /**
+     * Creates a keyring holding a single HMAC key used with HS256.
+     *
+     * @param kid
+     * @param secret
+     * @return
+     */
+    public static Keyring ofSecret(String kid, byte[] secret) {
+        Key key = Keys.hmacShaKeyFor(secret);
+        return new Keyring(kid, key, Collections.singletonMap(kid, key), Collections.emptyList(),
+                true);
+    }
+
+    /**
+     * Creates a keyring holding a single key pair. The thumbprint of the public key is used as
+     * its id.
+     *
+     * @param privateKey
+     * @param publicKey
+     * @param algorithm
+     * @return
+     * @throws IllegalArgumentException if an EC key is not on P-256
+     */
+    public static Keyring ofKeyPair(PrivateKey privateKey, PublicKey publicKey,
+            SignatureAlgorithm algorithm) {
+        try {
+            requireP256(privateKey);
+            requireP256(publicKey);
+        } catch (InvalidKeyException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+        JsonWebKey jwk = JsonWebKey.of(publicKey, algorithm.getValue());
+        return new Keyring(jwk.getKid(), privateKey,
+                Collections.singletonMap(jwk.getKid(), publicKey),
+                Collections.singletonList(jwk), false);
+    }
+
+    /**
+     * Reads a keyring file.
+     *
+     * @param file
+     * @param algorithm - algorithm the keys are used with
+     * @return
+     * @throws IOException if the file can't be read or is invalid
+     */
+    public static Keyring load(Path file, SignatureAlgorithm algorithm) throws IOException {
+        JsonNode root = YAML_READER.readTree(file.toFile());
+        if (root == null || !root.path("keys").isArray()) {
+            throw new IOException("Keyring " + file + " contains no keys");
+        }
+        String activeKid = root.path("active").asText(null);
+        Path directory = file.toAbsolutePath().getParent();
+
+        Key signingKey = null;
+        Map<String, Key> verificationKeys = new HashMap<>();
+        List<JsonWebKey> publicKeys = new ArrayList<>();
+        for (JsonNode entry : root.get("keys")) {
+            String kid = entry.path("kid").asText(null);
+            if (kid == null || verificationKeys.containsKey(kid)) {
+                throw new IOException(
+                        "Keyring " + file + " contains a key without or with a duplicate kid");
+            }
+            boolean active = kid.equals(activeKid);
+
+            try {
+                if (algorithm.isHmac()) {
+                    Key key = Keys.hmacShaKeyFor(
+                            entry.path("secret").asText("").getBytes(StandardCharsets.UTF_8));
+                    verificationKeys.put(kid, key);
+                    if (active) {
+                        signingKey = key;
+                    }
+                } else {
+                    KeyFactory keyFactory =
+                            KeyFactory.getInstance(algorithm.isRsa() ? "RSA" : "EC");
+                    PublicKey publicKey = readPublicKey(keyFactory,
+                            directory.resolve(entry.path("publicKeyFile").asText("")));
+                    verificationKeys.put(kid, publicKey);
+                    publicKeys.add(JsonWebKey.of(publicKey, algorithm.getValue(), kid));
+                    if (active) {
+                        signingKey = readPrivateKey(keyFactory,
+                                directory.resolve(entry.path("privateKeyFile").asText("")));
+                    }
+                }
+            } catch (GeneralSecurityException | RuntimeException ex) {
+                throw new IOException("Invalid key " + kid + " in keyring " + file, ex);
+            }
+        }
+
+        if (signingKey == null) {
+            throw new IOException("Keyring " + file + " contains no active key");
+        }
+        return new Keyring(activeKid, signingKey, verificationKeys, publicKeys,
+                algorithm == SignatureAlgorithm.HS256);
+    }
+
+    /**
+     * Reads a private key from a PEM file (PKCS#8).
+     *
+     * @param keyFactory
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws GeneralSecurityException also if an EC key is not on P-256
+     */
+    public static PrivateKey readPrivateKey(KeyFactory keyFactory, Path file)
+            throws IOException, GeneralSecurityException {
+        PrivateKey key = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(readPem(file)));
+        requireP256(key);
+        return key;
+    }
+
+    /**
+     * Reads a public key from a PEM file (X.509).
+     *
+     * @param keyFactory
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws GeneralSecurityException also if an EC key is not on P-256
+     */
+    public static PublicKey readPublicKey(KeyFactory keyFactory, Path file)
+            throws IOException, GeneralSecurityException {
+        PublicKey key = keyFactory.generatePublic(new X509EncodedKeySpec(readPem(file)));
+        requireP256(key);
+        return key;
+    }
+
+    /**
+     * Rejects EC keys on other curves than P-256. Their coordinates don't fit into the 32 bytes
+     * {@link JsonWebKey} publishes them with. Other keys are accepted.
+     *
+     * @param key
+     * @throws InvalidKeyException
+     */
+    static void requireP256(Key key) throws InvalidKeyException {
+        if (key instanceof ECKey) {
+            ECParameterSpec params = ((ECKey) key).getParams();
+            if (!P256.getCurve().equals(params.getCurve())
+                    || !P256.getGenerator().equals(params.getGenerator())
+                    || !P256.getOrder().equals(params.getOrder())
+                    || P256.getCofactor() != params.getCofactor()) {
+                throw new InvalidKeyException("Only EC keys on the curve P-256 are supported");
+            }
+        }
+    }
+
+    private static ECParameterSpec p256() {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("The JDK does not support P-256", ex);
+        }
+    }
+
+    /**
+     * Reads the content of a PEM file.
+     *
+     * @param file
+     * @return the decoded content without the BEGIN and END lines
+     * @throws IOException
+     */
+    private static byte[] readPem(Path file) throws IOException {
+        StringBuilder base64 = new StringBuilder();
+        for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+            if (!line.startsWith("-----")) {
+                base64.append(line.trim());
+            }
+        }
+        return Base64.getDecoder().decode(base64.toString());
+    }
+
+    /**
+     * @return id of the key new token are signed with
+     */
+    public String getActiveKid() {
+        return activeKid;
+    }
+
+    /**
+     * @return key new token are signed with
+     */
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * @param kid
+     * @return key to verify token signed by the key with the given id or <code>null</code> if
+     *         there is no such key
+     */
+    public Key getVerificationKey(String kid) {
+        return verificationKeys.get(kid);
+    }
+
+    /**
+     * @return public keys of all key pairs. Empty for HMAC keys.
+     */
+    public JsonWebKeySet getPublicKeys() {
+        return publicKeys;
+    }
+
+    /**
+     * @return codec of the active key or <code>null</code> if the keys are not used with HS256
+     */
+    public Hs256TokenCodec getActiveCodec() {
+        return activeCodec;
+    }
+
+    /**
+     * Finds the codec able to verify the given token by its header.
+     *
+     * @param token
+     * @return the codec or <code>null</code> if the header is not one written by a codec of this
+     *         keyring
+     */
+    public Hs256TokenCodec getCodec(String token) {
+        // Most token have been signed with the active key
+        if (activeCodec == null || activeCodec.matchesHeader(token)) {
+            return activeCodec;
+        }
+        int headerEnd = token.indexOf('.');
+        return headerEnd < 0 ? null : codecs.get(token.substring(0, headerEnd + 1));
+    }
+}
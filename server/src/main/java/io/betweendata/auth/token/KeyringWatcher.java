@@ -0,0 +1,89 @@
+package io.betweendata.auth.token;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.betweendata.auth.service.TokenService;
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Reloads the keyring of the {@link TokenService} whenever its file changes. This allows to
+ * rotate keys without a restart: add the new key, make it the active one and keep the old key
+ * until all token signed with it have expired.<br>
+ * The keyring is reloaded on any change within the directory of the file. Files replaced by a
+ * rename (as done by most editors) are picked up this way, and so are mounted Kubernetes config
+ * maps and secrets: they are updated by swapping the <i>..data</i> symlink the keyring file
+ * points through, which causes no event for the keyring file itself. Changed key files next to
+ * the keyring are picked up as well.
+ */
+public class KeyringWatcher implements Managed {
+    private static final Logger LOG = Logger.getLogger(KeyringWatcher.class.getName());
+
+    /**
+     * Time to wait for further changes before reloading. Writing a file often causes several
+     * events.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final TokenService tokenService;
+    private final Path file;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param tokenService
+     * @param file         - the keyring file
+     */
+    public KeyringWatcher(TokenService tokenService, Path file) {
+        this.tokenService = tokenService;
+        this.file = file.toAbsolutePath();
+    }
+
+    @Override
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::watch, "keyring-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                key.reset();
+
+                // Collect further events caused by the same change
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                tokenService.reloadKeyring();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Stopped
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Keyring watcher failed, keys are no longer reloaded", e);
+        }
+    }
+}
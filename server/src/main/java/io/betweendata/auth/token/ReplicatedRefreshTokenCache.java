@@ -0,0 +1,554 @@
+package io.betweendata.auth.token;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Refresh token cache shared by several instances of the service running behind a load
+ * balancer. A refresh token issued by one instance can be used at any other one.<br>
+ * Every instance keeps all token in an {@link InMemoryRefreshTokenCache} and answers lookups
+ * locally. Changes are applied locally first and then pushed to every peer over a plain TCP
+ * connection, so a token may be unknown to the other instances for a moment after it has
+ * been issued.
+ * <ul>
+ * <li><b>Batching:</b> every peer has a queue of changes and a sender thread that takes all
+ * changes that queued up while the previous batch was sent and sends them at once.</li>
+ * <li><b>Removals win:</b> a removed token leaves a tombstone until it would have expired, so
+ * a removal is never undone by an addition arriving late or during a catch-up. Tombstones are
+ * kept in a table of their own that never drops one to make room. Once it is full, removals
+ * are refused until tombstones expire.</li>
+ * <li><b>Catch-up:</b> whenever a connection to a peer is (re)established, or the queue of a
+ * peer overflowed, all live token and tombstones are sent to the peer before any further
+ * changes. A restarted instance is thereby caught up by all of its peers.</li>
+ * </ul>
+ * Every instance connects to every peer, changes are not forwarded. The replication port is
+ * not authenticated and must only be reachable by the peers, i.e. by binding it to an
+ * interface of a private network.<br>
+ * A connection starts with the magic number {@value #MAGIC} followed by batches with the
+ * following format:
+ *
+ * <pre>
+ * change count (int) | sent at in &micro;s since the epoch (long) | changes
+ * </pre>
+ *
+ * Each change is:
+ *
+ * <pre>
+ * operation (byte) | token id (2 longs) | expires at in ms (long)
+ * </pre>
+ *
+ * Idle connections send empty batches, so a restarted peer is noticed and caught up even if
+ * there are no changes.<br>
+ * The following metrics are exported:
+ * <ul>
+ * <li><i>lag</i>: time from a change being made at a peer until it is applied here, measured
+ * for the oldest change of each batch. Relies on the clocks of the instances being in
+ * sync.</li>
+ * <li><i>sent</i>: changes sent to peers</li>
+ * <li><i>received</i>: changes received from peers (including catch-ups)</li>
+ * <li><i>resyncs</i>: catch-ups sent to peers</li>
+ * <li><i>connected-peers</i>: peers this instance is currently sending to</li>
+ * <li><i>rejected</i>: removals refused because the table of tombstones was full</li>
+ * <li><i>lost-tombstones</i>: removals received from peers that were applied without keeping
+ * a tombstone because the table was full. A catch-up may bring these token back.</li>
+ * </ul>
+ */
+public class ReplicatedRefreshTokenCache implements TokenCache, Managed {
+    private static final Logger LOG =
+            Logger.getLogger(ReplicatedRefreshTokenCache.class.getName());
+
+    private static final int MAGIC = 0x52544331;
+
+    private static final byte OPERATION_ADD = 1;
+    private static final byte OPERATION_REMOVE = 2;
+
+    /**
+     * Changes queued per peer before the peer has to be caught up instead.
+     */
+    private static final int QUEUE_SIZE = 100_000;
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    /**
+     * Idle connections send an empty batch in this interval. A connection that stays silent
+     * for {@link #READ_TIMEOUT_MILLIS} is closed.
+     */
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 100;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 5000;
+
+    /**
+     * Interval in which expired tombstones are removed.
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * A change to be sent to the peers.
+     */
+    private static final class Change {
+        private final byte operation;
+        private final long high;
+        private final long low;
+        private final long expiresAtMillis;
+        private final long madeAtMicros;
+
+        private Change(byte operation, long high, long low, long expiresAtMillis) {
+            this.operation = operation;
+            this.high = high;
+            this.low = low;
+            this.expiresAtMillis = expiresAtMillis;
+            this.madeAtMicros = nowMicros();
+        }
+    }
+
+    /**
+     * Connection to a single peer, sending the changes made at this instance.
+     */
+    private final class PeerLink {
+        private final String host;
+        private final int port;
+        private final BlockingQueue<Change> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        /**
+         * Changes are only queued while connected. Anything made before is part of the
+         * catch-up that follows connecting.
+         */
+        private volatile boolean connected;
+        private volatile boolean resync;
+        private Thread sender;
+
+        private PeerLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        private void enqueue(Change change) {
+            if (connected && !queue.offer(change)) {
+                resync = true;
+            }
+        }
+
+        /**
+         * Loop of the sender thread.
+         */
+        private void send() {
+            long delay = MIN_RECONNECT_DELAY_MILLIS;
+            while (running) {
+                try (Socket socket = new Socket()) {
+                    // Resolved on every attempt, the peer may not be known yet
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+                    out.writeInt(MAGIC);
+                    connected = true;
+                    resync = true;
+                    delay = MIN_RECONNECT_DELAY_MILLIS;
+                    LOG.info("Replicating refresh token to " + this);
+                    sendChanges(out);
+                } catch (IOException e) {
+                    if (connected) {
+                        LOG.warning("Lost connection to " + this + ": " + e);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    connected = false;
+                    queue.clear();
+                }
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+
+        private void sendChanges(DataOutputStream out) throws IOException, InterruptedException {
+            List<Change> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (running) {
+                if (resync) {
+                    resync = false;
+                    queue.clear();
+                    sendSnapshot(out);
+                    resyncs.inc();
+                }
+
+                Change first = queue.poll(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // An empty batch, so a peer that went away is noticed while idle
+                    out.writeInt(0);
+                    out.writeLong(0);
+                    out.flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                if (resync) {
+                    // The batch is part of the catch-up
+                    batch.clear();
+                    continue;
+                }
+
+                out.writeInt(batch.size());
+                out.writeLong(batch.get(0).madeAtMicros);
+                for (Change change : batch) {
+                    writeChange(out, change.operation, change.high, change.low,
+                            change.expiresAtMillis);
+                }
+                out.flush();
+                sent.mark(batch.size());
+                batch.clear();
+            }
+        }
+
+        /**
+         * Sends all live token and tombstones. They are copied first, so a slow peer does not
+         * hold up changes to the tables.
+         */
+        private void sendSnapshot(DataOutputStream out) throws IOException {
+            Snapshot snapshot = new Snapshot();
+            cache.forEach((high, low, expiresAtMillis) -> snapshot.add(OPERATION_ADD, high, low,
+                    expiresAtMillis));
+            long now = System.currentTimeMillis();
+            removed.forEach((high, low, expiresAtMillis) -> {
+                if (expiresAtMillis > now) {
+                    snapshot.add(OPERATION_REMOVE, high, low, expiresAtMillis);
+                }
+            });
+
+            for (int start = 0; start < snapshot.size; start += MAX_BATCH_SIZE) {
+                int end = Math.min(snapshot.size, start + MAX_BATCH_SIZE);
+                out.writeInt(end - start);
+                // Catch-ups are not taken into account for the lag
+                out.writeLong(0);
+                for (int i = start; i < end; i++) {
+                    int offset = i * Snapshot.ENTRY;
+                    writeChange(out, (byte) snapshot.entries[offset], snapshot.entries[offset + 1],
+                            snapshot.entries[offset + 2], snapshot.entries[offset + 3]);
+                }
+            }
+            out.flush();
+            sent.mark(snapshot.size);
+        }
+    }
+
+    /**
+     * Growable copy of the changes a catch-up consists of.
+     */
+    private static final class Snapshot {
+        private static final int ENTRY = 4;
+
+        private long[] entries = new long[1024 * ENTRY];
+        private int size;
+
+        private void add(byte operation, long high, long low, long expiresAtMillis) {
+            if ((size + 1) * ENTRY > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            int offset = size * ENTRY;
+            entries[offset] = operation;
+            entries[offset + 1] = high;
+            entries[offset + 2] = low;
+            entries[offset + 3] = expiresAtMillis;
+            size++;
+        }
+    }
+
+    private final InMemoryRefreshTokenCache cache;
+    /**
+     * Removed token and the point in time they would have expired at.
+     */
+    private final TokenIdTable removed;
+    private final Duration defaultTimeToLive;
+    private final String bindAddress;
+    private final int port;
+    private final List<PeerLink> peers = new ArrayList<>();
+
+    private final Timer lag;
+    private final Meter sent;
+    private final Meter received;
+    private final Counter resyncs;
+    private final Meter rejected;
+    private final Meter lostTombstones;
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * @param maxSize           - maximum number of token kept
+     * @param maxTombstones     - maximum number of removed token remembered
+     * @param defaultTimeToLive - how long token added without an expiry are kept
+     * @param bindAddress       - address of the interface the peers connect to
+     * @param port              - port the peers connect to
+     * @param peers             - replication ports of the peers as <i>host:port</i>
+     * @param metrics
+     */
+    public ReplicatedRefreshTokenCache(int maxSize, int maxTombstones,
+            Duration defaultTimeToLive, String bindAddress, int port, List<String> peers,
+            MetricRegistry metrics) {
+        this.cache = new InMemoryRefreshTokenCache(maxSize, defaultTimeToLive);
+        this.removed = new TokenIdTable(maxTombstones);
+        this.defaultTimeToLive = defaultTimeToLive;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        for (String peer : peers) {
+            int separator = peer.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Peer has to be given as host:port: " + peer);
+            }
+            this.peers.add(new PeerLink(peer.substring(0, separator),
+                    Integer.parseInt(peer.substring(separator + 1))));
+        }
+
+        lag = metrics.timer(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "lag"));
+        sent = metrics.meter(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "sent"));
+        received =
+                metrics.meter(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "received"));
+        resyncs =
+                metrics.counter(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "resyncs"));
+        rejected =
+                metrics.meter(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "rejected"));
+        lostTombstones = metrics.meter(
+                MetricRegistry.name(ReplicatedRefreshTokenCache.class, "lost-tombstones"));
+        metrics.register(MetricRegistry.name(ReplicatedRefreshTokenCache.class, "connected-peers"),
+                (Gauge<Long>) () -> this.peers.stream().filter(link -> link.connected).count());
+    }
+
+    @Override
+    public void add(TokenId id) {
+        add(id, Instant.now().plus(defaultTimeToLive));
+    }
+
+    @Override
+    public void add(TokenId id, Instant expiresAt) {
+        long expiresAtMillis = expiresAt.toEpochMilli();
+        applyAdd(id.getHigh(), id.getLow(), expiresAtMillis);
+        publish(new Change(OPERATION_ADD, id.getHigh(), id.getLow(), expiresAtMillis));
+    }
+
+    /**
+     * Removes the given token here and at the peers.
+     *
+     * @return <code>false</code> if the table of tombstones is full. The token is kept then,
+     *         as a removal without a tombstone could be undone by a catch-up.
+     */
+    @Override
+    public boolean remove(TokenId id) {
+        long expiresAtMillis = cache.expiresAt(id.getHigh(), id.getLow());
+        if (expiresAtMillis == 0) {
+            expiresAtMillis = System.currentTimeMillis() + defaultTimeToLive.toMillis();
+        }
+        if (!applyRemove(id.getHigh(), id.getLow(), expiresAtMillis)) {
+            rejected.mark();
+            return false;
+        }
+        publish(new Change(OPERATION_REMOVE, id.getHigh(), id.getLow(), expiresAtMillis));
+        return true;
+    }
+
+    @Override
+    public boolean exists(TokenId id) {
+        return cache.exists(id);
+    }
+
+    /**
+     * @return number of token in the cache (including expired token that have not been removed
+     *         yet)
+     */
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    private void publish(Change change) {
+        for (PeerLink peer : peers) {
+            peer.enqueue(change);
+        }
+    }
+
+    private void applyAdd(long high, long low, long expiresAtMillis) {
+        if (removed.get(high, low) != 0) {
+            return;
+        }
+        cache.add(high, low, expiresAtMillis);
+        // A removal applied concurrently may have missed the token
+        if (removed.get(high, low) != 0) {
+            cache.remove(high, low);
+        }
+    }
+
+    /**
+     * @return whether the tombstone has been stored. The token is only removed if so.
+     */
+    private boolean applyRemove(long high, long low, long expiresAtMillis) {
+        if (!removed.tryPut(high, low, expiresAtMillis, System.currentTimeMillis())) {
+            return false;
+        }
+        cache.remove(high, low);
+        return true;
+    }
+
+    private static void writeChange(DataOutputStream out, byte operation, long high, long low,
+            long expiresAtMillis) throws IOException {
+        out.writeByte(operation);
+        out.writeLong(high);
+        out.writeLong(low);
+        out.writeLong(expiresAtMillis);
+    }
+
+    private static long nowMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    @Override
+    public void start() throws IOException {
+        cache.start();
+        serverSocket = new ServerSocket(port, 0, InetAddress.getByName(bindAddress));
+        running = true;
+
+        acceptor = new Thread(this::acceptConnections, "refresh-token-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        for (PeerLink peer : peers) {
+            peer.sender = new Thread(peer::send, "refresh-token-replication-" + peer);
+            peer.sender.setDaemon(true);
+            peer.sender.start();
+        }
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-tombstone-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(() -> removed.removeExpired(System.currentTimeMillis()),
+                SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        running = false;
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+            acceptor.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        for (PeerLink peer : peers) {
+            if (peer.sender != null) {
+                peer.sender.interrupt();
+                peer.sender.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        }
+        cache.stop();
+    }
+
+    /**
+     * Loop of the acceptor thread. Every peer gets a thread of its own applying its changes.
+     */
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread receiver = new Thread(() -> receiveChanges(socket),
+                        "refresh-token-replication-" + socket.getRemoteSocketAddress());
+                receiver.setDaemon(true);
+                receiver.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING, "Failed to accept replication connection", e);
+                }
+            }
+        }
+    }
+
+    private void receiveChanges(Socket socket) {
+        try (Socket connection = socket;
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE))) {
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            if (in.readInt() != MAGIC) {
+                LOG.warning("Rejected replication connection from "
+                        + connection.getRemoteSocketAddress());
+                return;
+            }
+            while (true) {
+                int count = in.readInt();
+                long sentAtMicros = in.readLong();
+                for (int i = 0; i < count; i++) {
+                    byte operation = in.readByte();
+                    long high = in.readLong();
+                    long low = in.readLong();
+                    long expiresAtMillis = in.readLong();
+                    if (operation == OPERATION_ADD) {
+                        applyAdd(high, low, expiresAtMillis);
+                    } else if (!applyRemove(high, low, expiresAtMillis)) {
+                        // The peer has removed the token already, it must not stay valid here
+                        cache.remove(high, low);
+                        lostTombstones.mark();
+                    }
+                }
+                received.mark(count);
+                if (sentAtMicros > 0) {
+                    lag.update(Math.max(0, nowMicros() - sentAtMicros), TimeUnit.MICROSECONDS);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // Peer went away, it reconnects once it is back
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to receive changes from "
+                    + socket.getRemoteSocketAddress(), e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+}
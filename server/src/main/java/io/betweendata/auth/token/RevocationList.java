@@ -0,0 +1,166 @@
+package io.betweendata.auth.token;
+
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.RevocationConfiguration;
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Access token that have been revoked before they expired (i.e. by logging out). Every
+ * authenticated request is checked against this list, so the check has to be cheap:<br>
+ * The {@link TokenId}s of revoked token are kept in a {@link TokenIdTable} until the token
+ * expire. A {@link BloomFilter} in front of it answers the common case of a token that has
+ * never been revoked without touching the table. Since a Bloom filter can't forget, it is
+ * rebuilt from the table in the background after the expired revocations have been removed.
+ * <br>
+ * Dropping a revocation would make its token valid again, so the list fails closed: once it is
+ * full only expired revocations make room, new ones are refused until then.<br>
+ * Revocations are only kept in memory. Access token are short lived, so a restart only revives
+ * token that would have expired soon anyway. Revocations are not replicated either, other
+ * instances accept a revoked token until it expires. Revoked refresh token are removed from
+ * the refresh token cache instead.<br>
+ * The following metrics are exported:
+ * <ul>
+ * <li><i>revoked</i>: token revoked</li>
+ * <li><i>rejected</i>: revocations refused because the list was full</li>
+ * <li><i>size</i>: number of revocations kept</li>
+ * <li><i>false-positives</i>: checks the Bloom filter could not answer although the token has
+ * not been revoked</li>
+ * </ul>
+ */
+public class RevocationList implements Managed {
+
+    private final TokenIdTable revoked;
+    private final int expectedSize;
+    private final long rebuildMillis;
+
+    private volatile BloomFilter filter;
+    /**
+     * Filter that is being rebuilt. Revocations are added to it as well, so none of them get
+     * lost when it replaces the current filter.
+     */
+    private volatile BloomFilter rebuilding;
+
+    private final Meter revokedMeter;
+    private final Meter rejectedMeter;
+    private final Counter falsePositives;
+
+    private ScheduledExecutorService rebuilder;
+
+    /**
+     * @param config
+     * @param metrics
+     */
+    public RevocationList(RevocationConfiguration config, MetricRegistry metrics) {
+        revoked = new TokenIdTable(config.getMaxSize());
+        expectedSize = config.getExpectedSize();
+        rebuildMillis = config.getRebuildInterval().toMilliseconds();
+        filter = new BloomFilter(expectedSize);
+
+        revokedMeter = metrics.meter(MetricRegistry.name(RevocationList.class, "revoked"));
+        rejectedMeter = metrics.meter(MetricRegistry.name(RevocationList.class, "rejected"));
+        falsePositives =
+                metrics.counter(MetricRegistry.name(RevocationList.class, "false-positives"));
+        metrics.register(MetricRegistry.name(RevocationList.class, "size"),
+                (Gauge<Integer>) revoked::size);
+    }
+
+    /**
+     * Revokes the token with the given id.
+     *
+     * @param id
+     * @param expiresAt - expiry of the token. The revocation is kept until then.
+     * @return <code>false</code> if the list is full, the token has not been revoked then
+     */
+    public boolean revoke(TokenId id, Instant expiresAt) {
+        // The table first: a rebuild that has not seen the revocation there publishes its new
+        // filter before it scans the table, so it is found below
+        if (!revoked.tryPut(id.getHigh(), id.getLow(), expiresAt.toEpochMilli(),
+                System.currentTimeMillis())) {
+            rejectedMeter.mark();
+            return false;
+        }
+        BloomFilter current = filter;
+        current.add(id.getHigh(), id.getLow());
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.add(id.getHigh(), id.getLow());
+        }
+        if (filter != current) {
+            filter.add(id.getHigh(), id.getLow());
+        }
+        revokedMeter.mark();
+        return true;
+    }
+
+    /**
+     * @param id
+     * @return whether the token with the given id has been revoked
+     */
+    public boolean isRevoked(TokenId id) {
+        return isRevoked(id.getHigh(), id.getLow());
+    }
+
+    /**
+     * @param high - first half of the token id
+     * @param low  - second half of the token id
+     * @return whether the token with the given id has been revoked
+     */
+    public boolean isRevoked(long high, long low) {
+        if (!filter.mightContain(high, low)) {
+            return false;
+        }
+        if (revoked.get(high, low) > CoarseClock.currentTimeMillis()) {
+            return true;
+        }
+        falsePositives.inc();
+        return false;
+    }
+
+    /**
+     * @return number of revocations kept (including expired ones that have not been removed
+     *         yet)
+     */
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Removes the expired revocations and replaces the Bloom filter by one only containing the
+     * remaining revocations. The new filter is sized to fit them.
+     */
+    public void rebuild() {
+        revoked.removeExpired(System.currentTimeMillis());
+        BloomFilter next = new BloomFilter(Math.max(expectedSize, 2 * revoked.size()));
+        rebuilding = next;
+        revoked.forEach((high, low, expiresAtMillis) -> next.add(high, low));
+        filter = next;
+        rebuilding = null;
+    }
+
+    @Override
+    public void start() {
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-list-rebuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMillis, rebuildMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+}
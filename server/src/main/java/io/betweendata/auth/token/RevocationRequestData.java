@@ -0,0 +1,28 @@
+package io.betweendata.auth.token;
+
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Representation of the data that needs to be provided in the request to
+ * revoke a token.
+ */
+public class RevocationRequestData {
+
+    @NotNull
+    @JsonProperty("token")
+    private String token;
+
+    public RevocationRequestData() {
+	// Jackson constructor
+    }
+
+    public String getToken() {
+	return token;
+    }
+
+    public void setToken(String token) {
+	this.token = token;
+    }
+}
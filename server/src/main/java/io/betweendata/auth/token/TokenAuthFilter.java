@@ -2,6 +2,7 @@ package io.betweendata.auth.token;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Priority;
 import javax.ws.rs.Priorities;
@@ -10,7 +11,12 @@ import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.Timers;
 import io.betweendata.auth.service.TokenService;
 import io.betweendata.auth.user.User;
 import io.dropwizard.auth.AuthFilter;
@@ -34,22 +40,52 @@ import io.dropwizard.auth.AuthenticationException;
  */
 @Priority(Priorities.AUTHENTICATION)
 public class TokenAuthFilter extends AuthFilter<TokenCredentials, User> {
-    private TokenAuthenticator authenticator = new TokenAuthenticator();
+    private TokenAuthenticator authenticator;
+
+    private final Timer parseHeaderTimer;
+    private final Meter unauthorized;
+
+    /**
+     * The following metrics are exported:
+     * <ul>
+     * <li><i>parse-header</i>: time it takes to read the token from the header</li>
+     * <li><i>unauthorized</i>: requests rejected because of a missing or invalid token</li>
+     * </ul>
+     * See {@link TokenAuthenticator} for the metrics of the authentication itself.
+     *
+     * @param authenticator
+     * @param metrics
+     */
+    public TokenAuthFilter(TokenAuthenticator authenticator, MetricRegistry metrics) {
+	this.authenticator = authenticator;
+	parseHeaderTimer =
+		Timers.timer(metrics, MetricRegistry.name(TokenAuthFilter.class, "parse-header"));
+	unauthorized = metrics.meter(MetricRegistry.name(TokenAuthFilter.class, "unauthorized"));
+    }
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
 	TokenService tokenService = ServiceLocator.get().getTokenService();
+	long start = System.nanoTime();
 
 	// Extract header from request containing the token
 	String authHeader = requestContext.getHeaders().getFirst("Authorization");
 
 	// If the header is missing or empty we return an error
 	if (authHeader == null || authHeader.isEmpty()) {
+	    unauthorized.mark();
 	    throw new WebApplicationException(Response.Status.FORBIDDEN);
 	}
 
 	// Extract the token from the header
-	String token = tokenService.parseAuthorizationHeader(authHeader);
+	String token;
+	try {
+	    token = tokenService.parseAuthorizationHeader(authHeader);
+	} catch (IllegalArgumentException e) {
+	    unauthorized.mark();
+	    throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+	}
+	parseHeaderTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
 	// Create the credentials that will be used to authenticate the request
 	TokenCredentials credentials = new TokenCredentials();
@@ -63,11 +99,13 @@ public class TokenAuthFilter extends AuthFilter<TokenCredentials, User> {
 	    // Delegate the authentication to our authenticator
 	    user = authenticator.authenticate(credentials);
 	} catch (AuthenticationException e) {
+	    unauthorized.mark();
 	    throw new WebApplicationException(Response.Status.UNAUTHORIZED);
 	}
 
 	// If the user optional is empty the authentication was unsuccessful.
 	if (user.isEmpty()) {
+	    unauthorized.mark();
 	    throw new WebApplicationException(Response.Status.UNAUTHORIZED);
 	}
 
@@ -1,10 +1,14 @@
 package io.betweendata.auth.token;
 
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.Timers;
 import io.betweendata.auth.service.TokenService;
-import io.betweendata.auth.user.InMemoryUserStorage;
 import io.betweendata.auth.user.User;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
@@ -14,30 +18,81 @@ import io.dropwizard.auth.Authenticator;
  * provided {@link TokenCredentials}.
  */
 public class TokenAuthenticator implements Authenticator<TokenCredentials, User> {
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final Timer cacheLookupTimer;
+
+    /**
+     * Exports the time it takes to look up the token in the {@link VerifiedTokenCache} as
+     * <i>cache-lookup</i>. The verification of the signature is measured by the
+     * {@link TokenService}, loading the user by the {@link io.betweendata.auth.user.UserStorage}.
+     *
+     * @param verifiedTokenCache
+     * @param metrics
+     */
+    public TokenAuthenticator(VerifiedTokenCache verifiedTokenCache, MetricRegistry metrics) {
+	this.verifiedTokenCache = verifiedTokenCache;
+	cacheLookupTimer =
+		Timers.timer(metrics, MetricRegistry.name(TokenAuthenticator.class, "cache-lookup"));
+    }
 
     /**
      * Authenticate the given {@link TokenCredentials}.<br>
      * If authenticate return a user in it's Optional the authentication was
      * successful. If the Optional is empty it could mean that the token was invalid
-     * or no user with the given mail exists.
+     * or no user with the given mail exists.<br>
+     * The outcome is cached in the {@link VerifiedTokenCache} so subsequent requests
+     * with the same token don't have to verify it again. Revoked token (see
+     * {@link RevocationList}) are rejected, and so are refresh token: they are only valid in
+     * the refresh token cache, which requests authenticated with them would bypass.
      */
     @Override
     public Optional<User> authenticate(TokenCredentials credentials) throws AuthenticationException {
+	long start = System.nanoTime();
+	String cacheKey = verifiedTokenCache.keyFor(credentials.getToken());
+
+	// Token that recently failed the verification are rejected right away
+	if (verifiedTokenCache.isRejected(cacheKey)) {
+	    cacheLookupTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	    return Optional.empty();
+	}
+
+	// Token that have already been verified don't have to be verified again
+	User cachedUser = verifiedTokenCache.get(cacheKey);
+	cacheLookupTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	if (cachedUser != null) {
+	    return Optional.of(cachedUser);
+	}
+
 	TokenService tokenService = ServiceLocator.get().getTokenService();
 
-	// Check if the token is valid (signed with our key)
-	boolean isTokenValid = tokenService.isValid(credentials.getToken());
+	// Verify the token (signed with our key and not expired) and read its claims
+	Optional<VerifiedToken> verifiedToken = tokenService.verify(credentials.getToken());
 
-	if (!isTokenValid) {
+	if (verifiedToken.isEmpty()) {
 	    // Return empty Optional if the token is invalid
+	    verifiedTokenCache.reject(cacheKey);
+	    return Optional.empty();
+	}
+
+	// Only access token authenticate requests
+	if (!TokenService.SUBJECT_ACCESS_TOKEN.equals(verifiedToken.get().getSubject())) {
+	    verifiedTokenCache.reject(cacheKey);
+	    return Optional.empty();
+	}
+
+	// Token revoked before they expired are rejected like invalid ones
+	TokenId id = TokenId.of(verifiedToken.get());
+	if (ServiceLocator.get().getRevocationList().isRevoked(id)) {
+	    verifiedTokenCache.reject(cacheKey);
 	    return Optional.empty();
 	}
 
 	// Extract the email from the claims of the token
-	String email = tokenService.extractClaimEmail(credentials.getToken());
+	String email = verifiedToken.get().getEmail();
 
 	// Load the user using the mail address
-	User user = InMemoryUserStorage.getInstance().loadUser(email);
+	User user = ServiceLocator.get().getUserStorage().loadUser(email);
 
 	// Return empty optional if no user was found
 	if (user == null) {
@@ -47,6 +102,8 @@ public class TokenAuthenticator implements Authenticator<TokenCredentials, User>
 	user.setRole("USER"); // Default role
 	user.setEmail(email);
 
+	verifiedTokenCache.put(cacheKey, user, id, verifiedToken.get().getExpiresAt());
+
 	// If we get here the provided token is valid and a user for it was found in the
 	// database.
 	return Optional.ofNullable(user);
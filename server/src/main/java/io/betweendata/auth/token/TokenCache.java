@@ -1,7 +1,10 @@
 package io.betweendata.auth.token;
 
+import java.time.Instant;
+
 /**
- * Interface describing which methods the cache for tokens has to implement.
+ * Interface describing which methods the cache for tokens has to implement. Token are
+ * identified by their {@link TokenId}.
  * 
  * @author christian
  *
@@ -10,22 +13,38 @@ public interface TokenCache {
     /**
      * Add new token to the cache.
      *
-     * @param token
+     * @param id
+     */
+    void add(TokenId id);
+
+    /**
+     * Add new token to the cache. The token is not needed anymore once it expired and can be
+     * dropped from the cache.
+     *
+     * @param id
+     * @param expiresAt - the point in time the token expires at
      */
-    void add(String token);
+    void add(TokenId id, Instant expiresAt);
 
     /**
      * Remove the given token from the cache.
      *
-     * @param token
+     * @param id
+     * @return <code>false</code> if the removal could not be recorded (i.e. because a table
+     *         is full) and the token is still valid
      */
-    void remove(String token);
+    boolean remove(TokenId id);
 
     /**
      * Check if the given token is cached.
      *
-     * @param token
+     * @param id
      * @return
      */
-    boolean exists(String token);
+    boolean exists(TokenId id);
+
+    /**
+     * @return number of token in the cache
+     */
+    int size();
 }
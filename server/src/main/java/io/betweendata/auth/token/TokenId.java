@@ -0,0 +1,124 @@
+package io.betweendata.auth.token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * 128 bit id of a token as kept by a {@link TokenCache}.<br>
+ * Refresh token carry a random id in their <i>jti</i> claim. Token without that claim (i.e.
+ * issued before it was introduced) are identified by the first 128 bits of the SHA-256 hash
+ * of the whole token instead. This way the cache never has to keep the token itself.
+ */
+public final class TokenId {
+
+    private static final int LENGTH = 16;
+    /**
+     * Length of a base64url encoded id (without padding).
+     */
+    private static final int ENCODED_LENGTH = 22;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long high;
+    private final long low;
+
+    public TokenId(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @return a new random id encoded for the <i>jti</i> claim
+     */
+    public static String generate() {
+        byte[] id = new byte[LENGTH];
+        RANDOM.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    /**
+     * @param token
+     * @return the id of the given verified token
+     */
+    public static TokenId of(VerifiedToken token) {
+        return of(token.getId(), token.getToken());
+    }
+
+    /**
+     * @param token
+     * @return the id of the given issued token
+     */
+    public static TokenId of(IssuedToken token) {
+        return of(token.getId(), token.getToken());
+    }
+
+    /**
+     * @param id    - the <i>jti</i> claim or <code>null</code> if the token has none
+     * @param token - the compact token
+     * @return the decoded <i>jti</i> claim if it has been created by {@link #generate()},
+     *         otherwise the hash of the token
+     */
+    public static TokenId of(String id, String token) {
+        if (id != null && id.length() == ENCODED_LENGTH) {
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(id));
+                return new TokenId(bytes.getLong(), bytes.getLong());
+            } catch (IllegalArgumentException ex) {
+                // Not one of ours, fall back to the hash
+            }
+        }
+        return ofToken(token);
+    }
+
+    /**
+     * @param token - the compact token
+     * @return the hash of the given token
+     */
+    public static TokenId ofToken(String token) {
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII)));
+            return new TokenId(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the first 64 bits
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return the last 64 bits
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TokenId)) {
+            return false;
+        }
+        TokenId other = (TokenId) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high ^ low);
+    }
+
+    @Override
+    public String toString() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ByteBuffer.allocate(LENGTH).putLong(high).putLong(low).array());
+    }
+}
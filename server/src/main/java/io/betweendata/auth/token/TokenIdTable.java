@@ -0,0 +1,434 @@
+package io.betweendata.auth.token;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Hash table mapping {@link TokenId}s to the point in time they expire at. It is backed by
+ * primitive <code>long</code> arrays instead of objects: each entry takes three longs (the id
+ * and the expiry). Including the free slots kept by the load factor this is 32 to 64 bytes per
+ * entry.<br>
+ * The table is split into segments, each an open-addressing table with linear probing that is
+ * guarded by its own {@link StampedLock}. Lookups are optimistic and don't block unless they
+ * raced with a change of their segment. Segments grow on demand up to their share of the
+ * maximum size. A full segment drops the entry expiring next among a few entries next to the
+ * new one, which approximates dropping the entry expiring next overall. Callers that must not
+ * lose entries use {@link #tryPut(long, long, long, long)} instead, which only drops expired
+ * ones.<br>
+ * Expired entries are removed either all at once or a slice of slots at a time, see
+ * {@link #removeExpired(long, int)}.
+ */
+public class TokenIdTable {
+
+    /**
+     * Receives the entries of the table.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long high, long low, long expiresAtMillis);
+    }
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int SEGMENT_SHIFT =
+            Long.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * Number of longs per entry: high, low and expiry. An expiry of <code>0</code> marks a free
+     * slot.
+     */
+    private static final int ENTRY = 3;
+    private static final int EXPIRES_AT = 2;
+    /**
+     * Number of entries looked at when a full segment makes room for a new one.
+     */
+    private static final int EVICTION_CANDIDATES = 16;
+    /**
+     * Maximum number of slots swept while holding the lock of a segment.
+     */
+    private static final int SWEEP_CHUNK = 4096;
+
+    private static final class Segment extends StampedLock {
+        private static final long serialVersionUID = 1L;
+
+        private long[] slots = new long[INITIAL_CAPACITY * ENTRY];
+        private int mask = INITIAL_CAPACITY - 1;
+        private int size;
+    }
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final int maxSegmentSize;
+    private final int maxSegmentCapacity;
+
+    /**
+     * Position the next incremental sweep starts at. Guarded by the table.
+     */
+    private int sweepSegment;
+    private int sweepIndex;
+
+    /**
+     * @param maxSize - maximum number of entries
+     */
+    public TokenIdTable(int maxSize) {
+        maxSegmentSize = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        // Load factor of 0.75
+        maxSegmentCapacity = Math.max(INITIAL_CAPACITY,
+                Integer.highestOneBit(maxSegmentSize + maxSegmentSize / 3) << 1);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds the given id or replaces its expiry.
+     *
+     * @param high
+     * @param low
+     * @param expiresAtMillis - has to be greater than <code>0</code>
+     */
+    public void put(long high, long low, long expiresAtMillis) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> SEGMENT_SHIFT)];
+        long stamp = segment.writeLock();
+        try {
+            int index = find(segment.slots, segment.mask, high, low, hash);
+            if (segment.slots[index * ENTRY + EXPIRES_AT] != 0) {
+                segment.slots[index * ENTRY + EXPIRES_AT] = expiresAtMillis;
+                return;
+            }
+            if (segment.size >= maxSegmentSize) {
+                evict(segment, hash);
+            } else if ((segment.size + 1) * 4L > (segment.mask + 1) * 3L
+                    && segment.mask + 1 < maxSegmentCapacity) {
+                resize(segment);
+            }
+            index = find(segment.slots, segment.mask, high, low, hash);
+            store(segment.slots, index, high, low, expiresAtMillis);
+            segment.size++;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds the given id or replaces its expiry unless its segment is full. A full segment only
+     * makes room by removing the ids that expired until the given point in time, it never
+     * drops others.
+     *
+     * @param high
+     * @param low
+     * @param expiresAtMillis - has to be greater than <code>0</code>
+     * @param nowMillis
+     * @return whether the id has been stored
+     */
+    public boolean tryPut(long high, long low, long expiresAtMillis, long nowMillis) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> SEGMENT_SHIFT)];
+        long stamp = segment.writeLock();
+        try {
+            int index = find(segment.slots, segment.mask, high, low, hash);
+            if (segment.slots[index * ENTRY + EXPIRES_AT] != 0) {
+                segment.slots[index * ENTRY + EXPIRES_AT] = expiresAtMillis;
+                return true;
+            }
+            if (segment.size >= maxSegmentSize) {
+                removeExpired(segment, 0, segment.mask + 1, nowMillis);
+                if (segment.size >= maxSegmentSize) {
+                    return false;
+                }
+            } else if ((segment.size + 1) * 4L > (segment.mask + 1) * 3L
+                    && segment.mask + 1 < maxSegmentCapacity) {
+                resize(segment);
+            }
+            index = find(segment.slots, segment.mask, high, low, hash);
+            store(segment.slots, index, high, low, expiresAtMillis);
+            segment.size++;
+            return true;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param high
+     * @param low
+     * @return the expiry of the given id or <code>0</code> if it is unknown
+     */
+    public long get(long high, long low) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> SEGMENT_SHIFT)];
+        long stamp = segment.tryOptimisticRead();
+        long expiresAt = lookup(segment.slots, high, low, hash);
+        if (segment.validate(stamp)) {
+            return expiresAt;
+        }
+
+        stamp = segment.readLock();
+        try {
+            return lookup(segment.slots, high, low, hash);
+        } finally {
+            segment.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Removes the given id.
+     *
+     * @param high
+     * @param low
+     * @param expiresAtMillis - only remove the id if it expires at this point in time or
+     *                        <code>0</code> to remove it regardless of its expiry
+     */
+    public void remove(long high, long low, long expiresAtMillis) {
+        long hash = hash(high, low);
+        Segment segment = segments[(int) (hash >>> SEGMENT_SHIFT)];
+        long stamp = segment.writeLock();
+        try {
+            int index = find(segment.slots, segment.mask, high, low, hash);
+            long current = segment.slots[index * ENTRY + EXPIRES_AT];
+            if (current != 0 && (expiresAtMillis == 0 || current == expiresAtMillis)) {
+                delete(segment.slots, segment.mask, index);
+                segment.size--;
+            }
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes all ids that expired until the given point in time. Segments are swept one after
+     * the other, so only a single segment is locked at a time.
+     *
+     * @param nowMillis
+     */
+    public void removeExpired(long nowMillis) {
+        for (Segment segment : segments) {
+            long stamp = segment.writeLock();
+            try {
+                removeExpired(segment, 0, segment.mask + 1, nowMillis);
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Removes the ids that expired until the given point in time from the next slice of
+     * slots. Each call continues where the previous one stopped, so repeated calls sweep the
+     * whole table while the work per call is bounded by the given number of slots. A segment
+     * is locked for no more than a few thousand slots at a time.
+     *
+     * @param nowMillis
+     * @param maxSlots  - number of slots to look at
+     * @return number of ids removed
+     */
+    public synchronized int removeExpired(long nowMillis, int maxSlots) {
+        int removed = 0;
+        while (maxSlots > 0) {
+            Segment segment = segments[sweepSegment];
+            long stamp = segment.writeLock();
+            try {
+                // Segments never shrink, so the index is within the segment or at its end
+                int end = Math.min(segment.mask + 1,
+                        sweepIndex + Math.min(maxSlots, SWEEP_CHUNK));
+                removed += removeExpired(segment, sweepIndex, end, nowMillis);
+                maxSlots -= end - sweepIndex;
+                sweepIndex = end;
+                if (end == segment.mask + 1) {
+                    sweepSegment = (sweepSegment + 1) % SEGMENT_COUNT;
+                    sweepIndex = 0;
+                }
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Hands every entry to the given consumer. Segments are locked one after the other while
+     * their entries are handed over, so entries changed meanwhile may or may not be seen.
+     *
+     * @param consumer
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            try {
+                long[] slots = segment.slots;
+                for (int i = 0; i < slots.length; i += ENTRY) {
+                    if (slots[i + EXPIRES_AT] != 0) {
+                        consumer.accept(slots[i], slots[i + 1], slots[i + EXPIRES_AT]);
+                    }
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return number of slots of all segments, free or not
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            capacity += segment.mask + 1;
+            segment.unlockRead(stamp);
+        }
+        return capacity;
+    }
+
+    /**
+     * @return number of entries (including expired ones that have not been removed yet)
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            size += segment.size;
+            segment.unlockRead(stamp);
+        }
+        return size;
+    }
+
+    /**
+     * Ids are random or hashes already. Mixing them once more is cheap and keeps the segments
+     * and slots independent of each other.
+     */
+    private static long hash(long high, long low) {
+        long hash = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Probes for the given id without locking. The slots may change meanwhile, so the number
+     * of probes is bounded and the result has to be validated by the caller.
+     */
+    private static long lookup(long[] slots, long high, long low, long hash) {
+        int mask = slots.length / ENTRY - 1;
+        int index = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int offset = index * ENTRY;
+            long expiresAt = slots[offset + EXPIRES_AT];
+            if (expiresAt == 0) {
+                return 0;
+            }
+            if (slots[offset] == high && slots[offset + 1] == low) {
+                return expiresAt;
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the index of the given id or of the free slot it would be stored in
+     */
+    private static int find(long[] slots, int mask, long high, long low, long hash) {
+        int index = (int) hash & mask;
+        while (true) {
+            int offset = index * ENTRY;
+            if (slots[offset + EXPIRES_AT] == 0
+                    || (slots[offset] == high && slots[offset + 1] == low)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static void store(long[] slots, int index, long high, long low, long expiresAt) {
+        int offset = index * ENTRY;
+        slots[offset] = high;
+        slots[offset + 1] = low;
+        slots[offset + EXPIRES_AT] = expiresAt;
+    }
+
+    /**
+     * Removes the expired entries of the slots from (inclusive) to (exclusive) of the given
+     * segment, which has to be write locked.
+     *
+     * @return number of entries removed
+     */
+    private static int removeExpired(Segment segment, int from, int to, long nowMillis) {
+        long[] slots = segment.slots;
+        int removed = 0;
+        for (int index = from; index < to; index++) {
+            // Deleting shifts the following entries back, so check the slot again
+            long expiresAt;
+            while ((expiresAt = slots[index * ENTRY + EXPIRES_AT]) != 0
+                    && expiresAt <= nowMillis) {
+                delete(slots, segment.mask, index);
+                segment.size--;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Frees the given slot and shifts the entries of its probe sequence back, so no tombstones
+     * are needed.
+     */
+    private static void delete(long[] slots, int mask, int index) {
+        int free = index;
+        int next = index;
+        while (true) {
+            next = (next + 1) & mask;
+            int offset = next * ENTRY;
+            if (slots[offset + EXPIRES_AT] == 0) {
+                break;
+            }
+            int home = (int) hash(slots[offset], slots[offset + 1]) & mask;
+            // Move the entry unless its home lies cyclically between the free slot and itself
+            boolean stays = free <= next ? free < home && home <= next
+                    : free < home || home <= next;
+            if (!stays) {
+                System.arraycopy(slots, offset, slots, free * ENTRY, ENTRY);
+                free = next;
+            }
+        }
+        slots[free * ENTRY + EXPIRES_AT] = 0;
+    }
+
+    /**
+     * Drops the entry expiring next among the entries following the home slot of the given
+     * hash.
+     */
+    private static void evict(Segment segment, long hash) {
+        long[] slots = segment.slots;
+        int index = (int) hash & segment.mask;
+        int victim = -1;
+        long victimExpiresAt = Long.MAX_VALUE;
+        for (int candidates = 0, probes = 0; candidates < EVICTION_CANDIDATES
+                && probes <= segment.mask; probes++) {
+            long expiresAt = slots[index * ENTRY + EXPIRES_AT];
+            if (expiresAt != 0) {
+                if (expiresAt < victimExpiresAt) {
+                    victim = index;
+                    victimExpiresAt = expiresAt;
+                }
+                candidates++;
+            }
+            index = (index + 1) & segment.mask;
+        }
+        if (victim >= 0) {
+            delete(slots, segment.mask, victim);
+            segment.size--;
+        }
+    }
+
+    private static void resize(Segment segment) {
+        long[] old = segment.slots;
+        int capacity = (segment.mask + 1) * 2;
+        long[] slots = new long[capacity * ENTRY];
+        int mask = capacity - 1;
+        for (int i = 0; i < old.length; i += ENTRY) {
+            if (old[i + EXPIRES_AT] != 0) {
+                int index = find(slots, mask, old[i], old[i + 1], hash(old[i], old[i + 1]));
+                store(slots, index, old[i], old[i + 1], old[i + EXPIRES_AT]);
+            }
+        }
+        segment.slots = slots;
+        segment.mask = mask;
+    }
+}
@@ -0,0 +1,72 @@
+package io.betweendata.auth.token;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * State of a single token as returned by the introspection end-point. The claims are only
+ * included for active (valid) token.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TokenIntrospection {
+    private static final TokenIntrospection INACTIVE = new TokenIntrospection(false, null, null,
+	    null);
+
+    private boolean active;
+    private String email;
+    private String subject;
+    /**
+     * The point in time when the token expires.
+     */
+    private LocalDateTime expiresAt;
+
+    public TokenIntrospection() {
+	// Empty constructor for Jackson
+    }
+
+    public TokenIntrospection(boolean active, String email, String subject, LocalDateTime expiresAt) {
+	this.active = active;
+	this.email = email;
+	this.subject = subject;
+	this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param token - a verified token
+     * @return
+     */
+    public static TokenIntrospection active(VerifiedToken token) {
+	return new TokenIntrospection(true, token.getEmail(), token.getSubject(),
+		LocalDateTime.ofInstant(token.getExpiresAt(), ZoneOffset.UTC));
+    }
+
+    /**
+     * @return the state of a token that is invalid or expired
+     */
+    public static TokenIntrospection inactive() {
+	return INACTIVE;
+    }
+
+    @JsonProperty
+    public boolean isActive() {
+	return active;
+    }
+
+    @JsonProperty
+    public String getEmail() {
+	return email;
+    }
+
+    @JsonProperty
+    public String getSubject() {
+	return subject;
+    }
+
+    @JsonProperty
+    public LocalDateTime getExpiresAt() {
+	return expiresAt;
+    }
+}
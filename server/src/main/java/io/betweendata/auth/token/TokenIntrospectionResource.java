@@ -0,0 +1,171 @@
+package io.betweendata.auth.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.codahale.metrics.annotation.Timed;
+
+import io.betweendata.auth.IntrospectionConfiguration;
+import io.betweendata.auth.service.IntrospectionService;
+import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.TokenService;
+import io.betweendata.auth.user.UserAuthenticationValidator;
+import io.dropwizard.util.Duration;
+
+/**
+ * End-point allowing other services (i.e. an API gateway) to check token issued by this service.
+ * Instead of calling <i>/user</i> once per token a whole batch of token is checked with a single
+ * request.<br>
+ * Only clients knowing one of the configured client secrets may introspect token, see
+ * {@link IntrospectionConfiguration}. The batches are split into chunks verified in parallel by
+ * the {@link IntrospectionService}.
+ */
+@Path("/introspect")
+public class TokenIntrospectionResource {
+    /**
+     * Smallest chunk worth a thread of its own. Verifying a HS256 token takes a few microseconds,
+     * so smaller chunks would spend more time on queuing than on verifying.
+     */
+    static final int MIN_CHUNK_SIZE = 8;
+
+    private final List<byte[]> clientSecrets = new ArrayList<>();
+    private final Duration retryAfter;
+
+    /**
+     * @param config
+     */
+    public TokenIntrospectionResource(IntrospectionConfiguration config) {
+	config.getClientSecrets()
+		.forEach(secret -> clientSecrets.add(secret.getBytes(StandardCharsets.UTF_8)));
+	this.retryAfter = config.getRetryAfter();
+    }
+
+    /**
+     * Verifies each of the given token. Revoked access token and refresh token that are not in
+     * the refresh token cache (anymore) are reported as inactive. If the
+     * {@link IntrospectionService} is overloaded the request is rejected with <i>503 Service
+     * Unavailable</i>.
+     *
+     * @param asyncResponse - resumed with the state of each token in the order of the request
+     * @param authHeader    - has to carry one of the client secrets as bearer token
+     * @param requestData
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Timed
+    public void introspect(@Suspended AsyncResponse asyncResponse,
+	    @HeaderParam(HttpHeaders.AUTHORIZATION) String authHeader,
+	    @NotNull @Valid IntrospectionRequestData requestData) {
+	if (!isClientAuthorized(authHeader)) {
+	    throw new WebApplicationException(Status.UNAUTHORIZED);
+	}
+
+	IntrospectionService service = ServiceLocator.get().getIntrospectionService();
+	List<String> tokens = requestData.getTokens();
+	int chunkSize = chunkSize(tokens.size(), service.getThreads());
+	List<CompletableFuture<List<TokenIntrospection>>> chunks = new ArrayList<>();
+	try {
+	    for (int from = 0; from < tokens.size(); from += chunkSize) {
+		List<String> chunk = tokens.subList(from, Math.min(tokens.size(), from + chunkSize));
+		chunks.add(service.submit(() -> introspect(chunk)));
+	    }
+	} catch (RejectedExecutionException e) {
+	    // The chunks already queued are not needed anymore
+	    chunks.forEach(chunk -> chunk.cancel(false));
+	    throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+		    .header(HttpHeaders.RETRY_AFTER, retryAfter.toSeconds()).build());
+	}
+
+	CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]))
+		.whenComplete((ignored, e) -> {
+		    if (e != null) {
+			asyncResponse.resume(e);
+			return;
+		    }
+		    List<TokenIntrospection> introspections = new ArrayList<>(tokens.size());
+		    chunks.forEach(chunk -> introspections.addAll(chunk.join()));
+		    asyncResponse.resume(new IntrospectionResponse(introspections));
+		});
+    }
+
+    /**
+     * Spreads the batch over the threads, but does not split it into chunks smaller than
+     * {@link #MIN_CHUNK_SIZE}.
+     *
+     * @param tokens  - number of token in the batch
+     * @param threads - number of threads verifying chunks
+     * @return number of token per chunk
+     */
+    static int chunkSize(int tokens, int threads) {
+	int chunks = Math.max(1, Math.min(threads, tokens / MIN_CHUNK_SIZE));
+	return Math.max(1, (tokens + chunks - 1) / chunks);
+    }
+
+    private List<TokenIntrospection> introspect(List<String> tokens) {
+	TokenService tokenService = ServiceLocator.get().getTokenService();
+	List<TokenIntrospection> introspections = new ArrayList<>(tokens.size());
+	for (String token : tokens) {
+	    introspections.add(token == null ? TokenIntrospection.inactive()
+		    : tokenService.verify(token)
+			    .filter(this::isActive)
+			    .map(TokenIntrospection::active)
+			    .orElseGet(TokenIntrospection::inactive));
+	}
+	return introspections;
+    }
+
+    /**
+     * Refresh token are valid as long as they are in the refresh token cache, which they are
+     * removed from by <i>/logout</i> and <i>/revoke</i>. Revoked access token are on the
+     * {@link RevocationList}.
+     *
+     * @param verified
+     * @return whether the given token has not been revoked
+     */
+    private boolean isActive(VerifiedToken verified) {
+	TokenId id = TokenId.of(verified);
+	if (TokenService.SUBJECT_REFRESH_TOKEN.equals(verified.getSubject())) {
+	    return ServiceLocator.get().getRefreshTokenCache().exists(id);
+	}
+	return !ServiceLocator.get().getRevocationList().isRevoked(id);
+    }
+
+    /**
+     * Compares the secret in the given header with each client secret in constant time.
+     *
+     * @param authHeader
+     * @return
+     */
+    private boolean isClientAuthorized(String authHeader) {
+	if (!UserAuthenticationValidator.isBearerHeaderValid(authHeader)) {
+	    return false;
+	}
+	byte[] secret = authHeader.substring(UserAuthenticationValidator.BEARER_PREFIX.length())
+		.getBytes(StandardCharsets.UTF_8);
+	boolean authorized = false;
+	for (byte[] clientSecret : clientSecrets) {
+	    authorized |= MessageDigest.isEqual(clientSecret, secret);
+	}
+	return authorized;
+    }
+}
@@ -0,0 +1,110 @@
+package io.betweendata.auth.token;
+
+import java.util.Optional;
+
+import javax.annotation.security.RolesAllowed;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
+
+import org.glassfish.jersey.server.ManagedAsync;
+
+import com.codahale.metrics.annotation.Timed;
+
+import io.betweendata.auth.service.RequestExecutorProvider;
+import io.betweendata.auth.service.ServiceLocator;
+import io.betweendata.auth.service.TokenService;
+import io.betweendata.auth.user.User;
+
+/**
+ * End-points allowing a user to invalidate token before they expire. Access token are put on
+ * the {@link RevocationList}, refresh token are removed from the refresh token cache.<br>
+ * Like in RFC 7009 token that are invalid or have not been issued to the user are ignored
+ * instead of causing an error.<br>
+ * Removing a refresh token may wait for the disk, so both end-points run on the executor of
+ * the {@link RequestExecutorProvider}.<br>
+ * If the {@link RevocationList} is full an access token can't be revoked, and if the table of
+ * removed token of a replicated refresh token cache is full a refresh token can't be removed.
+ * The request is rejected with <i>503 Service Unavailable</i> then, so the client knows the
+ * token is still valid.
+ */
+@Path("/")
+public class TokenRevocationResource {
+
+    /**
+     * Revokes the access token the request is authenticated with and, if given, the refresh
+     * token. The refresh token is removed first, so it is gone even if the access token can't
+     * be revoked because the {@link RevocationList} is full.
+     * 
+     * @param context
+     * @param authHeader
+     * @param requestData - optional
+     */
+    @RolesAllowed({ "USER" })
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Timed
+    @ManagedAsync
+    @Path("/logout")
+    public void logout(@Context SecurityContext context,
+	    @HeaderParam(HttpHeaders.AUTHORIZATION) String authHeader,
+	    RefreshTokenRequestData requestData) {
+	User user = (User) context.getUserPrincipal();
+	if (requestData != null && requestData.getRefreshToken() != null) {
+	    revoke(user, requestData.getRefreshToken());
+	}
+	revoke(user, ServiceLocator.get().getTokenService().parseAuthorizationHeader(authHeader));
+    }
+
+    /**
+     * Revokes the given access or refresh token.
+     * 
+     * @param context
+     * @param requestData
+     */
+    @RolesAllowed({ "USER" })
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Timed
+    @ManagedAsync
+    @Path("/revoke")
+    public void revoke(@Context SecurityContext context,
+	    @NotNull @Valid RevocationRequestData requestData) {
+	revoke((User) context.getUserPrincipal(), requestData.getToken());
+    }
+
+    /**
+     * Revokes the given token if it is valid and has been issued to the given user.
+     * 
+     * @param user
+     * @param token
+     */
+    private void revoke(User user, String token) {
+	Optional<VerifiedToken> verifiedToken =
+		ServiceLocator.get().getTokenService().verify(token);
+	if (verifiedToken.isEmpty() || !user.getEmail().equals(verifiedToken.get().getEmail())) {
+	    return;
+	}
+
+	TokenId id = TokenId.of(verifiedToken.get());
+	boolean recorded;
+	if (TokenService.SUBJECT_REFRESH_TOKEN.equals(verifiedToken.get().getSubject())) {
+	    recorded = ServiceLocator.get().getRefreshTokenCache().remove(id);
+	} else {
+	    recorded = ServiceLocator.get().getRevocationList().revoke(id,
+		    verifiedToken.get().getExpiresAt());
+	}
+	if (!recorded) {
+	    throw new WebApplicationException(Status.SERVICE_UNAVAILABLE);
+	}
+    }
+}
@@ -0,0 +1,62 @@
+package io.betweendata.auth.token;
+
+import java.time.Instant;
+
+/**
+ * Immutable result of a successful token verification.<br>
+ * An instance of this class is only ever created after the signature and the expiry of a token
+ * have been checked. Therefore all claims it contains can be trusted and there is no need to
+ * parse the token again to read them.
+ */
+public final class VerifiedToken {
+    private final String token;
+    private final String email;
+    private final String subject;
+    private final Instant expiresAt;
+    private final Instant issuedAt;
+    private final String id;
+
+    public VerifiedToken(String token, String email, String subject, Instant expiresAt,
+            Instant issuedAt, String id) {
+        this.token = token;
+        this.email = email;
+        this.subject = subject;
+        this.expiresAt = expiresAt;
+        this.issuedAt = issuedAt;
+        this.id = id;
+    }
+
+    /**
+     * @return the compact token these claims were read from
+     */
+    public String getToken() {
+        return token;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return the point in time the token was issued at or <code>null</code> if the token was
+     *         issued without this claim
+     */
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * @return the <i>jti</i> claim or <code>null</code> if the token was issued without it
+     */
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,243 @@
+package io.betweendata.auth.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.user.User;
+
+/**
+ * Bounded cache remembering the outcome of verifying a token. This allows
+ * {@link TokenAuthenticator} to skip the signature check and the user lookup for token it has
+ * already seen.<br>
+ * <ul>
+ * <li>Token are never stored themselves. The cache is keyed by the SHA-256 digest of a token (see
+ * {@link #keyFor(String)}).</li>
+ * <li>An entry for a valid token never outlives the expiry of the token.</li>
+ * <li>Entries of token that have been revoked are treated as missing. Each entry keeps the
+ * {@link TokenId} of its token, so checking the {@link RevocationList} does not need to hash
+ * the token again.</li>
+ * <li>Token that failed the verification are remembered for a short time (negative cache) so
+ * repeated requests with the same garbage token don't cost a signature check each time.</li>
+ * <li>Both caches have a maximum size. If it is exceeded the entry closest to its expiry out of a
+ * small sample is evicted.</li>
+ * </ul>
+ */
+public class VerifiedTokenCache {
+
+    /**
+     * Maximum number of verified token kept in the cache.
+     */
+    private static final int MAX_SIZE = 100_000;
+    /**
+     * Maximum number of rejected token kept in the negative cache.
+     */
+    private static final int MAX_SIZE_REJECTED = 10_000;
+    /**
+     * Amount of milliseconds a rejected token is remembered.
+     */
+    private static final long REJECTED_TTL_MILLIS = 10_000;
+    /**
+     * Number of entries inspected to find an entry to evict.
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    });
+
+    /**
+     * Cache entry. A <code>null</code> email marks a rejected token.
+     */
+    private static final class Entry {
+        private final String email;
+        private final String role;
+        private final long idHigh;
+        private final long idLow;
+        private final long expiresAtMillis;
+
+        private Entry(String email, String role, long idHigh, long idLow, long expiresAtMillis) {
+            this.email = email;
+            this.role = role;
+            this.idHigh = idHigh;
+            this.idLow = idLow;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final Map<String, Entry> verified = new ConcurrentHashMap<>();
+    private final Map<String, Entry> rejected = new ConcurrentHashMap<>();
+
+    private final RevocationList revocationList;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter rejectedHits;
+    private final Counter evictions;
+
+    /**
+     * @param metrics
+     * @param revocationList - entries of revoked token are not handed out
+     */
+    public VerifiedTokenCache(MetricRegistry metrics, RevocationList revocationList) {
+        this.revocationList = revocationList;
+        hits = metrics.counter(MetricRegistry.name(VerifiedTokenCache.class, "hits"));
+        misses = metrics.counter(MetricRegistry.name(VerifiedTokenCache.class, "misses"));
+        rejectedHits = metrics.counter(MetricRegistry.name(VerifiedTokenCache.class, "rejected-hits"));
+        evictions = metrics.counter(MetricRegistry.name(VerifiedTokenCache.class, "evictions"));
+        metrics.register(MetricRegistry.name(VerifiedTokenCache.class, "size"),
+                (Gauge<Integer>) verified::size);
+        metrics.register(MetricRegistry.name(VerifiedTokenCache.class, "rejected-size"),
+                (Gauge<Integer>) rejected::size);
+    }
+
+    /**
+     * Creates the key under which the outcome of verifying the given token is cached.
+     *
+     * @param token
+     * @return
+     */
+    public String keyFor(String token) {
+        MessageDigest digest = DIGEST.get();
+        return Base64.getEncoder()
+                .encodeToString(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Returns the user the token with the given key has been verified for.
+     *
+     * @param key - see {@link #keyFor(String)}
+     * @return a new user instance or <code>null</code> if nothing (valid) is cached for the key
+     */
+    public User get(String key) {
+        Entry entry = verified.get(key);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())
+                || revocationList.isRevoked(entry.idHigh, entry.idLow)) {
+            if (entry != null) {
+                verified.remove(key, entry);
+            }
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+
+        // The principal is handed out to the resources which might modify it. Therefore
+        // every caller gets its own instance.
+        User user = new User();
+        user.setEmail(entry.email);
+        user.setRole(entry.role);
+        return user;
+    }
+
+    /**
+     * Remembers that the token with the given key has been verified for the given user.
+     *
+     * @param key       - see {@link #keyFor(String)}
+     * @param user
+     * @param id        - id of the token
+     * @param expiresAt - expiry of the token
+     */
+    public void put(String key, User user, TokenId id, Instant expiresAt) {
+        verified.put(key, new Entry(user.getEmail(), user.getRole(), id.getHigh(), id.getLow(),
+                expiresAt.toEpochMilli()));
+        if (verified.size() > MAX_SIZE) {
+            evict(verified);
+        }
+    }
+
+    /**
+     * Checks whether the token with the given key has recently failed the verification.
+     *
+     * @param key - see {@link #keyFor(String)}
+     * @return
+     */
+    public boolean isRejected(String key) {
+        Entry entry = rejected.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            rejected.remove(key, entry);
+            return false;
+        }
+        rejectedHits.inc();
+        return true;
+    }
+
+    /**
+     * Remembers that the token with the given key failed the verification.
+     *
+     * @param key - see {@link #keyFor(String)}
+     */
+    public void reject(String key) {
+        rejected.put(key,
+                new Entry(null, null, 0, 0, System.currentTimeMillis() + REJECTED_TTL_MILLIS));
+        if (rejected.size() > MAX_SIZE_REJECTED) {
+            evict(rejected);
+        }
+    }
+
+    /**
+     * Removes all cached token of the user with the given email. Needs to be called whenever
+     * the user changes so the next request picks up the change.
+     *
+     * @param email
+     */
+    public void invalidate(String email) {
+        verified.values().removeIf(entry -> email.equals(entry.email));
+    }
+
+    /**
+     * Removes all cached token. Needs to be called whenever the keys token are verified with
+     * change, since a token might no longer be valid.
+     */
+    public void invalidateAll() {
+        verified.clear();
+        rejected.clear();
+    }
+
+    /**
+     * Removes one entry from the given cache. Out of a small sample the first expired entry or
+     * otherwise the entry closest to its expiry is removed.
+     *
+     * @param cache
+     */
+    private void evict(Map<String, Entry> cache) {
+        long now = System.currentTimeMillis();
+        Map.Entry<String, Entry> candidate = null;
+
+        Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLE_SIZE && iterator.hasNext(); i++) {
+            Map.Entry<String, Entry> next = iterator.next();
+            if (isExpired(next.getValue(), now)) {
+                candidate = next;
+                break;
+            }
+            if (candidate == null
+                    || next.getValue().expiresAtMillis < candidate.getValue().expiresAtMillis) {
+                candidate = next;
+            }
+        }
+
+        if (candidate != null && cache.remove(candidate.getKey(), candidate.getValue())) {
+            evictions.inc();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return entry.expiresAtMillis <= now;
+    }
+}
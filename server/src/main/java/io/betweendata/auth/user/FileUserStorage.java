@@ -0,0 +1,777 @@
+package io.betweendata.auth.user;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Log-structured storage persisting users in segment files.<br>
+ * <ul>
+ * <li>Users are appended to the current segment. Saving or updating a user never overwrites
+ * existing data but appends a new version of the user.</li>
+ * <li>Segments are memory-mapped. Reading a user is a lookup in the in-memory index followed by
+ * reading the mapped memory. No system call is needed.</li>
+ * <li>The index is an open-addressing hash table of <code>long</code>s pointing to the current
+ * version of each user (see {@link #slot(long, int, int)}). The email is not kept on the heap. It
+ * is compared against the email stored in the record the slot points to. This keeps the index
+ * small and allows to open millions of users without creating millions of objects.</li>
+ * <li>Emails are compared and hashed ignoring the case of ASCII letters, like
+ * {@link User#canonicalEmail(String)} does it. Users saved with an email in another case are
+ * found by their canonical email.</li>
+ * <li>On startup all segments are scanned in the order they were written to rebuild the
+ * index.</li>
+ * <li>Compaction copies the current versions of the users out of segments that mostly contain
+ * stale versions and deletes these segments afterwards.</li>
+ * </ul>
+ * Each record has the following format:
+ *
+ * <pre>
+ * payload length (int) | crc32 of payload (int) | payload
+ * payload = email length (short) | email | hash length (short) | hash | role length (short) | role
+ * </pre>
+ *
+ * A length of <code>-1</code> marks a <code>null</code> value. A payload length of
+ * <code>0</code> marks the end of the data in a segment.
+ */
+public class FileUserStorage implements UserStorage, Managed {
+    private static final Logger LOG = Logger.getLogger(FileUserStorage.class.getName());
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Segments with less than this share of live data are compacted.
+     */
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+    private static final long COMPACTION_CHECK_INTERVAL_SECONDS = 60;
+
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 16;
+    /**
+     * The index grows once more than this share of its slots is used.
+     */
+    private static final double MAX_INDEX_LOAD = 0.5;
+
+    /**
+     * Layout of an index slot: tag (12 bits) | segment id (20 bits) | offset (32 bits). The tag
+     * holds bits of the hash of the email so most mismatches are detected without reading the
+     * record. Segment ids start at 1, therefore an empty slot is <code>0</code>.
+     */
+    private static final int SEGMENT_ID_BITS = 20;
+    private static final int MAX_SEGMENT_ID = (1 << SEGMENT_ID_BITS) - 1;
+    private static final int TAG_SHIFT = 32 + SEGMENT_ID_BITS;
+    private static final long EMPTY = 0;
+    /**
+     * Returned by a lookup that raced with a compaction and has to be repeated.
+     */
+    private static final long RETRY = -1;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+        private final int id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        /**
+         * Bytes used by the current versions of users.
+         */
+        private final AtomicLong liveBytes = new AtomicLong();
+        /**
+         * Position the next record will be written at. Guarded by the write lock.
+         */
+        private int writePosition;
+
+        private Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+
+    /**
+     * The index. Slots are read lock-free, all modifications happen holding the
+     * {@link #writeLock}. A grown index is published by replacing the array.
+     */
+    private volatile long[] index = new long[INITIAL_INDEX_CAPACITY];
+    private int indexSize;
+
+    /**
+     * Segments by id. Replaced (copy on write) whenever a segment is added or removed.
+     */
+    private volatile Segment[] segments = new Segment[0];
+
+    private final List<UserUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Serializes all writes (including compaction). Writes force the segment to disk while
+     * holding it, so it is not a monitor: a virtual thread waiting in a synchronized block
+     * pins its carrier thread on Java 21.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+    private Segment activeSegment;
+
+    private ScheduledExecutorService compactor;
+
+    /**
+     * @param directory   - directory holding the segment files. It is created if it does not
+     *                    exist.
+     * @param segmentSize - size of a segment file in bytes
+     */
+    public FileUserStorage(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void saveUser(User user) {
+        writeLock.lock();
+        try {
+            append(user);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean saveUserIfAbsent(User user) {
+        byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        writeLock.lock();
+        try {
+            if (find(index, email, hash(email)) != EMPTY) {
+                return false;
+            }
+            append(user);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public User loadUser(String email) {
+        if (email == null) {
+            return null;
+        }
+        byte[] emailBytes = email.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(emailBytes);
+        while (true) {
+            long slot = find(index, emailBytes, hash);
+            if (slot == EMPTY) {
+                return null;
+            }
+            // The segment might just have been compacted. In this case the index already points
+            // to the new location.
+            if (slot != RETRY) {
+                Segment segment = segment(segmentId(slot));
+                if (segment != null) {
+                    return read(segment, offset(slot));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateUser(User user) {
+        writeLock.lock();
+        try {
+            byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+            if (find(index, email, hash(email)) == EMPTY) {
+                return;
+            }
+            append(user);
+        } finally {
+            writeLock.unlock();
+        }
+        updateListeners.forEach(listener -> listener.userUpdated(user.getEmail()));
+    }
+
+    @Override
+    public void addUpdateListener(UserUpdateListener listener) {
+        updateListeners.add(listener);
+    }
+
+    /**
+     * @return number of users stored
+     */
+    @Override
+    public int size() {
+        writeLock.lock();
+        try {
+            return indexSize;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a new version of the given user and points the index to it. Has to be called
+     * holding the {@link #writeLock}.
+     *
+     * @param user
+     */
+    private void append(User user) {
+        byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] hash = bytes(user.getPasswordHash());
+        byte[] role = bytes(user.getRole());
+        int payloadLength = 6 + email.length + length(hash) + length(role);
+
+        Segment segment = segmentWithSpaceFor(RECORD_HEADER_SIZE + payloadLength);
+        int offset = segment.writePosition;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        put(buffer, email);
+        put(buffer, hash);
+        put(buffer, role);
+
+        publish(segment, offset, payloadLength);
+    }
+
+    /**
+     * Finishes a record whose payload has already been written: writes the header, makes it
+     * durable and points the index to it. Has to be called holding the {@link #writeLock}.
+     *
+     * @param segment
+     * @param offset        - offset of the record within the segment
+     * @param payloadLength
+     */
+    private void publish(Segment segment, int offset, int payloadLength) {
+        ByteBuffer payload = segment.buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_SIZE);
+        payload.limit(offset + RECORD_HEADER_SIZE + payloadLength);
+        crc.reset();
+        crc.update(payload);
+        segment.buffer.putInt(offset + 4, (int) crc.getValue());
+        // The length is written last. Until then the record is invisible to a restart.
+        segment.buffer.putInt(offset, payloadLength);
+        segment.buffer.force();
+
+        int recordSize = RECORD_HEADER_SIZE + payloadLength;
+        segment.writePosition += recordSize;
+        segment.liveBytes.addAndGet(recordSize);
+
+        long previous = insert(segment, offset);
+        if (previous != EMPTY) {
+            release(previous);
+        }
+    }
+
+    /**
+     * Marks the record the given slot points to as stale.
+     *
+     * @param slot
+     */
+    private void release(long slot) {
+        Segment segment = segment(segmentId(slot));
+        if (segment != null) {
+            segment.liveBytes.addAndGet(-recordSize(segment, offset(slot)));
+        }
+    }
+
+    private User read(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+
+        User user = new User();
+        user.setEmail(getString(buffer));
+        user.setPasswordHash(getString(buffer));
+        user.setRole(getString(buffer));
+        return user;
+    }
+
+    /**
+     * Looks up the slot of the user with the given email.
+     *
+     * @param table
+     * @param email
+     * @param hash  - see {@link #hash(byte[])}
+     * @return the slot, {@link #EMPTY} if there is no such user or {@link #RETRY}
+     */
+    private long find(long[] table, byte[] email, long hash) {
+        int mask = table.length - 1;
+        long tag = tag(hash);
+        for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+            long slot = (long) SLOTS.getAcquire(table, i);
+            if (slot == EMPTY) {
+                return EMPTY;
+            }
+            if ((slot >>> TAG_SHIFT) == tag) {
+                Segment segment = segment(segmentId(slot));
+                if (segment == null) {
+                    return RETRY;
+                }
+                if (emailEquals(segment, offset(slot), email)) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Points the index to the record at the given location. Has to be called holding the
+     * {@link #writeLock}.
+     *
+     * @param segment
+     * @param offset
+     * @return the slot that has been replaced or {@link #EMPTY} if the user is new
+     */
+    private long insert(Segment segment, int offset) {
+        if (indexSize + 1 > index.length * MAX_INDEX_LOAD) {
+            grow();
+        }
+
+        long[] table = index;
+        int mask = table.length - 1;
+        long hash = hash(segment.buffer, offset);
+        long tag = tag(hash);
+        long newSlot = slot(hash, segment.id, offset);
+        for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+            long slot = table[i];
+            if (slot == EMPTY) {
+                SLOTS.setRelease(table, i, newSlot);
+                indexSize++;
+                return EMPTY;
+            }
+            if ((slot >>> TAG_SHIFT) == tag) {
+                Segment other = segment(segmentId(slot));
+                if (sameEmail(other, offset(slot), segment, offset)) {
+                    SLOTS.setRelease(table, i, newSlot);
+                    return slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the capacity of the index. Readers keep using the old index until the new one is
+     * published.
+     */
+    private void grow() {
+        long[] table = index;
+        long[] grown = new long[table.length * 2];
+        int mask = grown.length - 1;
+        for (long slot : table) {
+            if (slot != EMPTY) {
+                long hash = hash(segment(segmentId(slot)).buffer, offset(slot));
+                int i = (int) hash & mask;
+                while (grown[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                grown[i] = slot;
+            }
+        }
+        index = grown;
+    }
+
+    /**
+     * Returns the active segment if it has enough space left or starts a new one.
+     *
+     * @param recordSize
+     * @return
+     */
+    private Segment segmentWithSpaceFor(int recordSize) {
+        // Leave room for the end marker
+        if (activeSegment.writePosition + recordSize + 4 > activeSegment.buffer.capacity()) {
+            if (recordSize + 4 > segmentSize) {
+                throw new IllegalArgumentException("User too large for a segment");
+            }
+            try {
+                activeSegment = openSegment(activeSegment.id + 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            addSegment(activeSegment);
+        }
+        return activeSegment;
+    }
+
+    private Segment segment(int id) {
+        Segment[] current = segments;
+        return id < current.length ? current[id] : null;
+    }
+
+    private void addSegment(Segment segment) {
+        Segment[] current = segments;
+        Segment[] updated = Arrays.copyOf(current, Math.max(current.length, segment.id + 1));
+        updated[segment.id] = segment;
+        segments = updated;
+    }
+
+    private void removeSegment(Segment segment) {
+        Segment[] updated = segments.clone();
+        updated[segment.id] = null;
+        segments = updated;
+    }
+
+    @Override
+    public void start() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        // Segments have to be replayed in the order they were written
+        Map<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+
+        writeLock.lock();
+        try {
+            for (Integer id : files.keySet()) {
+                activeSegment = openSegment(id);
+                addSegment(activeSegment);
+                scan(activeSegment);
+            }
+            if (activeSegment == null) {
+                activeSegment = openSegment(1);
+                addSegment(activeSegment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        LOG.info("Opened " + size() + " users from " + files.size() + " segments in "
+                + directory + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms");
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-storage-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, COMPACTION_CHECK_INTERVAL_SECONDS,
+                COMPACTION_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        writeLock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment != null) {
+                    segment.buffer.force();
+                    segment.channel.close();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        if (id > MAX_SEGMENT_ID) {
+            throw new IOException("Maximum number of segments reached");
+        }
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentSize);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new Segment(id, file, channel, buffer);
+    }
+
+    /**
+     * Adds all records of the given segment to the index. Stops at the end marker or at the
+     * first damaged record. Has to be called holding the {@link #writeLock}.
+     *
+     * @param segment
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        // View reused for every record
+        ByteBuffer payload = buffer.duplicate();
+
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int payloadLength = buffer.getInt(position);
+            if (payloadLength <= 0
+                    || position + RECORD_HEADER_SIZE + payloadLength > buffer.capacity()) {
+                break;
+            }
+
+            payload.limit(position + RECORD_HEADER_SIZE + payloadLength);
+            payload.position(position + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOG.warning("Segment " + segment.file + " is damaged at offset " + position);
+                break;
+            }
+
+            segment.liveBytes.addAndGet(RECORD_HEADER_SIZE + payloadLength);
+            long previous = insert(segment, position);
+            if (previous != EMPTY) {
+                release(previous);
+            }
+            position += RECORD_HEADER_SIZE + payloadLength;
+        }
+        segment.writePosition = position;
+        // Clear a damaged record so it does not hide records written after it
+        if (position + 4 <= buffer.capacity()) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    /**
+     * Compacts all sealed segments that mostly contain stale versions of users.
+     */
+    private void compact() {
+        List<Segment> candidates = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment != null && segment != activeSegment
+                        && segment.liveBytes.get() < segment.writePosition * COMPACTION_LIVE_RATIO) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (Segment segment : candidates) {
+            try {
+                compact(segment);
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.SEVERE, "Failed to compact segment " + segment.file, e);
+            }
+        }
+    }
+
+    /**
+     * Copies all current versions of users out of the given segment and deletes it.
+     *
+     * @param segment
+     * @throws IOException
+     */
+    private void compact(Segment segment) throws IOException {
+        int position = 0;
+        while (position < segment.writePosition) {
+            int recordSize = recordSize(segment, position);
+
+            writeLock.lock();
+            try {
+                // Only the current version of a user is copied. Each record is copied while
+                // holding the lock so a concurrent update can't get lost.
+                if (isCurrent(segment, position)) {
+                    Segment target = segmentWithSpaceFor(recordSize);
+                    ByteBuffer source = segment.buffer.duplicate();
+                    source.position(position + RECORD_HEADER_SIZE);
+                    source.limit(position + recordSize);
+                    ByteBuffer destination = target.buffer.duplicate();
+                    destination.position(target.writePosition + RECORD_HEADER_SIZE);
+                    destination.put(source);
+                    publish(target, target.writePosition, recordSize - RECORD_HEADER_SIZE);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            position += recordSize;
+        }
+
+        writeLock.lock();
+        try {
+            removeSegment(segment);
+        } finally {
+            writeLock.unlock();
+        }
+        // The mapping stays valid for readers that still hold it until it is garbage collected
+        segment.channel.close();
+        Files.delete(segment.file);
+        LOG.info("Compacted segment " + segment.file);
+    }
+
+    /**
+     * Checks whether the index points to the record at the given location.
+     *
+     * @param segment
+     * @param offset
+     * @return
+     */
+    private boolean isCurrent(Segment segment, int offset) {
+        long[] table = index;
+        int mask = table.length - 1;
+        long hash = hash(segment.buffer, offset);
+        long expected = slot(hash, segment.id, offset);
+        for (int i = (int) hash & mask;; i = (i + 1) & mask) {
+            long slot = table[i];
+            if (slot == EMPTY) {
+                return false;
+            }
+            if (slot == expected) {
+                return true;
+            }
+        }
+    }
+
+    private int recordSize(Segment segment, int offset) {
+        return RECORD_HEADER_SIZE + segment.buffer.getInt(offset);
+    }
+
+    /**
+     * Compares the email of the record at the given offset with the given email, ignoring the
+     * case of ASCII letters.
+     */
+    private static boolean emailEquals(Segment segment, int offset, byte[] email) {
+        ByteBuffer buffer = segment.buffer;
+        int position = offset + RECORD_HEADER_SIZE;
+        if (buffer.getShort(position) != email.length) {
+            return false;
+        }
+        position += 2;
+        for (int i = 0; i < email.length; i++) {
+            if (toLowerCase(buffer.get(position + i)) != toLowerCase(email[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the emails of two records, ignoring the case of ASCII letters.
+     */
+    private static boolean sameEmail(Segment segment, int offset, Segment otherSegment,
+            int otherOffset) {
+        ByteBuffer buffer = segment.buffer;
+        ByteBuffer other = otherSegment.buffer;
+        int position = offset + RECORD_HEADER_SIZE;
+        int otherPosition = otherOffset + RECORD_HEADER_SIZE;
+        short length = buffer.getShort(position);
+        if (length != other.getShort(otherPosition)) {
+            return false;
+        }
+        for (int i = 2; i < length + 2; i++) {
+            if (toLowerCase(buffer.get(position + i))
+                    != toLowerCase(other.get(otherPosition + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash of the email of the record at the given offset. Equals {@link #hash(byte[])} of the
+     * same email.
+     */
+    private static long hash(ByteBuffer buffer, int offset) {
+        int position = offset + RECORD_HEADER_SIZE;
+        int length = buffer.getShort(position);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (toLowerCase(buffer.get(position + 2 + i)) & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(byte[] email) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : email) {
+            hash = (hash ^ (toLowerCase(b) & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * @return the byte in lower case if it is an ASCII letter. Bytes of multi-byte UTF-8
+     *         characters are never changed.
+     */
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Spreads the bits of an FNV-1a hash so both the low bits (table position) and the high
+     * bits (tag) are usable.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long tag(long hash) {
+        return hash >>> TAG_SHIFT;
+    }
+
+    private static long slot(long hash, int segmentId, int offset) {
+        return (tag(hash) << TAG_SHIFT) | ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long slot) {
+        return (int) (slot >>> 32) & MAX_SEGMENT_ID;
+    }
+
+    private static int offset(long slot) {
+        return (int) slot;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void put(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
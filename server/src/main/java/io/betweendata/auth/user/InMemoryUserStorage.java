@@ -1,12 +1,17 @@
 package io.betweendata.auth.user;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Simple in-memory storage to manage user data.<br>
  * <b>Attention:</b> This implementation is only meant for testing and should
- * only be used for unit tests or development.
+ * only be used for unit tests or development.<br>
+ * The storage is safe to be used by multiple threads.<br>
+ * Users are stored under their canonical email (see {@link User#canonicalEmail(String)}), so
+ * the case of the email doesn't matter.
  * 
  * @author christian
  *
@@ -17,7 +22,9 @@ public class InMemoryUserStorage implements UserStorage {
     private InMemoryUserStorage() {
     }
 
-    private Map<String, User> users = new HashMap<String, User>();
+    private Map<String, User> users = new ConcurrentHashMap<String, User>();
+
+    private List<UserUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
 
     public static UserStorage getInstance() {
 	return instance;
@@ -25,7 +32,12 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public void saveUser(User user) {
-	users.put(user.getEmail(), user);
+	users.put(User.canonicalEmail(user.getEmail()), user);
+    }
+
+    @Override
+    public boolean saveUserIfAbsent(User user) {
+	return users.putIfAbsent(User.canonicalEmail(user.getEmail()), user) == null;
     }
 
     /**
@@ -38,7 +50,10 @@ public class InMemoryUserStorage implements UserStorage {
      */
     @Override
     public User loadUser(String email) {
-	User userFromStorage = users.get(email);
+	if (email == null) {
+	    return null;
+	}
+	User userFromStorage = users.get(User.canonicalEmail(email));
 
 	if (userFromStorage == null) {
 	    return userFromStorage;
@@ -55,7 +70,22 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public void updateUser(User user) {
-	users.replace(user.getEmail(), user);
+	if (users.replace(User.canonicalEmail(user.getEmail()), user) != null) {
+	    updateListeners.forEach(listener -> listener.userUpdated(user.getEmail()));
+	}
+    }
+
+    @Override
+    public void addUpdateListener(UserUpdateListener listener) {
+	updateListeners.add(listener);
+    }
+
+    /**
+     * @return number of users stored
+     */
+    @Override
+    public int size() {
+	return users.size();
     }
 
 }
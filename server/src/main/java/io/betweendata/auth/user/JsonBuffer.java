@@ -0,0 +1,229 @@
+package io.betweendata.auth.user;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Buffer the JSON object of a response with known fields is written to. Field names are
+ * encoded once up front (see {@link #name(String)}) and values are escaped and formatted the
+ * way the Jackson provider does it, so the result is byte-identical to its JSON.<br>
+ * Each thread reuses its buffer, see {@link #get()}.
+ */
+final class JsonBuffer {
+    /**
+     * Buffers that have grown larger than this are not kept after use.
+     */
+    private static final int MAX_RETAINED_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<JsonBuffer> BUFFERS =
+            ThreadLocal.withInitial(JsonBuffer::new);
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes = new byte[1024];
+    private int length;
+    private boolean firstField;
+
+    private JsonBuffer() {
+    }
+
+    /**
+     * @return the empty buffer of the current thread
+     */
+    static JsonBuffer get() {
+        JsonBuffer buffer = BUFFERS.get();
+        if (buffer.bytes.length > MAX_RETAINED_SIZE) {
+            buffer.bytes = new byte[1024];
+        }
+        buffer.length = 0;
+        return buffer;
+    }
+
+    /**
+     * @param name
+     * @return the encoded field name including the colon
+     */
+    static byte[] name(String name) {
+        return ("\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    JsonBuffer beginObject() {
+        append((byte) '{');
+        firstField = true;
+        return this;
+    }
+
+    JsonBuffer endObject() {
+        append((byte) '}');
+        return this;
+    }
+
+    /**
+     * @param name  - encoded by {@link #name(String)}
+     * @param value
+     * @return
+     */
+    JsonBuffer field(byte[] name, String value) {
+        appendName(name);
+        if (value == null) {
+            append(NULL);
+        } else {
+            appendString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the value in the ISO-8601 format of
+     * {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}: the seconds are always written, the
+     * fraction only as far as it isn't zero.
+     *
+     * @param name  - encoded by {@link #name(String)}
+     * @param value
+     * @return
+     */
+    JsonBuffer field(byte[] name, LocalDateTime value) {
+        appendName(name);
+        if (value == null) {
+            append(NULL);
+        } else if (value.getYear() < 0 || value.getYear() > 9999) {
+            // Signed years are rare enough to leave them to the formatter
+            appendString(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(value));
+        } else {
+            ensureCapacity(31);
+            bytes[length++] = '"';
+            appendDigits(value.getYear(), 4);
+            bytes[length++] = '-';
+            appendDigits(value.getMonthValue(), 2);
+            bytes[length++] = '-';
+            appendDigits(value.getDayOfMonth(), 2);
+            bytes[length++] = 'T';
+            appendDigits(value.getHour(), 2);
+            bytes[length++] = ':';
+            appendDigits(value.getMinute(), 2);
+            bytes[length++] = ':';
+            appendDigits(value.getSecond(), 2);
+            int nano = value.getNano();
+            if (nano != 0) {
+                int digits = 9;
+                while (nano % 10 == 0) {
+                    nano /= 10;
+                    digits--;
+                }
+                bytes[length++] = '.';
+                appendDigits(nano, digits);
+            }
+            bytes[length++] = '"';
+        }
+        return this;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    private void appendName(byte[] name) {
+        if (!firstField) {
+            append((byte) ',');
+        }
+        firstField = false;
+        append(name);
+    }
+
+    /**
+     * Appends the quoted string. Quotes, backslashes, control characters and surrogates are
+     * escaped, everything else is encoded as UTF-8.
+     */
+    private void appendString(String value) {
+        // Worst case: every character written as a six byte unicode escape
+        ensureCapacity(2 + 6 * value.length());
+        byte[] bytes = this.bytes;
+        int length = this.length;
+        bytes[length++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x80) {
+                bytes[length++] = '\\';
+                switch (c) {
+                case '"':
+                case '\\':
+                    bytes[length++] = (byte) c;
+                    break;
+                case '\b':
+                    bytes[length++] = 'b';
+                    break;
+                case '\t':
+                    bytes[length++] = 't';
+                    break;
+                case '\n':
+                    bytes[length++] = 'n';
+                    break;
+                case '\f':
+                    bytes[length++] = 'f';
+                    break;
+                case '\r':
+                    bytes[length++] = 'r';
+                    break;
+                default:
+                    bytes[length++] = 'u';
+                    bytes[length++] = '0';
+                    bytes[length++] = '0';
+                    bytes[length++] = HEX[c >> 4];
+                    bytes[length++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                // Like Jackson surrogates are escaped instead of encoding their code point
+                bytes[length++] = '\\';
+                bytes[length++] = 'u';
+                bytes[length++] = HEX[c >> 12];
+                bytes[length++] = HEX[(c >> 8) & 0xF];
+                bytes[length++] = HEX[(c >> 4) & 0xF];
+                bytes[length++] = HEX[c & 0xF];
+            }
+        }
+        bytes[length++] = '"';
+        this.length = length;
+    }
+
+    /**
+     * Appends the value left padded with zeros to the given number of digits.
+     */
+    private void appendDigits(int value, int digits) {
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void append(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+    }
+
+    private void append(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, length, b.length);
+        length += b.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + additional));
+        }
+    }
+}
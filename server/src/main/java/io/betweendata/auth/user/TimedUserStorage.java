@@ -0,0 +1,93 @@
+package io.betweendata.auth.user;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.betweendata.auth.service.Timers;
+
+/**
+ * Measures the time the operations of another {@link UserStorage} take. The timers are named
+ * after the class of the measured storage, i.e.
+ * <i>io.betweendata.auth.user.FileUserStorage.load</i>:
+ * <ul>
+ * <li><i>load</i>: {@link #loadUser(String)}</li>
+ * <li><i>save</i>: {@link #saveUser(User)} and {@link #saveUserIfAbsent(User)}</li>
+ * <li><i>update</i>: {@link #updateUser(User)}</li>
+ * </ul>
+ */
+public class TimedUserStorage implements UserStorage {
+    private final UserStorage storage;
+
+    private final Timer loadTimer;
+    private final Timer saveTimer;
+    private final Timer updateTimer;
+
+    /**
+     * @param storage - the storage to measure
+     * @param metrics
+     */
+    public TimedUserStorage(UserStorage storage, MetricRegistry metrics) {
+        this.storage = storage;
+        loadTimer = Timers.timer(metrics, MetricRegistry.name(storage.getClass(), "load"));
+        saveTimer = Timers.timer(metrics, MetricRegistry.name(storage.getClass(), "save"));
+        updateTimer =
+                Timers.timer(metrics, MetricRegistry.name(storage.getClass(), "update"));
+    }
+
+    /**
+     * @return the measured storage
+     */
+    public UserStorage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public void saveUser(User user) {
+        Timer.Context context = saveTimer.time();
+        try {
+            storage.saveUser(user);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public boolean saveUserIfAbsent(User user) {
+        Timer.Context context = saveTimer.time();
+        try {
+            return storage.saveUserIfAbsent(user);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public User loadUser(String email) {
+        Timer.Context context = loadTimer.time();
+        try {
+            return storage.loadUser(email);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void updateUser(User user) {
+        Timer.Context context = updateTimer.time();
+        try {
+            storage.updateUser(user);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void addUpdateListener(UserUpdateListener listener) {
+        storage.addUpdateListener(listener);
+    }
+
+    @Override
+    public int size() {
+        return storage.size();
+    }
+}
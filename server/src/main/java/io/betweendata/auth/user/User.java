@@ -44,4 +44,38 @@ public class User implements Principal {
     public String getName() {
 	return email;
     }
+
+    /**
+     * Returns the key users are stored under and token are issued for: the email with all
+     * ASCII letters in lower case. Valid emails only consist of ASCII characters (see
+     * {@link UserAuthenticationValidator#isEmailValid(String)}). An email already in lower case
+     * is returned as it is.
+     *
+     * @param email
+     * @return
+     */
+    public static String canonicalEmail(String email) {
+	if (email == null) {
+	    return null;
+	}
+	for (int i = 0; i < email.length(); i++) {
+	    char c = email.charAt(i);
+	    if (c >= 'A' && c <= 'Z') {
+		char[] chars = email.toCharArray();
+		for (int j = i; j < chars.length; j++) {
+		    chars[j] = toLowerCase(chars[j]);
+		}
+		return new String(chars);
+	    }
+	}
+	return email;
+    }
+
+    /**
+     * @param c
+     * @return the character in lower case if it is an ASCII letter
+     */
+    private static char toLowerCase(char c) {
+	return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
 }
@@ -1,8 +1,15 @@
 package io.betweendata.auth.user;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.security.RolesAllowed;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
@@ -11,21 +18,35 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 
+import org.glassfish.jersey.server.ManagedAsync;
+
 import com.codahale.metrics.annotation.Timed;
 
+import io.betweendata.auth.service.HashingService;
+import io.betweendata.auth.service.LoginThrottle;
 import io.betweendata.auth.service.PasswordService;
+import io.betweendata.auth.service.RequestExecutorProvider;
 import io.betweendata.auth.service.ServiceLocator;
 import io.betweendata.auth.service.TokenService;
-import io.betweendata.auth.token.InMemoryRefreshTokenCache;
+import io.betweendata.auth.token.IssuedToken;
 import io.betweendata.auth.token.RefreshTokenRequestData;
+import io.betweendata.auth.token.TokenId;
+import io.betweendata.auth.token.VerifiedToken;
+import io.dropwizard.util.Duration;
 
 /**
- * Definition of the end-points provided by this service.
+ * Definition of the end-points provided by this service.<br>
+ * Login and register load and store users before and after hashing, so they run on the
+ * executor of the {@link RequestExecutorProvider}.
  * 
  * @author christian
  *
@@ -34,12 +55,25 @@ import io.betweendata.auth.token.RefreshTokenRequestData;
 public class UserAuthenticationResource {
     private static final Logger LOG = Logger.getLogger(UserAuthenticationResource.class.getName());
 
-    public UserAuthenticationResource() {
+    /**
+     * Not part of {@link Status} in JAX-RS 2.0.
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final Duration retryAfter;
 
+    /**
+     * @param retryAfter - sent to clients rejected because the {@link HashingService} is
+     *                   overloaded
+     */
+    public UserAuthenticationResource(Duration retryAfter) {
+	this.retryAfter = retryAfter;
     }
 
     /**
-     * End-point to refresh an access token using a refresh token.
+     * End-point to refresh an access token using a refresh token.<br>
+     * The refresh token is only looked up in memory and kept, nothing is written to the refresh
+     * token cache, so this never waits for the disk and runs on the request thread.
      * 
      * @param requestData
      * @return
@@ -51,98 +85,208 @@ public class UserAuthenticationResource {
     @Path("/refresh")
     public UserAuthenticationResponse refresh(@NotNull RefreshTokenRequestData requestData) {
 
+	TokenService tokenService = ServiceLocator.get().getTokenService();
+
+	// Verify the refresh token once and work with its claims from here on
+	Optional<VerifiedToken> refreshToken = tokenService.verify(requestData.getRefreshToken());
+	if (refreshToken.isEmpty()) {
+	    throw new WebApplicationException(Status.FORBIDDEN);
+	}
+
 	// Check if we "know" the refresh token
-	if (!InMemoryRefreshTokenCache.getInstance().exists(requestData.getRefreshToken())) {
+	if (!ServiceLocator.get().getRefreshTokenCache().exists(TokenId.of(refreshToken.get()))) {
 	    // If we don't know the refresh token we will not issue an new access token
 	    throw new WebApplicationException(Status.FORBIDDEN);
 	}
+	String emailFromToken = refreshToken.get().getEmail();
 
-	TokenService tokenService = ServiceLocator.get().getTokenService();
-	String emailFromToken = tokenService.extractClaimEmail(requestData.getRefreshToken());
-
-	// Issue a new refresh token
-	String accessToken = ServiceLocator.get().getTokenService().createAccessToken(emailFromToken);
+	// Issue a new access token
+	IssuedToken accessToken = tokenService.createAccessToken(emailFromToken);
 
-	return new UserAuthenticationResponse(emailFromToken, accessToken, requestData.getRefreshToken(),
-		ServiceLocator.get().getTokenService().getClaimExpiresAt(accessToken));
+	return new UserAuthenticationResponse(emailFromToken, accessToken.getToken(), requestData.getRefreshToken(),
+		LocalDateTime.ofInstant(accessToken.getExpiresAt(), ZoneOffset.UTC));
     }
 
     /**
-     * End-point allowing a user to log in.
+     * End-point allowing a user to log in.<br>
+     * The password is verified by the {@link HashingService}. The request thread is released
+     * in the meantime. Attempts are throttled per email and client address by the
+     * {@link LoginThrottle}.
      * 
+     * @param asyncResponse
+     * @param request
      * @param requestData
-     * @return
      */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Timed
+    @ManagedAsync
     @Path("/login")
-    public UserAuthenticationResponse login(@NotNull UserAuthenticationRequestData requestData) {
+    public void login(@Suspended AsyncResponse asyncResponse, @Context HttpServletRequest request,
+	    @NotNull UserAuthenticationRequestData requestData) {
+
+	// Emails are case insensitive, all further steps work with the canonical email
+	String email = User.canonicalEmail(requestData.getEmail());
+
+	// Reject clients exceeding their attempts before anything is hashed
+	LoginThrottle loginThrottle = ServiceLocator.get().getLoginThrottle();
+	throttle(loginThrottle.acquireAddress(request.getRemoteAddr()));
+	throttle(loginThrottle.acquireAccount(email));
 
 	// Load the user (if it exists)
-	User user = InMemoryUserStorage.getInstance().loadUser(requestData.getEmail());
+	User user = ServiceLocator.get().getUserStorage().loadUser(email);
 
 	if (user == null) {
 	    throw new WebApplicationException(Status.UNAUTHORIZED);
 	}
 
 	// Hash the password
-	try {
-	    if (!ServiceLocator.get().getPasswordService().verifyPassword(requestData.getPassword(),
-		    user.getPasswordHash())) {
-		throw new WebApplicationException(Status.UNAUTHORIZED);
+	hash(asyncResponse, () -> {
+	    try {
+		if (!ServiceLocator.get().getPasswordService().verifyPassword(requestData.getPassword(),
+			user.getPasswordHash())) {
+		    throw new WebApplicationException(Status.UNAUTHORIZED);
+		}
+	    } catch (PasswordService.CannotPerformOperationException | PasswordService.InvalidHashException e) {
+		throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
 	    }
-	} catch (PasswordService.CannotPerformOperationException | PasswordService.InvalidHashException e) {
-	    throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
-	}
 
-	// If we get there the user exists and has entered the correct password
-	// We can now create the response containing the tokens authenticating the user
-	// is subsequent requests
-	return UserAuthenticationResponse.create(user.getEmail());
+	    // If we get there the user exists and has entered the correct password
+	    // We can now create the response containing the tokens authenticating the user
+	    // is subsequent requests
+	    UserAuthenticationResponse response = UserAuthenticationResponse.create(user.getEmail());
+
+	    // The password is known now. Use the chance to upgrade an outdated hash.
+	    if (ServiceLocator.get().getPasswordService().needsRehash(user.getPasswordHash())) {
+		rehash(user, requestData.getPassword());
+	    }
+
+	    return response;
+	});
     }
 
+    /**
+     * End-point allowing a user to register.<br>
+     * The password is hashed by the {@link HashingService}. The request thread is released in
+     * the meantime. Attempts are throttled per client address by the {@link LoginThrottle}.
+     * 
+     * @param asyncResponse
+     * @param request
+     * @param userAuthenticationRequestData
+     */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Timed
+    @ManagedAsync
     @Path("/register")
-    public UserAuthenticationResponse register(
+    public void register(@Suspended AsyncResponse asyncResponse, @Context HttpServletRequest request,
 	    @NotNull @Valid UserAuthenticationRequestData userAuthenticationRequestData) {
+	// Reject clients exceeding their attempts before anything is hashed
+	throttle(ServiceLocator.get().getLoginThrottle().acquireAddress(request.getRemoteAddr()));
+
 	User user = new User();
 
 	// Validate email address
 	if (!UserAuthenticationValidator.isEmailValid(userAuthenticationRequestData.getEmail())) {
 	    throw new WebApplicationException("Invalid email", Status.BAD_REQUEST);
 	}
-	user.setEmail(userAuthenticationRequestData.getEmail());
+	// Emails are case insensitive, the user is stored and token are issued for the
+	// canonical email
+	user.setEmail(User.canonicalEmail(userAuthenticationRequestData.getEmail()));
 
 	// Validate the password
 	if (!UserAuthenticationValidator.isPasswordValid(userAuthenticationRequestData.getPassword())) {
 	    throw new WebApplicationException("Invalid password", Status.BAD_REQUEST);
 	}
 
-	// Hash the password
-	try {
-	    String hashedPassword = ServiceLocator.get().getPasswordService()
-		    .createHash(userAuthenticationRequestData.getPassword());
-	    user.setPasswordHash(hashedPassword);
-	} catch (PasswordService.CannotPerformOperationException e) {
-	    throw new WebApplicationException(Status.BAD_REQUEST);
+	UserStorage userStorage = ServiceLocator.get().getUserStorage();
+
+	// Check that the email is not already registered. This is done before hashing
+	// the password to not waste the time on a request that will fail anyway.
+	if (userStorage.loadUser(user.getEmail()) != null) {
+	    throw new WebApplicationException("Email already registered", Status.BAD_REQUEST);
 	}
 
-	UserStorage userStorage = InMemoryUserStorage.getInstance();
+	// Hash the password
+	hash(asyncResponse, () -> {
+	    try {
+		String hashedPassword = ServiceLocator.get().getPasswordService()
+			.createHash(userAuthenticationRequestData.getPassword());
+		user.setPasswordHash(hashedPassword);
+	    } catch (PasswordService.CannotPerformOperationException e) {
+		throw new WebApplicationException(Status.BAD_REQUEST);
+	    }
 
-	// Check that the email is not already registered
-	if (userStorage.loadUser(userAuthenticationRequestData.getEmail()) != null) {
-	    throw new WebApplicationException("Email already registered", Status.BAD_REQUEST);
+	    // Save the new user. Another request might have registered the same email while
+	    // the password was hashed, so the save only succeeds if the email is still free.
+	    if (!userStorage.saveUserIfAbsent(user)) {
+		throw new WebApplicationException("Email already registered", Status.BAD_REQUEST);
+	    }
+
+	    return UserAuthenticationResponse.create(user.getEmail());
+	});
+    }
+
+    /**
+     * Hashes the given password with the current parameters and stores the new hash. This runs
+     * on the {@link HashingService} after the response has been sent. If the hashing service is
+     * overloaded the upgrade is skipped and tried again on the next login.
+     * 
+     * @param user
+     * @param password - the verified password of the user
+     */
+    private void rehash(User user, String password) {
+	try {
+	    ServiceLocator.get().getHashingService().submit(() -> {
+		user.setPasswordHash(ServiceLocator.get().getPasswordService().createHash(password));
+		ServiceLocator.get().getUserStorage().updateUser(user);
+		return null;
+	    }).whenComplete((result, e) -> {
+		if (e != null) {
+		    LOG.log(Level.WARNING, "Failed to upgrade password hash", e);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    LOG.fine("Hashing service overloaded, password hash upgrade skipped");
 	}
+    }
 
-	// Save the new user
-	userStorage.saveUser(user);
+    /**
+     * Rejects the request with <i>429 Too Many Requests</i> if the {@link LoginThrottle} did
+     * not allow the attempt.
+     * 
+     * @param waitMillis - as returned by the {@link LoginThrottle}
+     */
+    private void throttle(long waitMillis) {
+	if (waitMillis > 0) {
+	    throw new WebApplicationException(Response.status(TOO_MANY_REQUESTS)
+		    .header(HttpHeaders.RETRY_AFTER, (waitMillis + 999) / 1000).build());
+	}
+    }
 
-	return UserAuthenticationResponse.create(user.getEmail());
+    /**
+     * Runs the given task on the {@link HashingService} and resumes the response with its
+     * result. If the hashing service is overloaded the request is rejected with <i>503 Service
+     * Unavailable</i>.
+     * 
+     * @param asyncResponse
+     * @param task
+     */
+    private void hash(AsyncResponse asyncResponse, Callable<UserAuthenticationResponse> task) {
+	try {
+	    ServiceLocator.get().getHashingService().submit(task).whenComplete((response, e) -> {
+		if (e != null) {
+		    asyncResponse.resume(e);
+		} else {
+		    asyncResponse.resume(response);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+		    .header(HttpHeaders.RETRY_AFTER, retryAfter.toSeconds()).build());
+	}
     }
 
     @RolesAllowed({ "USER" })
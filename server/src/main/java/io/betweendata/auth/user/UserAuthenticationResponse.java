@@ -1,12 +1,14 @@
 package io.betweendata.auth.user;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.betweendata.auth.service.ServiceLocator;
 import io.betweendata.auth.service.TokenService;
-import io.betweendata.auth.token.InMemoryRefreshTokenCache;
+import io.betweendata.auth.token.IssuedToken;
+import io.betweendata.auth.token.TokenId;
 
 /**
  * Response to an authentication request (login/register) containing all info
@@ -69,15 +71,15 @@ public class UserAuthenticationResponse {
 	TokenService tokenService = ServiceLocator.get().getTokenService();
 
 	// Create access token
-	String accessToken = tokenService.createAccessToken(email);
+	IssuedToken accessToken = tokenService.createAccessToken(email);
 
 	// Create refresh token
-	String refreshToken = tokenService.createRefreshToken(email);
+	IssuedToken refreshToken = tokenService.createRefreshToken(email);
 
 	// Remember the refresh token in the cache
-	InMemoryRefreshTokenCache.getInstance().add(refreshToken);
+	ServiceLocator.get().getRefreshTokenCache().add(TokenId.of(refreshToken), refreshToken.getExpiresAt());
 
-	return new UserAuthenticationResponse(email, accessToken, refreshToken,
-		tokenService.getClaimExpiresAt(accessToken));
+	return new UserAuthenticationResponse(email, accessToken.getToken(), refreshToken.getToken(),
+		LocalDateTime.ofInstant(accessToken.getExpiresAt(), ZoneOffset.UTC));
     }
 }
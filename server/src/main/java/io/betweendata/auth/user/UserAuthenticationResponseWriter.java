@@ -0,0 +1,64 @@
+package io.betweendata.auth.user;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+/**
+ * Writes the {@link UserAuthenticationResponse} of <i>/login</i>, <i>/register</i> and
+ * <i>/refresh</i> as JSON without going through Jackson. The JSON is byte-identical to the one
+ * of the Jackson provider (with dates written as ISO-8601 strings), see {@link JsonBuffer}.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+public class UserAuthenticationResponseWriter
+        implements MessageBodyWriter<UserAuthenticationResponse> {
+
+    private static final byte[] EMAIL = JsonBuffer.name("email");
+    private static final byte[] ACCESS_TOKEN = JsonBuffer.name("accessToken");
+    private static final byte[] EXPIRES_AT = JsonBuffer.name("expiresAt");
+    private static final byte[] REFRESH_TOKEN = JsonBuffer.name("refreshToken");
+
+    /**
+     * Writes the JSON of the given response.
+     *
+     * @param response
+     * @param out
+     * @throws IOException
+     */
+    public void write(UserAuthenticationResponse response, OutputStream out) throws IOException {
+        JsonBuffer.get().beginObject()
+                .field(EMAIL, response.getEmail())
+                .field(ACCESS_TOKEN, response.getAccessToken())
+                .field(EXPIRES_AT, response.getExpiresAt())
+                .field(REFRESH_TOKEN, response.getRefreshToken())
+                .endObject()
+                .writeTo(out);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+        return type == UserAuthenticationResponse.class
+                && MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(UserAuthenticationResponse response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(UserAuthenticationResponse response, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        write(response, entityStream);
+    }
+}
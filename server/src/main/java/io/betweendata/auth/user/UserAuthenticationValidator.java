@@ -1,16 +1,22 @@
 package io.betweendata.auth.user;
 
 /**
- * Contains methods to validate data related to the user authentication process.
- * 
+ * Contains methods to validate data related to the user authentication process.<br>
+ * Each of them checks the input in a single pass without allocating anything.
+ *
  * @author christian
  *
  */
 public class UserAuthenticationValidator {
 
+	/**
+	 * Scheme of the authorization header carrying an access token.
+	 */
+	public static final String BEARER_PREFIX = "Bearer ";
+
 	/**
 	 * Validates that the given email is a valid format.<br>
-	 * 
+	 *
 	 * A valid email fulfills the following requirements:
 	 * <ul>
 	 * <li>Contains an "@" (at) symbol</li>
@@ -19,12 +25,44 @@ public class UserAuthenticationValidator {
 	 * <li>Has at least one character between the "@" and "."</li>
 	 * <li>Has at least to two characters after the "."</li>
 	 * </ul>
-	 * 
+	 * Apart from the "@" only ASCII letters, digits, "_", "-" and "." are allowed. The part
+	 * after the last "." consists of two to five letters. This accepts the same emails as the
+	 * pattern
+	 * <code>^([a-zA-Z0-9_\-\.]+)@([a-zA-Z0-9_\-\.]+)\.([a-zA-Z]{2,5})$</code>.
+	 *
 	 * @param email - the email address to validate
 	 * @return
 	 */
 	public static boolean isEmailValid(String email) {
-		return email.matches("^([a-zA-Z0-9_\\-\\.]+)@([a-zA-Z0-9_\\-\\.]+)\\.([a-zA-Z]{2,5})$");
+		if (email == null) {
+			return false;
+		}
+		int at = -1;
+		int lastDot = -1;
+		boolean lettersSinceLastDot = false;
+		for (int i = 0; i < email.length(); i++) {
+			char c = email.charAt(i);
+			if (c == '@') {
+				if (at >= 0) {
+					return false;
+				}
+				at = i;
+			} else if (c == '.') {
+				if (at >= 0) {
+					lastDot = i;
+					lettersSinceLastDot = true;
+				}
+			} else if (isLetter(c)) {
+				// Nothing to do, letters are allowed everywhere
+			} else if ((c >= '0' && c <= '9') || c == '_' || c == '-') {
+				lettersSinceLastDot = false;
+			} else {
+				return false;
+			}
+		}
+		int topLevelDomain = email.length() - lastDot - 1;
+		return at >= 1 && lastDot >= at + 2 && lettersSinceLastDot && topLevelDomain >= 2
+				&& topLevelDomain <= 5;
 	}
 
 	/**
@@ -33,11 +71,28 @@ public class UserAuthenticationValidator {
 	 * <ul>
 	 * <li>Consists out of at least 4 characters</li>
 	 * </ul>
-	 * 
+	 *
 	 * @param password - the password to validate
 	 * @return
 	 */
 	public static boolean isPasswordValid(String password) {
-		return password.length() >= 4;
+		return password != null && password.length() >= 4;
+	}
+
+	/**
+	 * Validates that the given authorization header carries a bearer token: it starts with
+	 * {@link #BEARER_PREFIX} followed by at least one character. The token itself is checked
+	 * when it is verified.
+	 *
+	 * @param authHeader
+	 * @return
+	 */
+	public static boolean isBearerHeaderValid(String authHeader) {
+		return authHeader != null && authHeader.length() > BEARER_PREFIX.length()
+				&& authHeader.startsWith(BEARER_PREFIX);
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
 	}
 }
@@ -11,8 +11,35 @@ public interface UserStorage {
 
     public void saveUser(User user);
 
+    /**
+     * Saves the given user unless a user with the same email already exists. The
+     * check and the save happen atomically.
+     *
+     * @param user
+     * @return <code>true</code> if the user has been saved, <code>false</code> if
+     *         the email is already taken
+     */
+    public boolean saveUserIfAbsent(User user);
+
+    /**
+     * @param email
+     * @return the user with the given email or <code>null</code> if there is none (or the
+     *         email is <code>null</code>)
+     */
     public User loadUser(String email);
 
     public void updateUser(User user);
 
+    /**
+     * Registers a listener that is notified after a user has been updated.
+     *
+     * @param listener
+     */
+    public void addUpdateListener(UserUpdateListener listener);
+
+    /**
+     * @return number of users stored
+     */
+    public int size();
+
 }
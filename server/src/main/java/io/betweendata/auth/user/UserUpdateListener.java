@@ -0,0 +1,15 @@
+package io.betweendata.auth.user;
+
+/**
+ * Listener that gets notified by a {@link UserStorage} whenever a user has been updated.
+ */
+@FunctionalInterface
+public interface UserUpdateListener {
+
+    /**
+     * Called after the user with the given email has been updated.
+     *
+     * @param email
+     */
+    void userUpdated(String email);
+}
@@ -0,0 +1,61 @@
+package io.betweendata.auth.user;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+/**
+ * Writes the {@link User} of <i>/user</i> as JSON without going through Jackson. The JSON is
+ * byte-identical to the one of the Jackson provider, see {@link JsonBuffer}. Like there the
+ * name of the principal is written as well.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+public class UserWriter implements MessageBodyWriter<User> {
+
+    private static final byte[] EMAIL = JsonBuffer.name("email");
+    private static final byte[] PASSWORD_HASH = JsonBuffer.name("passwordHash");
+    private static final byte[] ROLE = JsonBuffer.name("role");
+    private static final byte[] NAME = JsonBuffer.name("name");
+
+    /**
+     * Writes the JSON of the given user.
+     *
+     * @param user
+     * @param out
+     * @throws IOException
+     */
+    public void write(User user, OutputStream out) throws IOException {
+        JsonBuffer.get().beginObject()
+                .field(EMAIL, user.getEmail())
+                .field(PASSWORD_HASH, user.getPasswordHash())
+                .field(ROLE, user.getRole())
+                .field(NAME, user.getName())
+                .endObject()
+                .writeTo(out);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+        return type == User.class && MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(User user, Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(User user, Class<?> type, Type genericType, Annotation[] annotations,
+            MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException {
+        write(user, entityStream);
+    }
+}
@@ -0,0 +1,64 @@
+package io.betweendata.auth.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests of {@link HashingService} and {@link IntrospectionService}: whatever a task throws
+ * completes its future, so no suspended response is left waiting.
+ */
+public class HashingServiceTest {
+    private final HashingService hashing = new HashingService(1, 4, new MetricRegistry());
+    private final IntrospectionService introspection =
+            new IntrospectionService(1, 4, new MetricRegistry());
+
+    @After
+    public void tearDown() throws Exception {
+        hashing.stop();
+        introspection.stop();
+    }
+
+    @Test
+    public void errorsCompleteTheFuture() throws Exception {
+        assertFailsWith(StackOverflowError.class, () -> hashing.submit(() -> {
+            throw new StackOverflowError();
+        }).get(10, TimeUnit.SECONDS));
+        assertFailsWith(OutOfMemoryError.class, () -> introspection.submit(() -> {
+            throw new OutOfMemoryError();
+        }).get(10, TimeUnit.SECONDS));
+
+        // The pools replace the threads the errors ended
+        assertEquals("hash", hashing.submit(() -> "hash").get(10, TimeUnit.SECONDS));
+        assertEquals("batch", introspection.submit(() -> "batch").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void exceptionsCompleteTheFuture() throws Exception {
+        assertFailsWith(IllegalStateException.class, () -> hashing.submit(() -> {
+            throw new IllegalStateException();
+        }).get(10, TimeUnit.SECONDS));
+    }
+
+    private interface Get {
+        Object get() throws Exception;
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, Get get)
+            throws Exception {
+        try {
+            get.get();
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), expected.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected " + expected.getSimpleName());
+    }
+}
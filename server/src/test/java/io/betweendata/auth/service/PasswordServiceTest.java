@@ -0,0 +1,44 @@
+package io.betweendata.auth.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PasswordService}. The engines of an algorithm have to create the same hashes,
+ * otherwise selecting another engine would break existing hashes.
+ */
+public class PasswordServiceTest {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Test
+    public void enginesCreateTheSameHashes() throws Exception {
+        char[] password = PASSWORD.toCharArray();
+        byte[] salt = new byte[PasswordService.SALT_BYTE_SIZE];
+        PasswordHasher[][] engines = {
+                { FastPbkdf2PasswordHasher.SHA1, Pbkdf2PasswordHasher.SHA1 },
+                { FastPbkdf2PasswordHasher.SHA256, Pbkdf2PasswordHasher.SHA256 },
+                { FastPbkdf2PasswordHasher.SHA512, Pbkdf2PasswordHasher.SHA512 } };
+        for (PasswordHasher[] pair : engines) {
+            for (int bytes : new int[] { PasswordService.HASH_BYTE_SIZE, 100 }) {
+                assertArrayEquals(pair[0].getAlgorithm(), pair[1].hash(password, salt, 1000, bytes),
+                        pair[0].hash(password, salt, 1000, bytes));
+            }
+        }
+    }
+
+    @Test
+    public void hashesStayValidAfterSelectingTheEngines() throws Exception {
+        for (String algorithm : new String[] { "sha1", "sha256", "sha512" }) {
+            PasswordService service = new PasswordService(algorithm, 1000);
+            String hash = service.createHash(PASSWORD);
+
+            service.selectFastestHashers();
+            assertTrue(service.verifyPassword(PASSWORD, hash));
+            assertFalse(service.verifyPassword(PASSWORD + "!", hash));
+            assertTrue(service.verifyPassword(PASSWORD, service.createHash(PASSWORD)));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.betweendata.auth.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link TokenBuckets}.
+ */
+public class TokenBucketsTest {
+    private static final long REFILL = 1000;
+
+    @Test
+    public void emptyBucketIsRejectedUntilRefilled() {
+        TokenBuckets buckets = new TokenBuckets(2, REFILL, 10);
+
+        assertEquals(0, buckets.tryAcquire("key", 0));
+        assertEquals(0, buckets.tryAcquire("key", 0));
+        assertEquals(REFILL, buckets.tryAcquire("key", 0));
+        assertEquals(0, buckets.tryAcquire("key", REFILL));
+    }
+
+    @Test
+    public void newKeysAreRejectedWhileAllBucketsAreInUse() {
+        TokenBuckets buckets = new TokenBuckets(2, REFILL, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, buckets.tryAcquire("attacker-" + i, 0));
+        }
+
+        long wait = buckets.tryAcquire("victim", 10);
+        assertTrue("Wait " + wait, wait > 0 && wait <= REFILL);
+        assertEquals(1, buckets.getOverflows());
+        // Keys that have a bucket are still throttled as before
+        assertEquals(0, buckets.tryAcquire("attacker-0", 10));
+        assertTrue(buckets.tryAcquire("attacker-0", 10) > 0);
+    }
+
+    @Test
+    public void fullBucketsMakeRoomForNewKeys() {
+        TokenBuckets buckets = new TokenBuckets(2, REFILL, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, buckets.tryAcquire("attacker-" + i, 0));
+        }
+
+        assertEquals(0, buckets.tryAcquire("victim", REFILL));
+        assertEquals(1, buckets.size());
+        assertEquals(0, buckets.getOverflows());
+    }
+}
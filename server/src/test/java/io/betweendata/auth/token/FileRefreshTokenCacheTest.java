@@ -0,0 +1,226 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link FileRefreshTokenCache}: the log has to restore every live token after a
+ * restart, also when the last write was torn by a crash or the log has been compacted while
+ * token were added.
+ */
+public class FileRefreshTokenCacheTest {
+    private static final int MAX_SIZE = 1_000_000;
+    private static final Duration TIME_TO_LIVE = Duration.ofHours(1);
+    private static final int RECORD_SIZE = 29;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path logFile;
+    private List<FileRefreshTokenCache> started = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        logFile = folder.getRoot().toPath().resolve("refresh-tokens.log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (FileRefreshTokenCache cache : started) {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void restartReplaysTheLog() throws Exception {
+        FileRefreshTokenCache cache = start(Duration.ofHours(1));
+        for (int id = 0; id < 100; id++) {
+            cache.add(new TokenId(0, id));
+        }
+        for (int id = 0; id < 100; id += 2) {
+            cache.remove(new TokenId(0, id));
+        }
+        cache.add(new TokenId(1, 0), Instant.now().plusMillis(100));
+        stop(cache);
+        Thread.sleep(200);
+
+        cache = start(Duration.ofHours(1));
+        for (int id = 0; id < 100; id++) {
+            assertEquals("Token " + id, id % 2 == 1, cache.exists(new TokenId(0, id)));
+        }
+        assertFalse(cache.exists(new TokenId(1, 0)));
+        assertEquals(50, cache.size());
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        FileRefreshTokenCache cache = start(Duration.ofHours(1));
+        for (int id = 0; id < 10; id++) {
+            cache.add(new TokenId(0, id));
+        }
+        stop(cache);
+        // A crash in the middle of writing the last record
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - RECORD_SIZE / 2);
+        }
+
+        cache = start(Duration.ofHours(1));
+        assertEquals(9, cache.size());
+        assertFalse(cache.exists(new TokenId(0, 9)));
+        assertEquals(9L * RECORD_SIZE, Files.size(logFile));
+        cache.add(new TokenId(0, 10));
+        stop(cache);
+
+        cache = start(Duration.ofHours(1));
+        assertEquals(10, cache.size());
+        assertTrue(cache.exists(new TokenId(0, 10)));
+    }
+
+    @Test
+    public void corruptRecordEndsTheReplay() throws Exception {
+        FileRefreshTokenCache cache = start(Duration.ofHours(1));
+        for (int id = 0; id < 10; id++) {
+            cache.add(new TokenId(0, id));
+        }
+        stop(cache);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 42 }), 5L * RECORD_SIZE + 10);
+        }
+
+        cache = start(Duration.ofHours(1));
+        assertEquals(5, cache.size());
+        assertEquals(5L * RECORD_SIZE, Files.size(logFile));
+    }
+
+    @Test
+    public void legacyTokenRecordsAreReplayed() throws Exception {
+        long expiresAt = Instant.now().plus(TIME_TO_LIVE).toEpochMilli();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            channel.write(legacyRecord((byte) 1, expiresAt, "kept.token.signature"));
+            channel.write(legacyRecord((byte) 1, expiresAt, "removed.token.signature"));
+            channel.write(legacyRecord((byte) 2, 0, "removed.token.signature"));
+        }
+
+        FileRefreshTokenCache cache = start(Duration.ofHours(1));
+        assertTrue(cache.exists(TokenId.ofToken("kept.token.signature")));
+        assertFalse(cache.exists(TokenId.ofToken("removed.token.signature")));
+        // New records are appended after the legacy ones
+        cache.add(new TokenId(0, 1));
+        stop(cache);
+
+        cache = start(Duration.ofHours(1));
+        assertTrue(cache.exists(TokenId.ofToken("kept.token.signature")));
+        assertTrue(cache.exists(new TokenId(0, 1)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void compactionKeepsTokenAddedConcurrently() throws Exception {
+        FileRefreshTokenCache writing = start(Duration.ofMillis(50));
+        int threads = 64;
+        // Each thread keeps adding until the log has been compacted at least once
+        int churnPerThread = 1000;
+        AtomicBoolean churning = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> writers = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            long number = thread;
+            writers.add(executor.submit(() -> {
+                int live = 0;
+                for (int i = 0; i < churnPerThread || churning.get(); i++) {
+                    TokenId churned = new TokenId(-1 - number, i);
+                    writing.add(churned);
+                    writing.remove(churned);
+                    writing.add(new TokenId(number, i));
+                    live++;
+                }
+                return live;
+            }));
+        }
+
+        // The log only shrinks when it is replaced by the compacted one
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        long largest = 0;
+        long size;
+        while ((size = Files.size(logFile)) >= largest) {
+            assertTrue("Log has not been compacted", System.nanoTime() < deadline);
+            largest = size;
+            Thread.sleep(10);
+        }
+        churning.set(false);
+        int[] live = new int[threads];
+        for (int thread = 0; thread < threads; thread++) {
+            live[thread] = writers.get(thread).get();
+        }
+        executor.shutdown();
+        stop(writing);
+
+        FileRefreshTokenCache cache = start(Duration.ofHours(1));
+        int total = 0;
+        for (int thread = 0; thread < threads; thread++) {
+            for (int i = 0; i < live[thread]; i++) {
+                assertTrue("Token " + thread + "/" + i, cache.exists(new TokenId(thread, i)));
+                assertFalse(cache.exists(new TokenId(-1 - thread, i)));
+            }
+            total += live[thread];
+        }
+        assertEquals(total, cache.size());
+    }
+
+    private FileRefreshTokenCache start(Duration compactionCheckInterval) throws IOException {
+        FileRefreshTokenCache cache = new FileRefreshTokenCache(logFile, MAX_SIZE, TIME_TO_LIVE,
+                compactionCheckInterval);
+        cache.start();
+        started.add(cache);
+        return cache;
+    }
+
+    private void stop(FileRefreshTokenCache cache) throws Exception {
+        started.remove(cache);
+        cache.stop();
+    }
+
+    /**
+     * @return a record holding the whole token, as written before token ids were introduced
+     */
+    private static ByteBuffer legacyRecord(byte operation, long expiresAtMillis, String token) {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + 1 + 8 + 2 + bytes.length);
+        record.putInt(0);
+        record.put(operation);
+        record.putLong(expiresAtMillis);
+        record.putShort((short) bytes.length);
+        record.put(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+}
@@ -0,0 +1,169 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Stress test of {@link InMemoryRefreshTokenCache}: several threads add, check and remove
+ * token while expired token are swept slice by slice concurrently. Each thread works on its own ids and
+ * compares the cache against a reference map of them.
+ */
+public class InMemoryRefreshTokenCacheTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200_000;
+    /**
+     * Ids per thread. Small enough that ids are added and removed again and again.
+     */
+    private static final int IDS = 4096;
+    /**
+     * Large enough that no token is dropped to make room.
+     */
+    private static final int MAX_SIZE = 1_000_000;
+    private static final long LIVE_MILLIS = Duration.ofHours(1).toMillis();
+    /**
+     * Token added with an expiry this close to now are not checked, the outcome depends on
+     * when exactly the check happens.
+     */
+    private static final long UNCERTAIN_MILLIS = 1000;
+
+    @Test
+    public void concurrentAddExistsRemoveAndExpiry() throws Exception {
+        InMemoryRefreshTokenCache cache =
+                new InMemoryRefreshTokenCache(MAX_SIZE, Duration.ofHours(1));
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            Future<?> sweeper = executor.submit(() -> {
+                while (running.get()) {
+                    cache.sweepTick();
+                }
+            });
+
+            List<Future<Map<Long, Long>>> workers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                workers.add(executor.submit(worker(cache, thread)));
+            }
+            List<Map<Long, Long>> references = new ArrayList<>();
+            for (Future<Map<Long, Long>> worker : workers) {
+                references.add(worker.get());
+            }
+            running.set(false);
+            sweeper.get();
+
+            // Let the short lived token expire, then only the long lived ones are left
+            Thread.sleep(UNCERTAIN_MILLIS);
+            cache.removeExpired();
+            long now = System.currentTimeMillis();
+            int live = 0;
+            for (int thread = 0; thread < THREADS; thread++) {
+                for (int id = 0; id < IDS; id++) {
+                    Long expiresAt = references.get(thread).get((long) id);
+                    boolean expected = expiresAt != null && expiresAt > now;
+                    assertEquals("Token " + thread + "/" + id, expected,
+                            cache.exists(new TokenId(thread, id)));
+                    if (expected) {
+                        live++;
+                    }
+                }
+            }
+            assertTrue(live > 0);
+            assertEquals(live, cache.size());
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void expiredTokenAreNeitherAcceptedNorKept() {
+        InMemoryRefreshTokenCache cache =
+                new InMemoryRefreshTokenCache(MAX_SIZE, Duration.ofHours(1));
+        Instant past = Instant.now().minusSeconds(1);
+        for (int id = 0; id < IDS; id++) {
+            cache.add(new TokenId(0, id), past);
+        }
+        cache.add(new TokenId(1, 0));
+
+        assertFalse(cache.exists(new TokenId(0, 0)));
+        assertTrue(cache.exists(new TokenId(1, 0)));
+        cache.removeExpired();
+        assertEquals(1, cache.size());
+        assertTrue(cache.exists(new TokenId(1, 0)));
+    }
+
+    @Test
+    public void sweepTicksRemoveExpiredTokenSliceBySlice() {
+        InMemoryRefreshTokenCache cache =
+                new InMemoryRefreshTokenCache(MAX_SIZE, Duration.ofHours(1));
+        Instant past = Instant.now().minusSeconds(1);
+        for (int id = 0; id < 100_000; id++) {
+            cache.add(new TokenId(0, id), past);
+        }
+        cache.add(new TokenId(1, 0));
+
+        cache.sweepTick();
+        assertTrue("A tick sweeps only a slice", cache.size() > 1);
+        // Ticks are sized to sweep the whole table once a minute
+        for (int tick = 1; tick < 61; tick++) {
+            cache.sweepTick();
+        }
+        assertEquals(1, cache.size());
+        assertTrue(cache.exists(new TokenId(1, 0)));
+    }
+
+    /**
+     * Randomly adds, checks and removes the ids of the given thread. Checks whose outcome is
+     * certain are asserted right away.
+     *
+     * @return the expiry of each id that is left in the cache
+     */
+    private static Callable<Map<Long, Long>> worker(InMemoryRefreshTokenCache cache,
+            long thread) {
+        return () -> {
+            Random random = new Random(thread);
+            Map<Long, Long> reference = new HashMap<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long id = random.nextInt(IDS);
+                TokenId tokenId = new TokenId(thread, id);
+                int operation = random.nextInt(10);
+                if (operation < 4) {
+                    long now = System.currentTimeMillis();
+                    // Some token expire while the test runs
+                    long expiresAt = random.nextInt(4) == 0 ? now + random.nextInt(50)
+                            : now + LIVE_MILLIS;
+                    cache.add(tokenId, Instant.ofEpochMilli(expiresAt));
+                    reference.put(id, expiresAt);
+                } else if (operation < 6) {
+                    cache.remove(tokenId);
+                    reference.remove(id);
+                } else {
+                    Long expiresAt = reference.get(id);
+                    long before = System.currentTimeMillis();
+                    boolean exists = cache.exists(tokenId);
+                    if (expiresAt == null || expiresAt <= before) {
+                        assertFalse("Token " + thread + "/" + id + " is not live", exists);
+                    } else if (expiresAt > before + UNCERTAIN_MILLIS) {
+                        assertTrue("Token " + thread + "/" + id + " is live", exists);
+                    }
+                }
+            }
+            return reference;
+        };
+    }
+}
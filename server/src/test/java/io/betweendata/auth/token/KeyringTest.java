@@ -0,0 +1,83 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * Tests of {@link Keyring}: EC keys on other curves than P-256 would be published with the
+ * wrong curve and truncated coordinates, so they are rejected on load.
+ */
+public class KeyringTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void p256KeysAreLoaded() throws Exception {
+        Keyring keyring =
+                Keyring.load(writeKeyring(generate("secp256r1")), SignatureAlgorithm.ES256);
+        assertEquals("2019-06", keyring.getActiveKid());
+        assertEquals("P-256", keyring.getPublicKeys().getKeys().get(0).getCrv());
+    }
+
+    @Test
+    public void keysOnOtherCurvesAreRejected() throws Exception {
+        try {
+            Keyring.load(writeKeyring(generate("secp384r1")), SignatureAlgorithm.ES256);
+            fail("Loaded a P-384 key");
+        } catch (IOException ex) {
+            assertTrue(String.valueOf(ex.getCause()),
+                    ex.getCause().getMessage().contains("P-256"));
+        }
+
+        KeyPair keyPair = generate("secp384r1");
+        try {
+            Keyring.ofKeyPair(keyPair.getPrivate(), keyPair.getPublic(), SignatureAlgorithm.ES256);
+            fail("Accepted a P-384 key pair");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
+
+    private static KeyPair generate(String curve) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+
+    private Path writeKeyring(KeyPair keyPair) throws IOException {
+        writePem("2019-06.key", "PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        writePem("2019-06.pub", "PUBLIC KEY", keyPair.getPublic().getEncoded());
+        Path file = folder.getRoot().toPath().resolve("keyring.yml");
+        Files.write(file, ("active: 2019-06\n"
+                + "keys:\n"
+                + "  - kid: 2019-06\n"
+                + "    privateKeyFile: 2019-06.key\n"
+                + "    publicKeyFile: 2019-06.pub\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void writePem(String name, String type, byte[] encoded) throws IOException {
+        String pem = "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(encoded)
+                + "\n-----END " + type + "-----\n";
+        Files.write(folder.getRoot().toPath().resolve(name),
+                pem.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,76 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests of {@link ReplicatedRefreshTokenCache}: a removal without a tombstone could be undone
+ * by a catch-up, so a full table of tombstones refuses removals instead of dropping others.
+ */
+public class ReplicatedRefreshTokenCacheTest {
+    private static final int MAX_TOMBSTONES = 1024;
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private ReplicatedRefreshTokenCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ReplicatedRefreshTokenCache(16 * MAX_TOMBSTONES, MAX_TOMBSTONES,
+                Duration.ofHours(1), "127.0.0.1", 0, Collections.emptyList(), metrics);
+        cache.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.stop();
+    }
+
+    @Test
+    public void fullTombstoneTableRefusesRemovals() {
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        int refused = 0;
+        for (int id = 0; id < 4 * MAX_TOMBSTONES; id++) {
+            TokenId tokenId = new TokenId(id, id);
+            cache.add(tokenId, expiresAt);
+            if (cache.remove(tokenId)) {
+                assertFalse(cache.exists(tokenId));
+            } else {
+                refused++;
+                assertTrue(cache.exists(tokenId));
+            }
+        }
+
+        assertTrue(refused >= 3 * MAX_TOMBSTONES);
+        assertEquals(refused, metrics.meter(MetricRegistry.name(
+                ReplicatedRefreshTokenCache.class, "rejected")).getCount());
+    }
+
+    @Test
+    public void expiredTombstonesMakeRoom() {
+        Instant expired = Instant.now().minusSeconds(1);
+        for (int id = 0; id < 4 * MAX_TOMBSTONES; id++) {
+            TokenId tokenId = new TokenId(id, id);
+            cache.add(tokenId, expired);
+            assertTrue(cache.remove(tokenId));
+        }
+
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        for (int id = 0; id < MAX_TOMBSTONES / 2; id++) {
+            TokenId tokenId = new TokenId(-id, id);
+            cache.add(tokenId, expiresAt);
+            assertTrue(cache.remove(tokenId));
+            assertFalse(cache.exists(tokenId));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.betweendata.auth.RevocationConfiguration;
+
+/**
+ * Tests of {@link RevocationList}.
+ */
+public class RevocationListTest {
+    private static final int MAX_SIZE = 1024;
+
+    @Test
+    public void fullListRefusesRevocationsInsteadOfDroppingOthers() {
+        RevocationList list = createList();
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        List<TokenId> accepted = new ArrayList<>();
+        boolean refused = false;
+        for (int id = 0; id < 2 * MAX_SIZE; id++) {
+            TokenId tokenId = new TokenId(id, id);
+            if (list.revoke(tokenId, expiresAt)) {
+                accepted.add(tokenId);
+            } else {
+                refused = true;
+                assertFalse(list.isRevoked(tokenId));
+            }
+        }
+
+        assertTrue(refused);
+        assertTrue(accepted.size() <= MAX_SIZE);
+        for (TokenId tokenId : accepted) {
+            assertTrue("Token " + tokenId, list.isRevoked(tokenId));
+        }
+    }
+
+    @Test
+    public void expiredRevocationsMakeRoom() {
+        RevocationList list = createList();
+        Instant expired = Instant.now().minusSeconds(1);
+        for (int id = 0; id < 2 * MAX_SIZE; id++) {
+            assertTrue(list.revoke(new TokenId(id, id), expired));
+        }
+
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        for (int id = 0; id < MAX_SIZE / 2; id++) {
+            TokenId tokenId = new TokenId(-id, id);
+            assertTrue(list.revoke(tokenId, expiresAt));
+            assertTrue(list.isRevoked(tokenId));
+        }
+    }
+
+    private static RevocationList createList() {
+        RevocationConfiguration config = new RevocationConfiguration();
+        config.setMaxSize(MAX_SIZE);
+        return new RevocationList(config, new MetricRegistry());
+    }
+}
@@ -0,0 +1,26 @@
+package io.betweendata.auth.token;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of how {@link TokenIntrospectionResource} splits a batch into chunks.
+ */
+public class TokenIntrospectionResourceTest {
+
+    @Test
+    public void batchIsSpreadOverTheThreads() {
+        assertEquals(25, TokenIntrospectionResource.chunkSize(100, 4));
+        assertEquals(34, TokenIntrospectionResource.chunkSize(100, 3));
+        assertEquals(100, TokenIntrospectionResource.chunkSize(100, 1));
+    }
+
+    @Test
+    public void smallBatchesAreNotSplitIntoTinyChunks() {
+        assertEquals(8, TokenIntrospectionResource.chunkSize(16, 16));
+        assertEquals(7, TokenIntrospectionResource.chunkSize(7, 16));
+        assertEquals(1, TokenIntrospectionResource.chunkSize(1, 16));
+        assertEquals(1, TokenIntrospectionResource.chunkSize(0, 16));
+    }
+}
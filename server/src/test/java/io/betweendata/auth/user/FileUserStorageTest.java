@@ -0,0 +1,40 @@
+package io.betweendata.auth.user;
+
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link FileUserStorage}.
+ */
+public class FileUserStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileUserStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+	storage = new FileUserStorage(folder.getRoot().toPath(), 1024 * 1024);
+	storage.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	storage.stop();
+    }
+
+    @Test
+    public void concurrentRegistrationsOfTheSameEmail() throws Exception {
+	UserStorageRace.assertOneRegistrationWins(storage, "file");
+    }
+
+    @Test
+    public void loadUserWithoutEmail() {
+	assertNull(storage.loadUser(null));
+    }
+}
@@ -0,0 +1,37 @@
+package io.betweendata.auth.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link InMemoryUserStorage}. The storage is a singleton, so each test uses emails
+ * of its own.
+ */
+public class InMemoryUserStorageTest {
+
+    @Test
+    public void concurrentRegistrationsOfTheSameEmail() throws Exception {
+	UserStorageRace.assertOneRegistrationWins(InMemoryUserStorage.getInstance(), "memory");
+    }
+
+    @Test
+    public void loadUserWithoutEmail() {
+	assertNull(InMemoryUserStorage.getInstance().loadUser(null));
+    }
+
+    @Test
+    public void emailsAreCaseInsensitive() {
+	UserStorage storage = InMemoryUserStorage.getInstance();
+	User user = new User();
+	user.setEmail("case@example.com");
+	storage.saveUser(user);
+
+	assertNotNull(storage.loadUser("Case@Example.com"));
+	User duplicate = new User();
+	duplicate.setEmail("CASE@example.com");
+	assertEquals(false, storage.saveUserIfAbsent(duplicate));
+    }
+}
@@ -0,0 +1,84 @@
+package io.betweendata.auth.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lets several threads register the same emails at the same time, like concurrent
+ * <i>/register</i> requests do.
+ */
+final class UserStorageRace {
+    private static final int THREADS = 16;
+    private static final int EMAILS = 2000;
+
+    private UserStorageRace() {
+    }
+
+    /**
+     * Each thread tries to register every email with {@link UserStorage#saveUserIfAbsent(User)}
+     * and the case of the email differing per thread. Asserts that exactly one registration of
+     * each email succeeded and that the user of that registration is stored.
+     *
+     * @param storage
+     * @param prefix  - makes the emails unique to the caller
+     * @throws Exception
+     */
+    static void assertOneRegistrationWins(UserStorage storage, String prefix) throws Exception {
+	int sizeBefore = storage.size();
+	CyclicBarrier start = new CyclicBarrier(THREADS);
+	ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+	try {
+	    List<Future<boolean[]>> threads = new ArrayList<>();
+	    for (int thread = 0; thread < THREADS; thread++) {
+		int number = thread;
+		threads.add(executor.submit(() -> {
+		    boolean[] saved = new boolean[EMAILS];
+		    start.await();
+		    for (int i = 0; i < EMAILS; i++) {
+			User user = new User();
+			user.setEmail(email(prefix, i, number));
+			user.setPasswordHash("hash-of-thread-" + number);
+			saved[i] = storage.saveUserIfAbsent(user);
+		    }
+		    return saved;
+		}));
+	    }
+
+	    int[] winners = new int[EMAILS];
+	    String[] winnerHashes = new String[EMAILS];
+	    for (int thread = 0; thread < THREADS; thread++) {
+		boolean[] saved = threads.get(thread).get();
+		for (int i = 0; i < EMAILS; i++) {
+		    if (saved[i]) {
+			winners[i]++;
+			winnerHashes[i] = "hash-of-thread-" + thread;
+		    }
+		}
+	    }
+	    for (int i = 0; i < EMAILS; i++) {
+		assertEquals("Registrations of email " + i, 1, winners[i]);
+		User user = storage.loadUser(email(prefix, i, 0));
+		assertNotNull(user);
+		assertEquals(winnerHashes[i], user.getPasswordHash());
+	    }
+	    assertEquals(sizeBefore + EMAILS, storage.size());
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * @return the email with the given number, upper case letters depending on the thread
+     */
+    private static String email(String prefix, int number, int thread) {
+	String email = prefix + "-race-" + number + "@example.com";
+	return thread % 2 == 0 ? email : email.toUpperCase();
+    }
+}